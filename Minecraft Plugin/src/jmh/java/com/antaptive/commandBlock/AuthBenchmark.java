@@ -0,0 +1,43 @@
+package com.antaptive.commandBlock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of the Authorization header check every request goes through
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthBenchmark {
+
+    private static final String TOKEN = "k7Vq2mXc9RbTn4LsWz8HdJf3GpYe6AuN";
+
+    private FakeExchange valid;
+    private FakeExchange wrongToken;
+    private FakeExchange missing;
+
+    @Setup
+    public void setup() {
+        valid = new FakeExchange("GET", "/server/stats").header("Authorization", "Bearer " + TOKEN);
+        wrongToken = new FakeExchange("GET", "/server/stats").header("Authorization", "Bearer " + TOKEN.substring(1) + "x");
+        missing = new FakeExchange("GET", "/server/stats");
+    }
+
+    @Benchmark
+    public boolean validToken() {
+        return CommandBlock.isAuthorized(valid, TOKEN);
+    }
+
+    @Benchmark
+    public boolean wrongToken() {
+        return CommandBlock.isAuthorized(wrongToken, TOKEN);
+    }
+
+    @Benchmark
+    public boolean missingHeader() {
+        return CommandBlock.isAuthorized(missing, TOKEN);
+    }
+}
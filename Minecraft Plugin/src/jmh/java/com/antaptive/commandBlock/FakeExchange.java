@@ -0,0 +1,71 @@
+package com.antaptive.commandBlock;
+
+import com.sun.net.httpserver.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+// In-memory HttpExchange so handler code can be benchmarked without sockets.
+// Call reset() between invocations to reuse one instance.
+final class FakeExchange extends HttpExchange {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 25580);
+
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream(1024);
+    private final String method;
+    private final URI uri;
+    private byte[] requestBody = new byte[0];
+    private int responseCode = -1;
+
+    FakeExchange(String method, String uri) {
+        this.method = method;
+        this.uri = URI.create(uri);
+    }
+
+    FakeExchange header(String name, String value) {
+        requestHeaders.set(name, value);
+        return this;
+    }
+
+    FakeExchange body(byte[] body) {
+        this.requestBody = body;
+        return this;
+    }
+
+    void reset() {
+        responseHeaders.clear();
+        responseBody.reset();
+        responseCode = -1;
+    }
+
+    byte[] getWrittenBody() {
+        return responseBody.toByteArray();
+    }
+
+    @Override public Headers getRequestHeaders() { return requestHeaders; }
+    @Override public Headers getResponseHeaders() { return responseHeaders; }
+    @Override public URI getRequestURI() { return uri; }
+    @Override public String getRequestMethod() { return method; }
+    @Override public HttpContext getHttpContext() { return null; }
+    @Override public void close() {}
+    @Override public InputStream getRequestBody() { return new ByteArrayInputStream(requestBody); }
+    @Override public OutputStream getResponseBody() { return responseBody; }
+    @Override public void sendResponseHeaders(int rCode, long responseLength) { responseCode = rCode; }
+    @Override public InetSocketAddress getRemoteAddress() { return ADDRESS; }
+    @Override public int getResponseCode() { return responseCode; }
+    @Override public InetSocketAddress getLocalAddress() { return ADDRESS; }
+    @Override public String getProtocol() { return "HTTP/1.1"; }
+    @Override public Object getAttribute(String name) { return attributes.get(name); }
+    @Override public void setAttribute(String name, Object value) { attributes.put(name, value); }
+    @Override public void setStreams(InputStream i, OutputStream o) {}
+    @Override public HttpPrincipal getPrincipal() { return null; }
+}
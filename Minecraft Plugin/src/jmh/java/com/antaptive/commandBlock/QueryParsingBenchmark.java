@@ -0,0 +1,46 @@
+package com.antaptive.commandBlock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Query-string parsing: the split/HashMap loop the player endpoints used to
+// have, against the lazy QueryParams they use now
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParsingBenchmark {
+
+    @Param({"player=Notch", "player=Notch&reason=Griefing%20the%20spawn%20area%20again"})
+    public String query;
+
+    @Benchmark
+    public Map<String, String> splitLoop() {
+        Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            String[] pair = param.split("=", 2);
+            if (pair.length == 2) {
+                try {
+                    params.put(pair[0], java.net.URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+                } catch (Exception e) {
+                    // If decoding fails, use the raw value
+                    params.put(pair[0], pair[1]);
+                }
+            }
+        }
+        return params;
+    }
+
+    @Benchmark
+    public String queryParams() {
+        QueryParams params = QueryParams.of(query);
+        String reason = params.getOrDefault("reason", "");
+        return params.get("player") + reason;
+    }
+}
@@ -0,0 +1,47 @@
+package com.antaptive.commandBlock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Encoding and writing the small JSON bodies most endpoints answer with
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendResponseBenchmark {
+
+    private FakeExchange exchange;
+
+    @Setup
+    public void setup() {
+        exchange = new FakeExchange("POST", "/server/player/kick?player=Notch");
+    }
+
+    @Benchmark
+    public int success() throws IOException {
+        exchange.reset();
+        new ApiRequest(exchange, "/server/player/kick").sendSuccess();
+        return exchange.getResponseCode();
+    }
+
+    @Benchmark
+    public int json() throws IOException {
+        exchange.reset();
+        new ApiRequest(exchange, "/server/player/whitelist/add").send(200, JsonWriter.acquire().beginObject()
+                .field("success", true)
+                .field("player", "Notch")
+                .endObject());
+        return exchange.getResponseCode();
+    }
+
+    @Benchmark
+    public int error() throws IOException {
+        exchange.reset();
+        new ApiRequest(exchange, "/server/player/kick").sendError(400, "A user was not specified. Please specify a 'player' parameter.");
+        return exchange.getResponseCode();
+    }
+}
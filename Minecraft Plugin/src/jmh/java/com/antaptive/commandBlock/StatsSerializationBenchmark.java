@@ -0,0 +1,45 @@
+package com.antaptive.commandBlock;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serializing /server/stats for different player counts
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int players;
+
+    private StatsPublisher.ServerStats stats;
+
+    @Setup
+    public void setup() {
+        List<String> playerList = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            playerList.add("Player_" + i + (i % 7 == 0 ? " (AFK)" : "") + " [" + (20 + i % 180) + "ms]");
+        }
+
+        stats = new StatsPublisher.ServerStats(players * 2, players, 19.97, List.copyOf(playerList), "1.21.10", "3d 4h 12m 9s");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return StatsPublisher.encode(stats);
+    }
+
+    // Everything a stats sample costs
+    @Benchmark
+    public void encodeWithETag(Blackhole blackhole) {
+        blackhole.consume(StatsPublisher.encode(stats));
+        blackhole.consume(StatsPublisher.computeETag(stats));
+    }
+}
@@ -0,0 +1,49 @@
+package com.antaptive.commandBlock.loadtest;
+
+import com.earth2me.essentials.Essentials;
+import com.earth2me.essentials.User;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Essentials and its User are classes rather than interfaces, so unlike the
+// rest of the stand-in they are Mockito mocks. stubOnly() keeps Mockito from
+// remembering every call, which would otherwise grow without bound under load.
+final class FakeEssentials {
+
+    private FakeEssentials() {
+    }
+
+    static Essentials create(StandInServer server) {
+        Essentials essentials = mock(Essentials.class, withSettings().stubOnly());
+        when(essentials.getPluginMeta()).thenReturn(new PluginDescriptionFile("Essentials", "2.21.0", Essentials.class.getName()));
+        when(essentials.getName()).thenReturn("Essentials");
+        when(essentials.isEnabled()).thenReturn(true);
+
+        // Essentials keeps its users cached too, so each lookup is a map access
+        Map<UUID, User> users = new ConcurrentHashMap<>();
+        when(essentials.getUser(any(Player.class))).thenAnswer(invocation -> {
+            Player player = invocation.getArgument(0);
+            return users.computeIfAbsent(player.getUniqueId(), id -> user(server, player));
+        });
+
+        return essentials;
+    }
+
+    private static User user(StandInServer server, Player player) {
+        UUID id = player.getUniqueId();
+        User user = mock(User.class, withSettings().stubOnly());
+        when(user.isAfk()).thenAnswer(invocation -> server.isAfk(id));
+        when(user.getBase()).thenReturn(player);
+        return user;
+    }
+}
@@ -0,0 +1,60 @@
+package com.antaptive.commandBlock.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Durations in nanoseconds, counted in buckets 1% apart so percentiles are
+// accurate to about 1% without keeping every sample. Safe to record into from
+// any number of threads.
+final class Histogram {
+
+    private static final double BASE = 1.01;
+    private static final double LOG_BASE = Math.log(BASE);
+    // 1.01^2600 ns is far longer than any request will take
+    private static final int BUCKETS = 2600;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        nanos = Math.max(1, nanos);
+        int bucket = (int) Math.min(BUCKETS - 1, Math.log(nanos) / LOG_BASE);
+
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    double meanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n / 1e6;
+    }
+
+    double maxMillis() {
+        return max.get() / 1e6;
+    }
+
+    // The value below which the given fraction of samples fall, e.g. 0.99
+    double percentileMillis(double fraction) {
+        long n = count.get();
+        if (n == 0) return 0;
+
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // Middle of the bucket, but never above the largest sample
+                return Math.min(Math.pow(BASE, i + 0.5), max.get()) / 1e6;
+            }
+        }
+        return maxMillis();
+    }
+}
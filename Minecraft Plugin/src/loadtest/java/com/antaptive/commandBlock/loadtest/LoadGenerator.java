@@ -0,0 +1,263 @@
+package com.antaptive.commandBlock.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+// Drives the API with a fixed number of clients, each on its own keep-alive
+// connection sending its next request as soon as the last one is answered.
+// Requests are picked at random from a weighted mix of operations. Clients
+// speak just enough HTTP/1.1 themselves so the client side adds as little as
+// possible to the measured latency.
+final class LoadGenerator {
+
+    // Picks the request target for one call of an operation
+    record Operation(String name, String method, Function<ThreadLocalRandom, String> target) {}
+
+    // Latency of every request, and of each operation on its own
+    static final class Results {
+        final Histogram all = new Histogram();
+        final Map<String, Histogram> byOperation = new LinkedHashMap<>();
+        // Indexed by status code / 100; 0 is a request that got no response at all
+        final AtomicLongArray statusClasses = new AtomicLongArray(6);
+        final AtomicLong tooManyRequests = new AtomicLong();
+        final AtomicLong unavailable = new AtomicLong();
+        long startNanos;
+        long endNanos;
+
+        double seconds() {
+            return (endNanos - startNanos) / 1e9;
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final String token;
+    private final List<Operation> operations = new ArrayList<>();
+    private final int[] cumulativeWeights;
+
+    LoadGenerator(InetSocketAddress address, String token, Map<String, Integer> mix, StandInServer server) {
+        this.address = address;
+        this.token = token;
+
+        Map<String, Operation> known = operations(server);
+        cumulativeWeights = new int[mix.size()];
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            Operation operation = known.get(entry.getKey());
+            if (operation == null) throw new IllegalArgumentException("Unknown operation '" + entry.getKey() + "'. Use any of " + known.keySet() + ".");
+
+            total += entry.getValue();
+            cumulativeWeights[operations.size()] = total;
+            operations.add(operation);
+        }
+        if (total <= 0) throw new IllegalArgumentException("The mix needs at least one operation with a weight above 0.");
+    }
+
+    // Every operation the mix can use. Mutations pick players at random, so some
+    // of them fail (unbanning someone who isn't banned, kicking someone who just
+    // left) the same way they would on a real server.
+    private static Map<String, Operation> operations(StandInServer server) {
+        List<String> online = server.onlineNames();
+        List<String> offline = server.offlineNames();
+        Function<ThreadLocalRandom, String> anyPlayer = random -> {
+            int i = random.nextInt(online.size() + offline.size());
+            return encode(i < online.size() ? online.get(i) : offline.get(i - online.size()));
+        };
+
+        Map<String, Operation> operations = new LinkedHashMap<>();
+        operations.put("stats", new Operation("stats", "GET", random -> "/server/stats"));
+        operations.put("players", new Operation("players", "GET", random -> "/server/players?limit=50"));
+        operations.put("bans", new Operation("bans", "GET", random -> "/server/bans?limit=50" + (random.nextBoolean() ? "&sort=name" : "")));
+        operations.put("history", new Operation("history", "GET", random -> "/server/stats/history?window=3600"));
+        operations.put("audit", new Operation("audit", "GET", random -> "/audit?limit=50"));
+        operations.put("metrics", new Operation("metrics", "GET", random -> "/metrics"));
+        operations.put("kick", new Operation("kick", "POST", random -> online.isEmpty() ? "/server/player/kick?player=Nobody"
+                : "/server/player/kick?player=" + encode(online.get(random.nextInt(online.size()))) + "&reason=Load+test"));
+        operations.put("ban", new Operation("ban", "POST", random -> (random.nextBoolean() ? "/server/player/ban?reason=Load+test&player=" : "/server/player/unban?player=") + anyPlayer.apply(random)));
+        operations.put("whitelist", new Operation("whitelist", "POST", random -> "/server/player/whitelist/" + (random.nextBoolean() ? "add" : "remove") + "?player=" + anyPlayer.apply(random)));
+        // Gateway mode, with stand-in backends
+        operations.put("network-stats", new Operation("network-stats", "GET", random -> "/network/stats"));
+        operations.put("network-ban", new Operation("network-ban", "POST", random -> "/network/player/" + (random.nextBoolean() ? "ban?reason=Load+test&player=" : "unban?player=") + anyPlayer.apply(random)));
+        return operations;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // Status of a single GET, on a connection of its own
+    int probe(String target) throws IOException {
+        Connection connection = new Connection(address);
+        try {
+            return connection.send("GET", target, token);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    // Runs clients for the given time and returns what they measured
+    Results run(int clients, long durationMillis) throws InterruptedException {
+        Results results = new Results();
+        for (Operation operation : operations) results.byOperation.put(operation.name(), new Histogram());
+
+        long deadline = System.nanoTime() + durationMillis * 1_000_000;
+        List<Thread> threads = new ArrayList<>(clients);
+        results.startNanos = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            threads.add(Thread.ofVirtual().name("LoadClient-" + i).start(() -> client(results, deadline)));
+        }
+        for (Thread thread : threads) thread.join();
+        results.endNanos = System.nanoTime();
+
+        return results;
+    }
+
+    private void client(Results results, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Connection connection = null;
+
+        while (System.nanoTime() < deadline) {
+            Operation operation = pick(random);
+            String target = operation.target().apply(random);
+            long start = System.nanoTime();
+            int status;
+
+            try {
+                if (connection == null) connection = new Connection(address);
+                status = connection.send(operation.method(), target, token);
+                if (connection.closed) connection = null;
+            }
+            catch (IOException e) {
+                status = 0;
+                if (connection != null) connection.close();
+                connection = null;
+            }
+
+            long elapsed = System.nanoTime() - start;
+            results.all.record(elapsed);
+            results.byOperation.get(operation.name()).record(elapsed);
+            results.statusClasses.incrementAndGet(Math.min(5, status / 100));
+            if (status == 429) results.tooManyRequests.incrementAndGet();
+            if (status == 503) results.unavailable.incrementAndGet();
+        }
+
+        if (connection != null) connection.close();
+    }
+
+    private Operation pick(ThreadLocalRandom random) {
+        int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) return operations.get(i);
+        }
+        return operations.getLast();
+    }
+
+    // One keep-alive HTTP/1.1 connection. Reads responses with a Content-Length
+    // or chunked body; the body itself is read and thrown away.
+    private static final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+        private final byte[] discard = new byte[8192];
+        private final StringBuilder line = new StringBuilder(128);
+        boolean closed;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address, 5000);
+            socket.setSoTimeout(30_000);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream(), 16384);
+        }
+
+        int send(String method, String target, String token) throws IOException {
+            String request = method + " " + target + " HTTP/1.1\r\n"
+                    + "Host: " + socket.getInetAddress().getHostAddress() + "\r\n"
+                    + "Authorization: Bearer " + token + "\r\n"
+                    + (method.equals("POST") ? "Content-Length: 0\r\n" : "")
+                    + "\r\n";
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String statusLine = readLine();
+            if (!statusLine.startsWith("HTTP/1.1 ") || statusLine.length() < 12) throw new IOException("Bad status line: " + statusLine);
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+
+            long length = -1;
+            boolean chunked = false;
+            for (String header; !(header = readLine()).isEmpty(); ) {
+                int colon = header.indexOf(':');
+                if (colon < 0) continue;
+
+                String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = header.substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length" -> length = Long.parseLong(value);
+                    case "transfer-encoding" -> chunked = value.equalsIgnoreCase("chunked");
+                    case "connection" -> closed = value.equalsIgnoreCase("close");
+                }
+            }
+
+            if (chunked) {
+                long size;
+                while ((size = Long.parseLong(readLine().split(";", 2)[0].trim(), 16)) > 0) {
+                    skip(size);
+                    readLine();
+                }
+                // Trailers, if any, end with an empty line
+                while (!readLine().isEmpty()) {
+                }
+            }
+            else if (length > 0) {
+                skip(length);
+            }
+
+            if (closed) close();
+            return status;
+        }
+
+        private String readLine() throws IOException {
+            line.setLength(0);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) throw new EOFException("Connection closed");
+                if (b != '\r') line.append((char) b);
+            }
+            return line.toString();
+        }
+
+        private void skip(long bytes) throws IOException {
+            while (bytes > 0) {
+                int read = in.read(discard, 0, (int) Math.min(discard.length, bytes));
+                if (read < 0) throw new EOFException("Connection closed");
+                bytes -= read;
+            }
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+}
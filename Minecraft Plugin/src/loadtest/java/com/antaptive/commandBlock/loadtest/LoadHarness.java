@@ -0,0 +1,321 @@
+package com.antaptive.commandBlock.loadtest;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Runs CommandBlock against the stand-in server and puts it under load:
+//
+//   1. idle:   the plugin runs with no requests, to measure what its own timers cost each tick
+//   2. warmup: clients send requests, nothing is recorded
+//   3. load:   clients send requests for the full duration while latency and tick time are recorded
+//
+// With backends=N, N stand-in backends are started and the plugin runs in
+// gateway mode in front of them, for the network-* operations.
+//
+// Settings are key=value arguments, see Options. Anything starting with
+// "config." is written into the plugin's config.yml, e.g. config.http-executor=platform.
+public final class LoadHarness {
+
+    private static final Logger LOGGER = Logger.getLogger("LoadHarness");
+
+    private record Options(int clients, int players, int offlinePlayers, int bans, boolean essentials, int durationSeconds,
+                           int warmupSeconds, int idleSeconds, double tickWorkMillis, int rejoinTicks, Map<String, Integer> mix,
+                           int backends, int backendsDown, long backendDelayMillis, File classes, String out, Map<String, Object> config) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            Map<String, Object> config = new LinkedHashMap<>();
+
+            for (String arg : args) {
+                // Maven passes all of -Dloadtest.args as one argument
+                for (String pair : arg.trim().split("\\s+")) {
+                    if (pair.isEmpty()) continue;
+
+                    int equals = pair.indexOf('=');
+                    if (equals < 0) throw new IllegalArgumentException("Expected key=value, got '" + pair + "'");
+
+                    String key = pair.substring(0, equals);
+                    String value = pair.substring(equals + 1);
+                    if (key.startsWith("config.")) config.put(key.substring(7), parseValue(value));
+                    else values.put(key, value);
+                }
+            }
+
+            Map<String, Integer> mix = new LinkedHashMap<>();
+            for (String part : values.getOrDefault("mix", "stats:40,players:20,bans:10,history:5,metrics:5,audit:5,kick:5,ban:5,whitelist:5").split(",")) {
+                String[] weighted = part.trim().split(":");
+                mix.put(weighted[0], weighted.length > 1 ? Integer.parseInt(weighted[1]) : 1);
+            }
+
+            return new Options(
+                    Integer.parseInt(values.getOrDefault("clients", "32")),
+                    Integer.parseInt(values.getOrDefault("players", "100")),
+                    Integer.parseInt(values.getOrDefault("offline", "2000")),
+                    Integer.parseInt(values.getOrDefault("bans", "500")),
+                    Boolean.parseBoolean(values.getOrDefault("essentials", "true")),
+                    Integer.parseInt(values.getOrDefault("duration", "30")),
+                    Integer.parseInt(values.getOrDefault("warmup", "5")),
+                    Integer.parseInt(values.getOrDefault("idle", "10")),
+                    Double.parseDouble(values.getOrDefault("tickWork", "0")),
+                    Integer.parseInt(values.getOrDefault("rejoinTicks", "100")),
+                    mix,
+                    Integer.parseInt(values.getOrDefault("backends", "0")),
+                    Integer.parseInt(values.getOrDefault("backendsDown", "0")),
+                    Long.parseLong(values.getOrDefault("backendDelay", "0")),
+                    new File(values.getOrDefault("classes", "target/classes")),
+                    values.getOrDefault("out", ""),
+                    config
+            );
+        }
+
+        private static Object parseValue(String value) {
+            if (value.equals("true") || value.equals("false")) return Boolean.parseBoolean(value);
+            try {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException notInt) {
+                try {
+                    return Double.parseDouble(value);
+                }
+                catch (NumberFormatException notNumber) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Path root = Files.createTempDirectory("commandblock-loadtest");
+
+        TickLoop loop = new TickLoop(LOGGER, options.tickWorkMillis());
+        StandInServer server = new StandInServer(LOGGER, loop, root.toFile(),
+                new StandInServer.Settings(options.players(), options.offlinePlayers(), options.bans(), options.rejoinTicks()));
+        Bukkit.setServer(server.handle());
+        if (options.essentials()) server.setEssentials(FakeEssentials.create(server));
+        loop.start();
+
+        String token = HexFormat.of().formatHex(SecureRandom.getSeed(16));
+        int port = freePort();
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("api-token", token);
+        config.put("port", port);
+        config.put("bind-address", "127.0.0.1");
+        // The clients all come from one address with one token, so rate limits would only measure themselves
+        config.put("rate-limit-read-per-second", 1_000_000_000.0);
+        config.put("rate-limit-read-burst", Integer.MAX_VALUE);
+        config.put("rate-limit-mutation-per-second", 1_000_000_000.0);
+        config.put("rate-limit-mutation-burst", Integer.MAX_VALUE);
+        config.put("audit-console", false);
+
+        List<StandInBackend> backends = new ArrayList<>();
+        for (int i = 0; i < options.backends(); i++) {
+            StandInBackend backend = new StandInBackend("backend-" + i, token, options.backendDelayMillis());
+            backends.add(backend);
+            config.put("gateway-backends.backend-" + i + ".url", backend.url());
+            config.put("gateway-backends.backend-" + i + ".token", token);
+        }
+        // Listed, but nothing is listening on their port
+        for (int i = 0; i < options.backendsDown(); i++) {
+            config.put("gateway-backends.down-" + i + ".url", "http://127.0.0.1:" + freePort());
+            config.put("gateway-backends.down-" + i + ".token", token);
+        }
+        if (backends.isEmpty() && options.mix().keySet().stream().anyMatch(name -> name.startsWith("network-"))) {
+            throw new IllegalArgumentException("The network-* operations need backends=N.");
+        }
+
+        config.putAll(options.config());
+
+        PluginHost host = new PluginHost(server.handle(), options.classes(), root.resolve("plugins/CommandBlock").toFile());
+        JavaPlugin plugin = host.load(config);
+        server.setPlugin(plugin);
+
+        try {
+            loop.call(() -> {
+                host.setEnabled(true);
+                return null;
+            });
+            if (server.disabledBecause() != null) throw new IllegalStateException("CommandBlock did not start: " + server.disabledBecause());
+
+            LoadGenerator generator = new LoadGenerator(new InetSocketAddress("127.0.0.1", port), token, options.mix(), server);
+            awaitReady(generator, !backends.isEmpty());
+
+            LOGGER.info("Idle for " + options.idleSeconds() + " s");
+            Histogram idleTicks = loop.measure();
+            int idleStartTick = loop.currentTick();
+            long idleStart = System.nanoTime();
+            Thread.sleep(options.idleSeconds() * 1000L);
+            double idleTps = (loop.currentTick() - idleStartTick) / ((System.nanoTime() - idleStart) / 1e9);
+            // Warmup ticks go into a histogram nobody reads
+            loop.measure();
+
+            LOGGER.info("Warming up for " + options.warmupSeconds() + " s with " + options.clients() + " clients");
+            generator.run(options.clients(), options.warmupSeconds() * 1000L);
+
+            LOGGER.info("Measuring for " + options.durationSeconds() + " s");
+            Histogram loadTicks = loop.measure();
+            int loadStartTick = loop.currentTick();
+            LoadGenerator.Results results = generator.run(options.clients(), options.durationSeconds() * 1000L);
+            double loadTps = (loop.currentTick() - loadStartTick) / results.seconds();
+            loop.measure();
+
+            report(options, results, idleTicks, idleTps, loadTicks, loadTps, backends);
+        }
+        finally {
+            loop.call(() -> {
+                if (plugin.isEnabled()) host.setEnabled(false);
+                return null;
+            });
+            loop.stop();
+            host.close();
+            backends.forEach(StandInBackend::stop);
+            deleteRecursively(root);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Every snapshot and index the endpoints need is filled in a tick or two after enabling
+    private static void awaitReady(LoadGenerator generator, boolean gateway) throws Exception {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        List<String> targets = new ArrayList<>(List.of("/server/stats", "/server/players", "/server/bans"));
+        if (gateway) targets.add("/network/stats");
+
+        for (String target : targets) {
+            int status = 0;
+            while (System.nanoTime() < deadline && (status = generator.probe(target)) != 200) {
+                Thread.sleep(100);
+            }
+            if (status != 200) throw new IllegalStateException(target + " still answers " + status + " after 30 s");
+        }
+    }
+
+    private static void report(Options options, LoadGenerator.Results results, Histogram idleTicks, double idleTps, Histogram loadTicks, double loadTps,
+                               List<StandInBackend> backends) throws IOException {
+        long requests = results.all.count();
+        double throughput = requests / results.seconds();
+        double addedMean = loadTicks.meanMillis() - idleTicks.meanMillis();
+        double addedP99 = loadTicks.percentileMillis(0.99) - idleTicks.percentileMillis(0.99);
+
+        StringBuilder text = new StringBuilder(2048);
+        text.append(String.format(Locale.ROOT, "%nCommandBlock load test: %d clients for %d s, %d players online (Essentials %s)%n",
+                options.clients(), options.durationSeconds(), options.players(), options.essentials() ? "on" : "off"));
+        text.append(String.format(Locale.ROOT, "Mix          %s%n", options.mix()));
+        text.append(String.format(Locale.ROOT, "Requests     %,d in %.1f s = %,.0f req/s%n", requests, results.seconds(), throughput));
+        text.append(String.format(Locale.ROOT, "Responses    2xx %,d  3xx %,d  4xx %,d  5xx %,d  no response %,d  (429: %,d, 503: %,d)%n",
+                results.statusClasses.get(2), results.statusClasses.get(3), results.statusClasses.get(4), results.statusClasses.get(5),
+                results.statusClasses.get(0), results.tooManyRequests.get(), results.unavailable.get()));
+        text.append(String.format(Locale.ROOT, "Latency      %s%n", latency(results.all)));
+        results.byOperation.forEach((name, histogram) ->
+                text.append(String.format(Locale.ROOT, "  %-10s %,9d  %s%n", name, histogram.count(), latency(histogram))));
+        text.append(String.format(Locale.ROOT, "Tick tasks   idle: mean %.3f ms  p99 %.3f ms   load: mean %.3f ms  p99 %.3f ms  max %.3f ms%n",
+                idleTicks.meanMillis(), idleTicks.percentileMillis(0.99), loadTicks.meanMillis(), loadTicks.percentileMillis(0.99), loadTicks.maxMillis()));
+        text.append(String.format(Locale.ROOT, "API cost     +%.3f ms per tick on average (%.2f%% of a 50 ms tick), +%.3f ms at p99%n",
+                addedMean, addedMean / 50 * 100, addedP99));
+        text.append(String.format(Locale.ROOT, "TPS          idle %.2f  load %.2f%n", idleTps, loadTps));
+        long backendRequests = backends.stream().mapToLong(StandInBackend::requests).sum();
+        if (!backends.isEmpty()) {
+            text.append(String.format(Locale.ROOT, "Backends     %d up, %d down, %d ms delay: %,d requests received in all phases%n",
+                    backends.size(), options.backendsDown(), options.backendDelayMillis(), backendRequests));
+        }
+        System.out.print(text);
+
+        if (options.out().isEmpty()) return;
+
+        JsonObject json = new JsonObject();
+        json.addProperty("clients", options.clients());
+        json.addProperty("players", options.players());
+        json.addProperty("essentials", options.essentials());
+        json.addProperty("durationSeconds", results.seconds());
+        json.addProperty("tickWorkMillis", options.tickWorkMillis());
+        json.addProperty("mix", options.mix().toString());
+        json.addProperty("requests", requests);
+        json.addProperty("throughput", throughput);
+        json.addProperty("noResponse", results.statusClasses.get(0));
+        json.addProperty("clientErrors", results.statusClasses.get(4));
+        json.addProperty("serverErrors", results.statusClasses.get(5));
+        json.add("latency", latencyJson(results.all));
+
+        JsonObject operations = new JsonObject();
+        results.byOperation.forEach((name, histogram) -> operations.add(name, latencyJson(histogram)));
+        json.add("operations", operations);
+
+        JsonObject ticks = new JsonObject();
+        ticks.addProperty("idleMeanMillis", idleTicks.meanMillis());
+        ticks.addProperty("idleP99Millis", idleTicks.percentileMillis(0.99));
+        ticks.addProperty("loadMeanMillis", loadTicks.meanMillis());
+        ticks.addProperty("loadP99Millis", loadTicks.percentileMillis(0.99));
+        ticks.addProperty("loadMaxMillis", loadTicks.maxMillis());
+        ticks.addProperty("addedMeanMillis", addedMean);
+        ticks.addProperty("addedP99Millis", addedP99);
+        ticks.addProperty("idleTps", idleTps);
+        ticks.addProperty("loadTps", loadTps);
+        json.add("ticks", ticks);
+
+        if (!backends.isEmpty()) {
+            JsonObject gateway = new JsonObject();
+            gateway.addProperty("backends", backends.size());
+            gateway.addProperty("backendsDown", options.backendsDown());
+            gateway.addProperty("backendDelayMillis", options.backendDelayMillis());
+            gateway.addProperty("backendRequests", backendRequests);
+            json.add("gateway", gateway);
+        }
+
+        Path out = Path.of(options.out());
+        if (out.getParent() != null) Files.createDirectories(out.getParent());
+        Files.writeString(out, new GsonBuilder().setPrettyPrinting().create().toJson(json), StandardCharsets.UTF_8);
+        System.out.println("Written to " + out);
+    }
+
+    private static String latency(Histogram histogram) {
+        return String.format(Locale.ROOT, "p50 %.3f ms  p99 %.3f ms  p999 %.3f ms  max %.3f ms",
+                histogram.percentileMillis(0.5), histogram.percentileMillis(0.99), histogram.percentileMillis(0.999), histogram.maxMillis());
+    }
+
+    private static JsonObject latencyJson(Histogram histogram) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", histogram.count());
+        json.addProperty("p50Millis", histogram.percentileMillis(0.5));
+        json.addProperty("p99Millis", histogram.percentileMillis(0.99));
+        json.addProperty("p999Millis", histogram.percentileMillis(0.999));
+        json.addProperty("maxMillis", histogram.maxMillis());
+        return json;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.antaptive.commandBlock.loadtest;
+
+import io.papermc.paper.plugin.configuration.PluginMeta;
+import io.papermc.paper.plugin.provider.classloader.ConfiguredPluginClassLoader;
+import io.papermc.paper.plugin.provider.classloader.PluginClassLoaderGroup;
+
+import org.bukkit.Server;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Loads CommandBlock the way Paper does. JavaPlugin refuses to be created by
+// anything but a plugin class loader, so this is one: the plugin's classes are
+// loaded from the build output by this loader rather than its parent, and when
+// CommandBlock's constructor runs, init() hands it the stand-in server, its
+// plugin.yml and its data folder.
+//
+// ConfiguredPluginClassLoader and JavaPlugin.init are Paper internals, so this
+// is the class to look at when a Paper update breaks the harness.
+final class PluginHost extends URLClassLoader implements ConfiguredPluginClassLoader {
+
+    private static final String PLUGIN_PACKAGE = "com.antaptive.commandBlock.";
+    private static final String HARNESS_PACKAGE = "com.antaptive.commandBlock.loadtest.";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final Server server;
+    private final File classes;
+    private final File dataFolder;
+    private final PluginDescriptionFile description;
+    private JavaPlugin plugin;
+
+    PluginHost(Server server, File classes, File dataFolder) throws IOException {
+        super(new URL[]{classes.toURI().toURL()}, PluginHost.class.getClassLoader());
+        this.server = server;
+        this.classes = classes;
+        this.dataFolder = dataFolder;
+
+        try (InputStream in = new FileInputStream(new File(classes, "plugin.yml"))) {
+            this.description = new PluginDescriptionFile(in);
+        }
+        catch (InvalidDescriptionException e) {
+            throw new IOException("Invalid plugin.yml in " + classes, e);
+        }
+    }
+
+    // Creates the plugin, saves its default config.yml with the given changes
+    // and returns it, not yet enabled
+    JavaPlugin load(Map<String, Object> config) throws ReflectiveOperationException {
+        Class<? extends JavaPlugin> main = loadClass(description.getMainClass(), true).asSubclass(JavaPlugin.class);
+        JavaPlugin created = main.getDeclaredConstructor().newInstance();
+
+        created.saveDefaultConfig();
+        FileConfiguration file = created.getConfig();
+        config.forEach(file::set);
+        created.saveConfig();
+        return created;
+    }
+
+    // Like the server enabling or disabling it. Main thread only.
+    void setEnabled(boolean enabled) throws ReflectiveOperationException {
+        Method setEnabled = JavaPlugin.class.getDeclaredMethod("setEnabled", boolean.class);
+        setEnabled.setAccessible(true);
+        setEnabled.invoke(plugin, enabled);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        // The parent can see the plugin's classes too, but if it loaded them they
+        // wouldn't belong to this loader and JavaPlugin's constructor would refuse
+        if (!name.startsWith(PLUGIN_PACKAGE) || name.startsWith(HARNESS_PACKAGE)) return super.loadClass(name, resolve);
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) loaded = findClass(name);
+            if (resolve) resolveClass(loaded);
+            return loaded;
+        }
+    }
+
+    @Override
+    public Class<?> loadClass(String name, boolean resolve, boolean checkGlobal, boolean checkLibraries) throws ClassNotFoundException {
+        return loadClass(name, resolve);
+    }
+
+    @Override
+    public PluginMeta getConfiguration() {
+        return description;
+    }
+
+    // Called from JavaPlugin's constructor. The parameters of JavaPlugin.init
+    // have changed between Paper versions, so they are filled in by type.
+    @Override
+    public void init(JavaPlugin javaPlugin) {
+        plugin = javaPlugin;
+
+        Method init = null;
+        for (Method method : JavaPlugin.class.getDeclaredMethods()) {
+            if (!method.getName().equals("init") || Modifier.isStatic(method.getModifiers())) continue;
+            if (init == null || method.getParameterCount() > init.getParameterCount()) init = method;
+        }
+        if (init == null) throw new IllegalStateException("JavaPlugin has no init method");
+
+        Class<?>[] types = init.getParameterTypes();
+        Object[] args = new Object[types.length];
+        boolean dataFolderPassed = false;
+
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = types[i];
+            if (type.isInstance(server)) args[i] = server;
+            else if (type.isInstance(description)) args[i] = description;
+            else if (type.isInstance(this)) args[i] = this;
+            else if (type == File.class) {
+                // The data folder comes before the plugin's file
+                args[i] = dataFolderPassed ? classes : dataFolder;
+                dataFolderPassed = true;
+            }
+            else if (type == Logger.class) args[i] = Logger.getLogger(description.getName());
+            else args[i] = loggerOf(type);
+        }
+
+        try {
+            init.setAccessible(true);
+            init.invoke(javaPlugin, args);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not initialize " + description.getName(), e);
+        }
+    }
+
+    // Newer versions take an Adventure ComponentLogger, made with ComponentLogger.logger(name)
+    private Object loggerOf(Class<?> type) {
+        try {
+            Method factory = type.getMethod("logger", String.class);
+            if (Modifier.isStatic(factory.getModifiers())) return factory.invoke(null, description.getName());
+        }
+        catch (ReflectiveOperationException ignored) {
+        }
+        // The PluginLoader of old versions, which nothing uses
+        return null;
+    }
+
+    @Override
+    public JavaPlugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public PluginClassLoaderGroup getGroup() {
+        return null;
+    }
+}
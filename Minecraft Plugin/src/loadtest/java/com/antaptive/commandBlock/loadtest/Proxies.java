@@ -0,0 +1,54 @@
+package com.antaptive.commandBlock.loadtest;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+// Stand-ins for Bukkit interfaces. Only the methods the plugin actually calls
+// are answered; everything else returns null, zero or false, so new methods in
+// the Paper API don't break the harness.
+final class Proxies {
+
+    // Returned by a handler for methods it doesn't answer
+    static final Object DEFAULT = new Object();
+
+    interface Handler {
+        Object invoke(String method, Object[] args) throws Throwable;
+    }
+
+    private Proxies() {
+    }
+
+    static <T> T of(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(Proxies.class.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            Object[] arguments = args != null ? args : new Object[0];
+
+            switch (method.getName()) {
+                case "equals":
+                    if (arguments.length == 1 && method.getParameterTypes()[0] == Object.class) return self == arguments[0];
+                    break;
+                case "hashCode":
+                    if (arguments.length == 0) return System.identityHashCode(self);
+                    break;
+                case "toString":
+                    if (arguments.length == 0) return "StandIn" + type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+                    break;
+            }
+
+            Object result = handler.invoke(method.getName(), arguments);
+            if (result != DEFAULT) return result;
+
+            // Default methods often just forward to one the handler answers
+            if (method.isDefault()) return InvocationHandler.invokeDefault(self, method, arguments);
+            return defaultValue(method.getReturnType());
+        });
+
+        return type.cast(proxy);
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        // The zero value of any primitive type, boxed
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+}
@@ -0,0 +1,96 @@
+package com.antaptive.commandBlock.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Another CommandBlock server in the network, for putting gateway mode under
+// load without running a second plugin. Answers /server/stats and the
+// /server/player/... actions the way a real backend does, after delayMillis.
+// Its player count changes every second, so its stats' ETag does too.
+final class StandInBackend {
+
+    private final String name;
+    private final String token;
+    private final long delayMillis;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong requests = new AtomicLong();
+
+    StandInBackend(String name, String token, long delayMillis) throws IOException {
+        this.name = name;
+        this.token = token;
+        this.delayMillis = delayMillis;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        try (exchange) {
+            if (!("Bearer " + token).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                send(exchange, 401, "{\"error\": \"Unauthorized\"}");
+                return;
+            }
+
+            if (delayMillis > 0) Thread.sleep(delayMillis);
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/server/stats")) stats(exchange);
+            else if (path.startsWith("/server/player/") && exchange.getRequestMethod().equals("POST")) send(exchange, 200, "{\"success\": true}");
+            else send(exchange, 404, "{\"error\": \"Not found\"}");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        int online = (int) (System.currentTimeMillis() / 1000 % 50);
+        String etag = "W/\"" + name + "-" + online + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        send(exchange, 200, String.format(Locale.ROOT,
+                "{\"maxPlayers\": 100, \"onlinePlayers\": %d, \"tps\": 20.0, \"playerList\": [], \"gameVersion\": \"1.21.10\", \"uptime\": \"0d 0h 0m 0s\"}",
+                online));
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.antaptive.commandBlock.loadtest;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+
+import org.bukkit.BanEntry;
+import org.bukkit.BanList;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+// An in-process Paper server as far as CommandBlock can tell: online players,
+// a larger population of offline players with known names, a profile ban list
+// and a whitelist, all in memory. Kicked players join again after rejoinTicks,
+// so the player count stays steady while kicks are part of the load.
+final class StandInServer {
+
+    record Settings(int players, int offlinePlayers, int bans, int rejoinTicks) {}
+
+    private record Profile(UUID id, String name) {}
+
+    private record Ban(Profile target, String reason, String source, Date created, Date expires) {}
+
+    // One online player. afk is only read through the fake Essentials.
+    private final class FakePlayer {
+        final Profile profile;
+        final int ping;
+        final long lastLogin = System.currentTimeMillis();
+        final Player handle;
+        volatile boolean afk;
+
+        FakePlayer(Profile profile, int ping, boolean afk) {
+            this.profile = profile;
+            this.ping = ping;
+            this.afk = afk;
+            this.handle = Proxies.of(Player.class, this::call);
+        }
+
+        private Object call(String method, Object[] args) {
+            return switch (method) {
+                case "getName" -> profile.name();
+                case "getUniqueId" -> profile.id();
+                case "getPing" -> ping;
+                case "getLastLogin", "getFirstPlayed" -> lastLogin;
+                case "getWorld" -> world;
+                case "isOnline" -> online.containsKey(profile.id());
+                case "isWhitelisted" -> whitelist.contains(profile.id());
+                case "isBanned" -> bans.containsKey(profile.id());
+                case "hasPermission", "isOp" -> true;
+                case "getPlayerProfile" -> profile(profile.id(), profile.name());
+                case "kick", "kickPlayer" -> {
+                    kick(this);
+                    yield null;
+                }
+                default -> Proxies.DEFAULT;
+            };
+        }
+    }
+
+    private final Logger logger;
+    private final TickLoop loop;
+    private final File worldContainer;
+    private final Settings settings;
+    private final Server server;
+    private final World world;
+    private final PluginManager pluginManager;
+    private final BanList<?> banList;
+    private final ConsoleCommandSender console;
+
+    // Every name the stand-in Mojang knows, lowercase
+    private final Map<String, Profile> known = new HashMap<>();
+    private final Map<UUID, Profile> knownIds = new HashMap<>();
+    private final List<Profile> offline = new ArrayList<>();
+    private final Map<UUID, FakePlayer> online = new ConcurrentHashMap<>();
+    private final Set<UUID> whitelist = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Ban> bans = new ConcurrentHashMap<>();
+    private final Map<String, PluginCommand> commands = new ConcurrentHashMap<>();
+
+    private volatile Plugin plugin;
+    private volatile Plugin essentials;
+    private volatile String disabledBecause;
+
+    StandInServer(Logger logger, TickLoop loop, File worldContainer, Settings settings) {
+        this.logger = logger;
+        this.loop = loop;
+        this.worldContainer = worldContainer;
+        this.settings = settings;
+
+        this.server = Proxies.of(Server.class, this::serverCall);
+        this.world = Proxies.of(World.class, (method, args) -> switch (method) {
+            case "getName" -> "world";
+            // Roughly what a survival server has loaded per player
+            case "getChunkCount" -> 441 + online.size() * 120;
+            case "getEntityCount" -> 200 + online.size() * 25;
+            default -> Proxies.DEFAULT;
+        });
+        this.pluginManager = Proxies.of(PluginManager.class, this::pluginManagerCall);
+        this.banList = Proxies.of(BanList.class, this::banListCall);
+        this.console = Proxies.of(ConsoleCommandSender.class, (method, args) -> switch (method) {
+            case "getName" -> "CONSOLE";
+            case "hasPermission", "isOp" -> true;
+            default -> Proxies.DEFAULT;
+        });
+
+        Random random = new Random(1);
+        for (int i = 0; i < settings.players(); i++) {
+            Profile profile = remember("Player_" + i);
+            online.put(profile.id(), new FakePlayer(profile, 20 + random.nextInt(180), random.nextInt(10) == 0));
+        }
+        for (int i = 0; i < settings.offlinePlayers(); i++) {
+            offline.add(remember("Offline_" + i));
+        }
+
+        // Bans spread over the last year, a few of them temporary
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < settings.bans() && i < offline.size(); i++) {
+            Profile profile = offline.get(offline.size() - 1 - i);
+            Date created = new Date(now - (long) (random.nextDouble() * 365 * 86_400_000L));
+            Date expires = random.nextInt(5) == 0 ? new Date(now + 86_400_000L * (1 + random.nextInt(30))) : null;
+            bans.put(profile.id(), new Ban(profile, "Load test ban " + i, random.nextBoolean() ? "Console" : "Moderator", created, expires));
+        }
+    }
+
+    private Profile remember(String name) {
+        Profile profile = new Profile(UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes()), name);
+        known.put(name.toLowerCase(Locale.ROOT), profile);
+        knownIds.put(profile.id(), profile);
+        return profile;
+    }
+
+    Server handle() {
+        return server;
+    }
+
+    void setPlugin(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    void setEssentials(Plugin essentials) {
+        this.essentials = essentials;
+    }
+
+    // Why the plugin disabled itself, if it did
+    String disabledBecause() {
+        return disabledBecause;
+    }
+
+    boolean isAfk(UUID id) {
+        FakePlayer player = online.get(id);
+        return player != null && player.afk;
+    }
+
+    List<String> onlineNames() {
+        List<String> names = new ArrayList<>(online.size());
+        for (FakePlayer player : online.values()) names.add(player.profile.name());
+        return names;
+    }
+
+    List<String> offlineNames() {
+        List<String> names = new ArrayList<>(offline.size());
+        for (Profile profile : offline) names.add(profile.name());
+        return names;
+    }
+
+    private void kick(FakePlayer player) {
+        if (online.remove(player.profile.id()) == null) return;
+
+        loop.scheduler().runTaskLater(plugin, () -> {
+            // Banned or removed from the whitelist since, but it's a load test, so come back anyway
+            online.put(player.profile.id(), new FakePlayer(player.profile, player.ping, player.afk));
+        }, settings.rejoinTicks());
+    }
+
+    private Object serverCall(String method, Object[] args) throws Exception {
+        return switch (method) {
+            case "getName" -> "StandIn";
+            case "getVersion" -> "stand-in (MC: 1.21.10)";
+            case "getBukkitVersion" -> "1.21.10-R0.1-SNAPSHOT";
+            case "getMinecraftVersion" -> "1.21.10";
+            case "getLogger" -> logger;
+            case "getMaxPlayers" -> Math.max(100, settings.players() * 2);
+            case "getOnlinePlayers" -> {
+                List<Player> players = new ArrayList<>(online.size());
+                for (FakePlayer player : online.values()) players.add(player.handle);
+                yield Collections.unmodifiableList(players);
+            }
+            case "getPlayer", "getPlayerExact" -> findOnline(args[0]);
+            case "getOfflinePlayer" -> offlinePlayer(args[0] instanceof UUID id ? id : lookup((String) args[0]).id());
+            case "getWhitelistedPlayers" -> {
+                Set<OfflinePlayer> players = new HashSet<>();
+                for (UUID id : whitelist) players.add(offlinePlayer(id));
+                yield players;
+            }
+            case "hasWhitelist" -> true;
+            case "getBanList" -> banList;
+            case "createProfile" -> profile(args[0] instanceof UUID id ? id : null, args.length > 1 ? (String) args[1] : args[0] instanceof String name ? name : null);
+            case "getScheduler" -> loop.scheduler();
+            case "getPluginManager" -> pluginManager;
+            case "getPluginCommand" -> command((String) args[0]);
+            case "getConsoleSender" -> console;
+            // Never actually stop the stand-in, even if /server/stop is part of the load
+            case "dispatchCommand" -> true;
+            case "getTPS" -> {
+                double tps = Math.min(20.0, 1000.0 / Math.max(50.0, loop.averageTickMillis()));
+                yield new double[]{tps, tps, tps};
+            }
+            case "getAverageTickTime" -> loop.averageTickMillis();
+            case "getCurrentTick" -> loop.currentTick();
+            case "isPrimaryThread" -> loop.isMainThread();
+            case "getWorlds" -> List.of(world);
+            case "getWorldContainer" -> worldContainer;
+            default -> Proxies.DEFAULT;
+        };
+    }
+
+    private Player findOnline(Object key) {
+        if (key instanceof UUID id) {
+            FakePlayer player = online.get(id);
+            return player != null ? player.handle : null;
+        }
+
+        for (FakePlayer player : online.values()) {
+            if (player.profile.name().equalsIgnoreCase((String) key)) return player.handle;
+        }
+        return null;
+    }
+
+    // Known names resolve to their profile, unknown ones to an offline-mode UUID
+    private Profile lookup(String name) {
+        Profile profile = known.get(name.toLowerCase(Locale.ROOT));
+        return profile != null ? profile : new Profile(UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes()), name);
+    }
+
+    private Profile lookup(UUID id) {
+        Profile profile = knownIds.get(id);
+        return profile != null ? profile : new Profile(id, null);
+    }
+
+    private OfflinePlayer offlinePlayer(UUID id) {
+        return Proxies.of(OfflinePlayer.class, (method, args) -> switch (method) {
+            case "getUniqueId" -> id;
+            case "getName" -> lookup(id).name();
+            case "isOnline" -> online.containsKey(id);
+            case "getPlayer" -> findOnline(id);
+            case "isWhitelisted" -> whitelist.contains(id);
+            case "setWhitelisted" -> {
+                if ((Boolean) args[0]) whitelist.add(id);
+                else whitelist.remove(id);
+                yield null;
+            }
+            case "isBanned" -> bans.containsKey(id);
+            default -> Proxies.DEFAULT;
+        });
+    }
+
+    // Profiles only complete for names the stand-in knows, like Mojang only knowing real accounts
+    private PlayerProfile profile(UUID id, String name) {
+        Profile[] resolved = {new Profile(id, name)};
+
+        return Proxies.of(PlayerProfile.class, (method, args) -> switch (method) {
+            case "getId", "getUniqueId" -> resolved[0].id();
+            case "getName" -> resolved[0].name();
+            case "isComplete" -> resolved[0].id() != null && resolved[0].name() != null;
+            case "complete", "completeFromCache" -> {
+                Profile found = resolved[0].name() != null ? known.get(resolved[0].name().toLowerCase(Locale.ROOT)) : lookup(resolved[0].id());
+                if (found == null || found.name() == null) yield false;
+                resolved[0] = found;
+                yield true;
+            }
+            default -> Proxies.DEFAULT;
+        });
+    }
+
+    private PluginCommand command(String name) throws ReflectiveOperationException {
+        if (plugin == null) return null;
+
+        // Both "restarthttpserver" and "commandblock:restarthttpserver"
+        String label = name.substring(name.indexOf(':') + 1);
+        PluginCommand command = commands.get(label);
+        if (command == null) {
+            Constructor<PluginCommand> constructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
+            constructor.setAccessible(true);
+            command = constructor.newInstance(label, plugin);
+            commands.put(label, command);
+        }
+        return command;
+    }
+
+    private Object pluginManagerCall(String method, Object[] args) {
+        return switch (method) {
+            case "getPlugin" -> "Essentials".equals(args[0]) ? essentials : plugin != null && plugin.getName().equals(args[0]) ? plugin : null;
+            case "isPluginEnabled" -> {
+                Object target = args[0] instanceof String name ? pluginManagerCall("getPlugin", args) : args[0];
+                yield target != null && (target == plugin || target == essentials);
+            }
+            case "disablePlugin" -> {
+                disabledBecause = "the plugin disabled itself; check the log above";
+                yield null;
+            }
+            default -> Proxies.DEFAULT;
+        };
+    }
+
+    private UUID targetId(Object target) {
+        if (target instanceof PlayerProfile profile) return profile.getId() != null ? profile.getId() : lookup(profile.getName()).id();
+        return lookup((String) target).id();
+    }
+
+    private Object banListCall(String method, Object[] args) {
+        return switch (method) {
+            case "getBanEntry" -> {
+                Ban ban = bans.get(targetId(args[0]));
+                yield ban != null ? banEntry(ban) : null;
+            }
+            case "isBanned" -> bans.containsKey(targetId(args[0]));
+            case "pardon" -> {
+                bans.remove(targetId(args[0]));
+                yield null;
+            }
+            case "addBan" -> {
+                UUID id = targetId(args[0]);
+                Profile known = lookup(id);
+                Date expires = switch (args[2]) {
+                    case Date date -> date;
+                    case Instant instant -> Date.from(instant);
+                    case Duration duration -> new Date(System.currentTimeMillis() + duration.toMillis());
+                    case null, default -> null;
+                };
+
+                Ban ban = new Ban(new Profile(id, known.name()), (String) args[1], args[3] != null ? (String) args[3] : "Server", new Date(), expires);
+                bans.put(id, ban);
+                yield banEntry(ban);
+            }
+            case "getEntries", "getBanEntries" -> {
+                Set<BanEntry<?>> entries = new HashSet<>();
+                for (Ban ban : bans.values()) entries.add(banEntry(ban));
+                yield entries;
+            }
+            default -> Proxies.DEFAULT;
+        };
+    }
+
+    private BanEntry<?> banEntry(Ban ban) {
+        return Proxies.of(BanEntry.class, (method, args) -> switch (method) {
+            case "getBanTarget" -> profile(ban.target().id(), ban.target().name());
+            case "getTarget" -> ban.target().name();
+            case "getReason" -> ban.reason();
+            case "getSource" -> ban.source();
+            case "getCreated" -> ban.created();
+            case "getExpiration" -> ban.expires();
+            default -> Proxies.DEFAULT;
+        });
+    }
+}
@@ -0,0 +1,276 @@
+package com.antaptive.commandBlock.loadtest;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// The stand-in server's main thread. Ticks 20 times a second like Paper: each
+// tick optionally spends tickWorkMillis standing in for the game itself, then
+// runs the scheduled tasks that are due. Only the time spent in tasks is
+// recorded, which is the time the plugin costs each tick.
+final class TickLoop {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Paper averages tick times over the last 100 ticks
+    private static final int AVERAGE_WINDOW = 100;
+
+    private final Logger logger;
+    private final long workNanos;
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger nextTaskId = new AtomicInteger(1);
+    private final BukkitScheduler scheduler;
+
+    // Tasks that haven't finished or been cancelled, so they can be cancelled from any thread
+    private final ConcurrentHashMap<Integer, Task> live = new ConcurrentHashMap<>();
+    // Scheduled from any thread, picked up at the start of the next tick
+    private final ConcurrentLinkedQueue<Task> scheduled = new ConcurrentLinkedQueue<>();
+    // Main thread only
+    private final PriorityQueue<Task> due = new PriorityQueue<>(Comparator.comparingLong((Task t) -> t.nextRun).thenComparingInt(t -> t.id));
+    private final long[] tickTimes = new long[AVERAGE_WINDOW];
+
+    private volatile boolean running;
+    private volatile int currentTick;
+    private volatile double averageTickMillis;
+    private volatile Histogram taskTimes = new Histogram();
+    private Thread thread;
+
+    TickLoop(Logger logger, double tickWorkMillis) {
+        this.logger = logger;
+        this.workNanos = (long) (Math.max(0, tickWorkMillis) * 1_000_000);
+        this.scheduler = Proxies.of(BukkitScheduler.class, this::schedulerCall);
+    }
+
+    BukkitScheduler scheduler() {
+        return scheduler;
+    }
+
+    void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("Server thread").start(this::loop);
+    }
+
+    void stop() {
+        running = false;
+        try {
+            thread.join(5000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        asyncExecutor.shutdownNow();
+    }
+
+    boolean isMainThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    int currentTick() {
+        return currentTick;
+    }
+
+    double averageTickMillis() {
+        return averageTickMillis;
+    }
+
+    // Starts a new measurement of per-tick task time and returns it
+    Histogram measure() {
+        Histogram histogram = new Histogram();
+        taskTimes = histogram;
+        return histogram;
+    }
+
+    // Runs something on the main thread and waits for it, like the server
+    // calling onEnable and onDisable
+    <T> T call(Callable<T> callable) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        schedule(() -> {
+            try {
+                result.complete(callable.call());
+            }
+            catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, null, 0, 0, false);
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    private void loop() {
+        long next = System.nanoTime();
+
+        while (running) {
+            tick();
+
+            // Like the real server, a late tick is followed by the next one straight away
+            next += TICK_NANOS;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+            }
+            else if (wait < -TICK_NANOS * 40) {
+                // More than two seconds behind, so stop trying to catch up
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        int tick = ++currentTick;
+
+        for (Task task; (task = scheduled.poll()) != null; ) {
+            task.nextRun = tick + task.delay;
+            due.add(task);
+        }
+
+        // Stands in for entities, chunks and everything else a tick does
+        while (System.nanoTime() - start < workNanos) {
+            Thread.onSpinWait();
+        }
+
+        long tasksStart = System.nanoTime();
+        List<Task> repeating = new ArrayList<>();
+        while (!due.isEmpty() && due.peek().nextRun <= tick) {
+            Task task = due.poll();
+            if (task.cancelled) {
+                live.remove(task.id);
+                continue;
+            }
+
+            if (task.async) asyncExecutor.execute(task::run);
+            else task.run();
+
+            if (task.period > 0 && !task.cancelled) {
+                task.nextRun = tick + task.period;
+                repeating.add(task);
+            }
+            else {
+                live.remove(task.id);
+            }
+        }
+        due.addAll(repeating);
+
+        long end = System.nanoTime();
+        taskTimes.record(end - tasksStart);
+
+        tickTimes[tick % AVERAGE_WINDOW] = end - start;
+        long total = 0;
+        for (long time : tickTimes) total += time;
+        averageTickMillis = total / (double) Math.min(tick, AVERAGE_WINDOW) / 1e6;
+    }
+
+    private Task schedule(Runnable runnable, Plugin owner, long delay, long period, boolean async) {
+        Task task = new Task(nextTaskId.getAndIncrement(), runnable, owner, Math.max(1, delay), period > 0 ? Math.max(1, period) : 0, async);
+        live.put(task.id, task);
+        scheduled.add(task);
+        return task;
+    }
+
+    // Answers the BukkitScheduler methods the plugin uses: runTask, runTaskLater,
+    // runTaskTimer and their Asynchronously versions, including the Consumer
+    // overloads, plus cancelTask and cancelTasks.
+    private Object schedulerCall(String method, Object[] args) {
+        switch (method) {
+            case "cancelTask" -> {
+                Task task = live.get((Integer) args[0]);
+                if (task != null) task.cancelled = true;
+                return null;
+            }
+            case "cancelTasks" -> {
+                for (Task task : live.values()) {
+                    if (task.owner == args[0]) task.cancelled = true;
+                }
+                return null;
+            }
+            case "isCurrentlyRunning", "isQueued" -> {
+                return false;
+            }
+        }
+
+        if (!method.startsWith("runTask")) return Proxies.DEFAULT;
+
+        Plugin owner = (Plugin) args[0];
+        List<Long> times = new ArrayList<>(2);
+        for (int i = 2; i < args.length; i++) {
+            if (args[i] instanceof Long time) times.add(time);
+        }
+
+        boolean async = method.endsWith("Asynchronously");
+        long delay = !times.isEmpty() ? times.get(0) : 0;
+        long period = method.startsWith("runTaskTimer") && times.size() > 1 ? times.get(1) : 0;
+
+        if (args[1] instanceof Runnable runnable) {
+            return schedule(runnable, owner, delay, period, async).handle;
+        }
+
+        // The Consumer<BukkitTask> overloads, which return nothing
+        @SuppressWarnings("unchecked")
+        Consumer<BukkitTask> consumer = (Consumer<BukkitTask>) args[1];
+        Task[] task = new Task[1];
+        task[0] = schedule(() -> consumer.accept(task[0].handle), owner, delay, period, async);
+        return null;
+    }
+
+    private final class Task {
+        final int id;
+        final Runnable runnable;
+        final Plugin owner;
+        final long delay;
+        final long period;
+        final boolean async;
+        final BukkitTask handle;
+
+        // Main thread only
+        long nextRun;
+        volatile boolean cancelled;
+
+        Task(int id, Runnable runnable, Plugin owner, long delay, long period, boolean async) {
+            this.id = id;
+            this.runnable = runnable;
+            this.owner = owner;
+            this.delay = delay;
+            this.period = period;
+            this.async = async;
+            this.handle = Proxies.of(BukkitTask.class, (method, args) -> switch (method) {
+                case "getTaskId" -> id;
+                case "getOwner" -> owner;
+                case "isSync" -> !async;
+                case "isCancelled" -> cancelled;
+                case "cancel" -> {
+                    cancelled = true;
+                    yield null;
+                }
+                default -> Proxies.DEFAULT;
+            });
+        }
+
+        void run() {
+            try {
+                runnable.run();
+            }
+            catch (Throwable e) {
+                logger.log(Level.WARNING, "Task " + id + " threw an exception", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.PlayerActions.Action;
+import com.antaptive.commandBlock.ProfileResolver.ResolvedProfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+// Player actions to be applied later: anything sent with an 'at' time, and the
+// removal at the end of a timed whitelist. Pending actions sit in a TimingWheel
+// with one-second ticks, so adding, cancelling and expiring them never scans.
+// A task on the main thread advances the wheel and applies what has come due,
+// at most scheduled-batch-size a tick and only until main-thread-budget-ms is
+// used up, so thousands expiring together are spread over several ticks. Each
+// ban or whitelist change saves its list file, so the budget is usually what
+// ends a tick's batch.
+//
+// Every action is also kept in plugins/CommandBlock/scheduled.journal, and is
+// only accepted once it's on disk. An action is marked done after it's applied,
+// so one interrupted by a crash is applied again on the next start. The journal
+// is rewritten with only the pending actions on start, and whenever the done
+// records outnumber them.
+public final class ActionScheduler implements Runnable {
+
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_DONE = 2;
+    private static final int MAX_RECORD = 64 * 1024;
+    private static final int MIN_COMPACT = 1024;
+    private static final int MAX_REASON_LENGTH = 1024;
+
+    // A pending action. uuid is null only for kicks, which go by name.
+    // banExpires is 0 unless the action is a temporary ban.
+    public record Scheduled(long id, long at, Action action, @Nullable UUID uuid, String name, String reason, long banExpires) {}
+
+    private final CommandBlock plugin;
+    private final Path path;
+    private final int batchSize;
+    private final long budgetNanos;
+
+    // Guards the wheel, the timers and nextId
+    private final Object lock = new Object();
+    private final TimingWheel<Scheduled> wheel;
+    private final Map<Long, TimingWheel.Timer<Scheduled>> timers = new HashMap<>();
+    private long nextId = 1;
+
+    // Come due but not applied yet. Main thread only.
+    private final ArrayDeque<Scheduled> ready = new ArrayDeque<>();
+
+    // Every journal write happens on this thread, in order
+    private final ExecutorService writer;
+    private FileChannel journal;
+    private final Map<Long, Scheduled> journaled = new LinkedHashMap<>();
+    private int doneRecords;
+
+    private BukkitTask task;
+
+    public ActionScheduler(@NotNull CommandBlock plugin, @NotNull Path path, int batchSize, double budgetMillis) {
+        this.plugin = plugin;
+        this.path = path;
+        this.batchSize = Math.max(1, batchSize);
+        this.budgetNanos = Math.max(0, (long) (budgetMillis * 1_000_000));
+        this.wheel = new TimingWheel<>(tickOf(System.currentTimeMillis()));
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "CommandBlock-Schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Replays the journal and starts applying actions. Ones that came due while
+    // the server was down are applied in the first batches.
+    public void start() throws IOException {
+        List<Scheduled> pending = call(this::openJournal);
+
+        synchronized (lock) {
+            for (Scheduled scheduled : pending) {
+                timers.put(scheduled.id(), wheel.add(tickOf(scheduled.at()), scheduled));
+                nextId = Math.max(nextId, scheduled.id() + 1);
+            }
+        }
+
+        if (!pending.isEmpty()) plugin.getLogger().info("Loaded " + pending.size() + " scheduled actions.");
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    // Actions that haven't been applied yet stay in the journal for the next start
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out writing the scheduled actions journal.");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (journal != null) journal.close();
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close the scheduled actions journal", e);
+        }
+    }
+
+    // Returns once the action is safely on disk. A time in the past means the next tick.
+    public @NotNull Scheduled schedule(@NotNull Action action, @NotNull String playerName, @Nullable ResolvedProfile profile,
+                                       @NotNull String reason, long at, long banExpires) throws IOException {
+        if (action.needsProfile() && profile == null) throw new IllegalArgumentException("A profile is required for " + action.getId());
+
+        long id;
+        synchronized (lock) {
+            id = nextId++;
+        }
+
+        if (reason.length() > MAX_REASON_LENGTH) reason = reason.substring(0, MAX_REASON_LENGTH);
+        Scheduled scheduled = new Scheduled(id, at, action, profile != null ? profile.id() : null,
+                profile != null ? profile.name() : playerName, reason, banExpires);
+        call(() -> {
+            append(scheduled);
+            journal.force(false);
+            return null;
+        });
+
+        synchronized (lock) {
+            timers.put(id, wheel.add(tickOf(at), scheduled));
+        }
+        return scheduled;
+    }
+
+    // False if there's no such pending action, or it has already come due
+    public boolean cancel(long id) throws IOException {
+        synchronized (lock) {
+            TimingWheel.Timer<Scheduled> timer = timers.remove(id);
+            if (timer == null || !wheel.cancel(timer)) return false;
+        }
+
+        call(() -> {
+            appendDone(id);
+            journal.force(false);
+            return null;
+        });
+        return true;
+    }
+
+    // Cancels the players' pending actions of the given kind, so a newer request replaces them.
+    // Unlike everything else here this goes through every pending action.
+    public void cancel(@NotNull Set<UUID> uuids, @NotNull Action action) throws IOException {
+        if (uuids.isEmpty()) return;
+
+        List<Long> cancelled = new ArrayList<>();
+        synchronized (lock) {
+            timers.values().removeIf(timer -> {
+                Scheduled scheduled = timer.getValue();
+                if (scheduled.action() != action || scheduled.uuid() == null || !uuids.contains(scheduled.uuid())) return false;
+
+                wheel.cancel(timer);
+                cancelled.add(scheduled.id());
+                return true;
+            });
+        }
+
+        if (cancelled.isEmpty()) return;
+        call(() -> {
+            for (long id : cancelled) appendDone(id);
+            journal.force(false);
+            return null;
+        });
+    }
+
+    // Whitelisting a player again replaces a removal still to come from an earlier timed
+    // whitelisting. Everything that whitelists players calls this once they're on the
+    // whitelist, off the main thread. A failure is only logged; the whitelisting stands.
+    public void cancelWhitelistRemovals(@NotNull Set<UUID> uuids) {
+        try {
+            cancel(uuids, Action.WHITELIST_REMOVE);
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to cancel the scheduled whitelist removals of " + uuids.size() + " players", e);
+        }
+    }
+
+    // Pending actions, soonest first
+    public @NotNull List<Scheduled> list() {
+        List<Scheduled> pending = new ArrayList<>();
+        synchronized (lock) {
+            for (TimingWheel.Timer<Scheduled> timer : timers.values()) pending.add(timer.getValue());
+        }
+        pending.sort((a, b) -> a.at() != b.at() ? Long.compare(a.at(), b.at()) : Long.compare(a.id(), b.id()));
+        return pending;
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return timers.size();
+        }
+    }
+
+    @Override
+    public void run() {
+        long tick = tickOf(System.currentTimeMillis());
+        synchronized (lock) {
+            if (tick > wheel.getCurrentTick()) {
+                wheel.advance(tick, scheduled -> {
+                    timers.remove(scheduled.id());
+                    ready.add(scheduled);
+                });
+            }
+        }
+
+        // At least one action is applied every tick, however small the budget
+        long start = System.nanoTime();
+        for (int i = 0; i < batchSize && !ready.isEmpty(); i++) {
+            apply(ready.poll());
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+    }
+
+    private void apply(Scheduled scheduled) {
+        String error = null;
+        try {
+            ResolvedProfile profile = scheduled.uuid() != null ? new ResolvedProfile(scheduled.uuid(), scheduled.name()) : null;
+
+            if (scheduled.action() == Action.BAN && scheduled.banExpires() > 0) {
+                if (scheduled.banExpires() <= System.currentTimeMillis()) throw new IllegalStateException("The ban would already have run out.");
+                PlayerActions.ban(profile, scheduled.reason(), new Date(scheduled.banExpires()));
+            }
+            else {
+                PlayerActions.apply(scheduled.action(), scheduled.name(), profile, scheduled.reason());
+            }
+
+            if (profile != null && (scheduled.action() == Action.BAN || scheduled.action() == Action.UNBAN)) {
+                plugin.getBanIndex().refresh(profile.id(), profile.name());
+            }
+        }
+        catch (IllegalStateException e) {
+            error = String.valueOf(e.getMessage());
+        }
+        catch (RuntimeException e) {
+            error = "Internal server error";
+            plugin.getLogger().log(Level.SEVERE, "Error applying scheduled " + scheduled.action().getId() + " of " + scheduled.name(), e);
+        }
+
+        plugin.getAuditLog().record(new AuditLog.Entry(
+                System.currentTimeMillis(),
+                "scheduler",
+                "/server/player/" + scheduled.action().getId(),
+                scheduled.name(),
+                scheduled.reason(),
+                error == null ? 200 : 400,
+                error
+        ));
+
+        // Not forced; if this is lost the action is applied once more
+        writer.execute(() -> {
+            try {
+                appendDone(scheduled.id());
+            }
+            catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to mark scheduled action " + scheduled.id() + " as done", e);
+            }
+        });
+    }
+
+    // Rounded up, so nothing is applied before its time
+    private static long tickOf(long millis) {
+        return Math.floorDiv(millis + 999, 1000);
+    }
+
+    // Runs on the writer thread and waits for it
+    private <T> T call(Callable<T> work) throws IOException {
+        try {
+            return writer.submit(work).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the scheduled actions journal", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+        catch (RejectedExecutionException e) {
+            // stop() has already shut the writer down
+            throw new IOException("The scheduled actions journal is closed", e);
+        }
+    }
+
+    // The rest is only run on the writer thread
+
+    private List<Scheduled> openJournal() throws IOException {
+        Files.createDirectories(path.getParent());
+
+        if (Files.exists(path)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (data.hasRemaining()) {
+                int start = data.position();
+                if (!readRecord(data)) {
+                    // Usually the last write before a crash. Everything after it is lost anyway.
+                    plugin.getLogger().warning("The scheduled actions journal is damaged at byte " + start + ". Anything after it was dropped.");
+                    break;
+                }
+            }
+        }
+
+        compact();
+        return new ArrayList<>(journaled.values());
+    }
+
+    // False if the record is cut short or damaged
+    private boolean readRecord(ByteBuffer data) {
+        if (data.remaining() < 8) return false;
+
+        int length = data.getInt();
+        int checksum = data.getInt();
+        if (length <= 0 || length > MAX_RECORD || length > data.remaining()) return false;
+
+        byte[] payload = new byte[length];
+        data.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) return false;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            long id = in.readLong();
+
+            if (type == RECORD_DONE) {
+                journaled.remove(id);
+                return true;
+            }
+            if (type != RECORD_ADD) return false;
+
+            long at = in.readLong();
+            int action = in.readUnsignedByte();
+            UUID uuid = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+            String name = in.readUTF();
+            String reason = in.readUTF();
+            long banExpires = in.readLong();
+            if (action >= Action.values().length) return false;
+
+            journaled.put(id, new Scheduled(id, at, Action.values()[action], uuid, name, reason, banExpires));
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void append(Scheduled scheduled) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeAdd(out, scheduled);
+        }
+
+        write(journal, bytes.toByteArray());
+        journaled.put(scheduled.id(), scheduled);
+    }
+
+    private void appendDone(long id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(RECORD_DONE);
+            out.writeLong(id);
+        }
+
+        write(journal, bytes.toByteArray());
+        if (journaled.remove(id) != null) doneRecords++;
+
+        // Each done record leaves its action's record dead too. The record itself is
+        // written by now, so a failed compaction is only logged and tried again next time.
+        if (doneRecords >= MIN_COMPACT && doneRecords > journaled.size()) {
+            try {
+                compact();
+            }
+            catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to compact the scheduled actions journal", e);
+            }
+        }
+    }
+
+    // Rewrites the journal with only the pending actions, then swaps it in. The new file
+    // is complete and on disk before the old one is let go, so if anything fails the old
+    // journal stays open and in use, and the next compaction tries again.
+    private void compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            for (Scheduled scheduled : journaled.values()) {
+                bytes.reset();
+                try (DataOutputStream data = new DataOutputStream(bytes)) {
+                    writeAdd(data, scheduled);
+                }
+                write(out, bytes.toByteArray());
+            }
+            out.force(true);
+
+            // The channel follows the file, so it carries on appending to the journal
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+
+        FileChannel old = journal;
+        journal = out;
+        doneRecords = 0;
+
+        try {
+            if (old != null) old.close();
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close the old scheduled actions journal", e);
+        }
+    }
+
+    private static void writeAdd(DataOutputStream out, Scheduled scheduled) throws IOException {
+        out.writeByte(RECORD_ADD);
+        out.writeLong(scheduled.id());
+        out.writeLong(scheduled.at());
+        out.writeByte(scheduled.action().ordinal());
+        out.writeBoolean(scheduled.uuid() != null);
+        if (scheduled.uuid() != null) {
+            out.writeLong(scheduled.uuid().getMostSignificantBits());
+            out.writeLong(scheduled.uuid().getLeastSignificantBits());
+        }
+        out.writeUTF(scheduled.name());
+        out.writeUTF(scheduled.reason());
+        out.writeLong(scheduled.banExpires());
+    }
+
+    // Length, CRC32, then the record itself
+    private static void write(FileChannel channel, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
@@ -0,0 +1,525 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.ActionScheduler.Scheduled;
+import com.antaptive.commandBlock.PlayerActions.Action;
+import com.antaptive.commandBlock.ProfileResolver.ResolvedProfile;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+// The server control and player management endpoints
+public final class ApiEndpoints {
+
+    // The furthest ahead 'at' and 'duration' can reach, about ten years
+    private static final long MAX_AHEAD_MILLIS = 3650L * 24 * 60 * 60 * 1000;
+
+    // When to apply an action and for how long, in epoch milliseconds and milliseconds.
+    // at is 0 to apply it now, duration is 0 for no limit.
+    private record Timing(long at, long duration) {
+        boolean isScheduled() {
+            return at > 0;
+        }
+
+        // When a limited action made at this timing runs out
+        long end() {
+            return (at > 0 ? at : System.currentTimeMillis()) + duration;
+        }
+    }
+
+    private final CommandBlock plugin;
+
+    public ApiEndpoints(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    public void register(@NotNull ApiRouter router) {
+        // Server control endpoints
+        router.post("/server/stop", this::stop);
+        router.get("/server/stats", this::stats);
+
+        // Player management endpoints
+        router.post("/server/player/kick", this::kick);
+        router.post("/server/player/ban", this::ban);
+        router.post("/server/player/unban", this::unban);
+        router.post("/server/player/whitelist/add", request -> setWhitelisted(request, true));
+        router.post("/server/player/whitelist/remove", request -> setWhitelisted(request, false));
+
+        // Actions sent with an 'at' time, and timed whitelist removals
+        router.get("/server/scheduled", this::listScheduled);
+        router.post("/server/scheduled/cancel", this::cancelScheduled);
+    }
+
+    private void stop(ApiRequest request) throws IOException {
+        CompletableFuture<Void> result = plugin.getMainThreadQueue().execute(() -> {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), "stop");
+        });
+
+        if (await(request, result, "stopping the server")) request.sendSuccess();
+    }
+
+    private void stats(ApiRequest request) throws IOException {
+        StatsPublisher.Snapshot snapshot = plugin.getStatsPublisher().getSnapshot();
+        if (snapshot == null) {
+            request.setHeader("Retry-After", "1");
+            request.sendError(503, "Server stats are not available yet");
+            return;
+        }
+
+        request.setHeader("ETag", snapshot.etag());
+        request.setHeader("Cache-Control", "no-cache");
+
+        // The client already has this snapshot
+        if (matchesETag(request.exchange().getRequestHeaders().getFirst("If-None-Match"), snapshot.etag())) {
+            request.sendEmpty(304);
+            return;
+        }
+
+        request.send(200, "application/json", snapshot.body());
+    }
+
+    private void kick(ApiRequest request) throws IOException {
+        String playerName = requirePlayer(request);
+        if (playerName == null) return;
+
+        String reason = request.params().getOrDefault("reason", "");
+
+        Timing timing = parseTiming(request, false);
+        if (timing == null) return;
+
+        // Kicks go by name, so there's no profile to look up
+        if (timing.isScheduled()) {
+            Scheduled scheduled = schedule(request, Action.KICK, playerName, null, reason, timing.at(), 0);
+            if (scheduled != null) sendScheduled(request, List.of(scheduled));
+            return;
+        }
+
+        CompletableFuture<Void> result = plugin.getMainThreadQueue().execute(() -> {
+            PlayerActions.kick(playerName, reason);
+        });
+
+        if (await(request, result, "kicking " + playerName)) {
+            request.sendSuccess();
+        }
+    }
+
+    private void ban(ApiRequest request) throws IOException {
+        String playerName = requirePlayer(request);
+        if (playerName == null) return;
+
+        String reason = request.params().getOrDefault("reason", "");
+
+        Timing timing = parseTiming(request, true);
+        if (timing == null) return;
+
+        ResolvedProfile profile = resolveProfile(request, playerName);
+        if (profile == null) return;
+
+        // A temporary ban is lifted by the server itself, so only a later start is scheduled
+        long expires = timing.duration() > 0 ? timing.end() : 0;
+        if (timing.isScheduled()) {
+            Scheduled scheduled = schedule(request, Action.BAN, playerName, profile, reason, timing.at(), expires);
+            if (scheduled != null) sendScheduled(request, List.of(scheduled));
+            return;
+        }
+
+        CompletableFuture<Void> result = plugin.getMainThreadQueue().execute(() -> {
+            PlayerActions.ban(profile, reason, expires > 0 ? new Date(expires) : null);
+            plugin.getBanIndex().refresh(profile.id(), profile.name());
+        });
+
+        if (await(request, result, "banning " + playerName)) {
+            if (expires > 0) {
+                request.send(200, JsonWriter.acquire().beginObject()
+                        .field("success", true)
+                        .field("expires", expires)
+                        .endObject());
+            }
+            else {
+                request.sendSuccess();
+            }
+        }
+    }
+
+    private void unban(ApiRequest request) throws IOException {
+        String playerName = requirePlayer(request);
+        if (playerName == null) return;
+
+        Timing timing = parseTiming(request, false);
+        if (timing == null) return;
+
+        ResolvedProfile profile = resolveProfile(request, playerName);
+        if (profile == null) return;
+
+        if (timing.isScheduled()) {
+            Scheduled scheduled = schedule(request, Action.UNBAN, playerName, profile, "", timing.at(), 0);
+            if (scheduled != null) sendScheduled(request, List.of(scheduled));
+            return;
+        }
+
+        CompletableFuture<Void> result = plugin.getMainThreadQueue().execute(() -> {
+            PlayerActions.unban(profile);
+            plugin.getBanIndex().refresh(profile.id(), profile.name());
+        });
+
+        if (await(request, result, "unbanning " + playerName)) {
+            request.sendSuccess();
+        }
+    }
+
+    // A whitelisting with a duration is followed by a scheduled removal
+    private void setWhitelisted(ApiRequest request, boolean whitelisted) throws IOException {
+        String playerName = requirePlayer(request);
+        if (playerName == null) return;
+
+        Timing timing = parseTiming(request, whitelisted);
+        if (timing == null) return;
+
+        ResolvedProfile profile = resolveProfile(request, playerName);
+        if (profile == null) return;
+
+        Action action = whitelisted ? Action.WHITELIST_ADD : Action.WHITELIST_REMOVE;
+        if (timing.isScheduled()) {
+            List<Scheduled> scheduled = new ArrayList<>(2);
+            Scheduled start = schedule(request, action, playerName, profile, "", timing.at(), 0);
+            if (start == null) return;
+            scheduled.add(start);
+
+            if (timing.duration() > 0) {
+                Scheduled end = schedule(request, Action.WHITELIST_REMOVE, playerName, profile, "", timing.end(), 0);
+                if (end == null) {
+                    // Not one without the other
+                    plugin.getActionScheduler().cancel(start.id());
+                    return;
+                }
+                scheduled.add(end);
+            }
+
+            sendScheduled(request, scheduled);
+            return;
+        }
+
+        // Checked first, so the whitelisting isn't applied without its removal
+        ActionScheduler scheduler = plugin.getActionScheduler();
+        if (timing.duration() > 0 && requireScheduler(request) == null) return;
+
+        CompletableFuture<Void> result = plugin.getMainThreadQueue().execute(() -> {
+            PlayerActions.setWhitelisted(profile, whitelisted);
+        });
+
+        if (!await(request, result, (whitelisted ? "whitelisting " : "removing from whitelist ") + playerName)) return;
+
+        // Whitelisting again replaces a removal still to come, with this one's if it has a duration
+        Scheduled removal = null;
+        if (whitelisted && scheduler != null) {
+            scheduler.cancelWhitelistRemovals(Set.of(profile.id()));
+
+            if (timing.duration() > 0) {
+                removal = schedule(request, Action.WHITELIST_REMOVE, playerName, profile, "", timing.end(), 0);
+                if (removal == null) return;
+            }
+        }
+
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("success", true)
+                .field("player", profile.name());
+        if (removal != null) {
+            json.field("expires", removal.at());
+            json.name("scheduled").beginArray();
+            writeScheduled(json, removal);
+            json.endArray();
+        }
+        request.send(200, json.endObject());
+    }
+
+    private void listScheduled(ApiRequest request) throws IOException {
+        ActionScheduler scheduler = requireScheduler(request);
+        if (scheduler == null) return;
+
+        JsonWriter json = JsonWriter.acquire().beginObject().name("scheduled").beginArray();
+        for (Scheduled scheduled : scheduler.list()) writeScheduled(json, scheduled);
+        request.send(200, json.endArray().endObject());
+    }
+
+    private void cancelScheduled(ApiRequest request) throws IOException {
+        ActionScheduler scheduler = requireScheduler(request);
+        if (scheduler == null) return;
+
+        long id;
+        try {
+            id = Long.parseLong(request.params().getOrDefault("id", ""));
+        }
+        catch (NumberFormatException e) {
+            request.sendError(400, "Please specify the scheduled action's 'id'.");
+            return;
+        }
+
+        boolean cancelled;
+        try {
+            cancelled = scheduler.cancel(id);
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to cancel scheduled action " + id, e);
+            request.sendError(500, "Internal server error");
+            return;
+        }
+
+        if (!cancelled) {
+            request.sendError(404, "No such scheduled action. It may have been applied already.");
+            return;
+        }
+
+        request.sendSuccess();
+    }
+
+    // The 'at' and 'duration' parameters, or null once a 400 has been sent for them.
+    // An 'at' time that has already passed means now.
+    private @Nullable Timing parseTiming(ApiRequest request, boolean durationAllowed) throws IOException {
+        long now = System.currentTimeMillis();
+
+        long at = 0;
+        String atParam = request.params().get("at");
+        if (atParam != null && !atParam.isBlank()) {
+            at = parseTime(atParam.trim());
+            if (at < 0) {
+                request.sendError(400, "Invalid 'at'. Use epoch milliseconds or an ISO-8601 time such as 2026-01-31T18:00:00Z.");
+                return null;
+            }
+            if (at - now > MAX_AHEAD_MILLIS) {
+                request.sendError(400, "'at' is too far ahead.");
+                return null;
+            }
+            if (at <= now) at = 0;
+        }
+
+        long duration = 0;
+        String durationParam = request.params().get("duration");
+        if (durationParam != null && !durationParam.isBlank()) {
+            if (!durationAllowed) {
+                request.sendError(400, "This action doesn't take a 'duration'.");
+                return null;
+            }
+
+            duration = parseDuration(durationParam.trim());
+            if (duration <= 0 || duration > MAX_AHEAD_MILLIS) {
+                request.sendError(400, "Invalid 'duration'. Use seconds, or amounts with units such as 30m, 12h, 1d12h or 2w, up to 3650d.");
+                return null;
+            }
+        }
+
+        return new Timing(at, duration);
+    }
+
+    // Epoch milliseconds, or -1 if the text isn't a time
+    private static long parseTime(String text) {
+        if (text.chars().allMatch(Character::isDigit)) {
+            try {
+                return Long.parseLong(text);
+            }
+            catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        try {
+            return Instant.parse(text).toEpochMilli();
+        }
+        catch (DateTimeParseException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    // Plain seconds, or amounts with units of s, m, h, d and w run together, as in 1d12h.
+    // In milliseconds; -1 if invalid, or too long to mean anything.
+    private static long parseDuration(String text) {
+        long seconds = 0;
+        int i = 0;
+
+        while (i < text.length()) {
+            int start = i;
+            while (i < text.length() && Character.isDigit(text.charAt(i))) i++;
+            if (i == start || i - start > 9) return -1;
+
+            long amount = Long.parseLong(text.substring(start, i));
+            if (i == text.length()) {
+                // A bare number is only allowed on its own
+                if (start != 0) return -1;
+                seconds = amount;
+                break;
+            }
+
+            long unit = switch (Character.toLowerCase(text.charAt(i++))) {
+                case 's' -> 1;
+                case 'm' -> 60;
+                case 'h' -> 60 * 60;
+                case 'd' -> 24 * 60 * 60;
+                case 'w' -> 7 * 24 * 60 * 60;
+                default -> -1;
+            };
+            if (unit < 0) return -1;
+            seconds += amount * unit;
+            if (seconds > MAX_AHEAD_MILLIS / 1000) return -1;
+        }
+
+        return seconds * 1000;
+    }
+
+    // The scheduler, or null once a 503 has been sent because it failed to start
+    private @Nullable ActionScheduler requireScheduler(ApiRequest request) throws IOException {
+        ActionScheduler scheduler = plugin.getActionScheduler();
+        if (scheduler == null) request.sendError(503, "Scheduled actions are unavailable. Check the server log.");
+        return scheduler;
+    }
+
+    // Null once an error response has been sent
+    private @Nullable Scheduled schedule(ApiRequest request, Action action, String playerName, @Nullable ResolvedProfile profile,
+                                         String reason, long at, long banExpires) throws IOException {
+        ActionScheduler scheduler = requireScheduler(request);
+        if (scheduler == null) return null;
+
+        try {
+            return scheduler.schedule(action, playerName, profile, reason, at, banExpires);
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to schedule " + action.getId() + " of " + playerName, e);
+            request.sendError(500, "Internal server error");
+            return null;
+        }
+    }
+
+    private static void sendScheduled(ApiRequest request, List<Scheduled> scheduled) throws IOException {
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("success", true)
+                .name("scheduled").beginArray();
+        for (Scheduled action : scheduled) writeScheduled(json, action);
+        request.send(202, json.endArray().endObject());
+    }
+
+    private static void writeScheduled(JsonWriter json, Scheduled scheduled) {
+        json.beginObject()
+                .field("id", scheduled.id())
+                .field("action", scheduled.action().getId())
+                .field("player", scheduled.name())
+                .field("uuid", scheduled.uuid() != null ? scheduled.uuid().toString() : null)
+                .field("reason", scheduled.reason())
+                .field("at", scheduled.at());
+        if (scheduled.banExpires() > 0) json.field("expires", scheduled.banExpires());
+        else json.name("expires").nullValue();
+        json.endObject();
+    }
+
+    // If-None-Match uses weak comparison, so W/"x" and "x" match
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) return true;
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals(opaque)) return true;
+        }
+
+        return false;
+    }
+
+    // The 'player' parameter, or null once a 400 has been sent for it
+    private @Nullable String requirePlayer(ApiRequest request) throws IOException {
+        QueryParams params = request.params();
+        if (params.isEmpty()) {
+            request.sendError(400, "Missing query parameters");
+            return null;
+        }
+
+        String playerName = params.get("player");
+        if (playerName == null || playerName.isBlank()) {
+            request.sendError(400, "A user was not specified. Please specify a 'player' parameter.");
+            return null;
+        }
+
+        return playerName;
+    }
+
+    // Resolves a name on the calling HTTP thread, never on the main thread.
+    // Null once an error response has been sent.
+    private @Nullable ResolvedProfile resolveProfile(ApiRequest request, @NotNull String playerName) throws IOException {
+        ResolvedProfile profile;
+        try {
+            profile = plugin.getProfileResolver().resolveNow(playerName, plugin.getConfig().getLong("profile-lookup-timeout-ms", 5000));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.sendError(500, "Interrupted while looking up the player.");
+            return null;
+        }
+        catch (ProfileResolver.LookupFailedException e) {
+            request.setHeader("Retry-After", "5");
+            request.sendError(e.getStatus(), e.getMessage());
+            return null;
+        }
+
+        if (profile == null) {
+            request.sendError(404, "Player not found.");
+        }
+
+        return profile;
+    }
+
+    // Waits for main-thread work and answers with its outcome if it failed.
+    // Returns true if it succeeded and the caller should send the response.
+    private boolean await(ApiRequest request, CompletableFuture<?> result, @NotNull String action) throws IOException {
+        try {
+            try {
+                result.get(plugin.getConfig().getLong("main-thread-timeout-ms", 5000), TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e) {
+                // Only reports "not applied" if the command really never started
+                if (result.cancel(false)) {
+                    request.setHeader("Retry-After", "1");
+                    request.sendError(504, "Timed out waiting for the server. Nothing was changed.");
+                    plugin.getLogger().warning("Timed out waiting for the main thread while " + action + ".");
+                    return false;
+                }
+
+                // Already running on the main thread, which won't take long
+                result.get();
+            }
+
+            return true;
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof ProfileResolver.LookupFailedException failed) {
+                request.setHeader("Retry-After", "5");
+                request.sendError(failed.getStatus(), failed.getMessage());
+            }
+            else if (cause instanceof IllegalStateException) {
+                request.sendError(400, String.valueOf(cause.getMessage()));
+            }
+            else {
+                request.sendError(500, "Internal server error");
+                plugin.getLogger().log(Level.SEVERE, "Error " + action, cause);
+            }
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.sendError(500, "Interrupted while waiting for the server.");
+            return false;
+        }
+    }
+}
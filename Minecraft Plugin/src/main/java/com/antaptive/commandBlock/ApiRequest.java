@@ -0,0 +1,210 @@
+package com.antaptive.commandBlock;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+// One API call as seen by an endpoint: the exchange, its lazily parsed query
+// parameters, and the only ways endpoints send a response. Bodies of at least
+// gzipMinBytes are gzipped for clients that accept it.
+public final class ApiRequest {
+
+    private static final byte[] SUCCESS = "{\"success\": true}".getBytes();
+
+    private final HttpExchange exchange;
+    private final String path;
+    private final int gzipMinBytes;
+    private QueryParams params;
+    private String error;
+
+    ApiRequest(@NotNull HttpExchange exchange, @NotNull String path) {
+        this(exchange, path, Integer.MAX_VALUE);
+    }
+
+    ApiRequest(@NotNull HttpExchange exchange, @NotNull String path, int gzipMinBytes) {
+        this.exchange = exchange;
+        this.path = path;
+        this.gzipMinBytes = gzipMinBytes < 0 ? Integer.MAX_VALUE : gzipMinBytes;
+    }
+
+    public @NotNull HttpExchange exchange() {
+        return exchange;
+    }
+
+    public @NotNull String path() {
+        return path;
+    }
+
+    public @NotNull String method() {
+        return exchange.getRequestMethod();
+    }
+
+    public InetSocketAddress remoteAddress() {
+        return exchange.getRemoteAddress();
+    }
+
+    public @NotNull QueryParams params() {
+        if (params == null) params = QueryParams.of(exchange.getRequestURI().getRawQuery());
+        return params;
+    }
+
+    public boolean isResponseSent() {
+        return exchange.getResponseCode() != -1;
+    }
+
+    // The message of the error response sent, if there was one
+    public @Nullable String getError() {
+        return error;
+    }
+
+    // For a response that reports a failure without being an error response,
+    // so the audit log still records what went wrong
+    public void setError(@Nullable String message) {
+        error = message;
+    }
+
+    public void setHeader(@NotNull String name, @NotNull String value) {
+        exchange.getResponseHeaders().set(name, value);
+    }
+
+    // Sends the writer's contents and releases it back to the pool
+    public void send(int statusCode, @NotNull JsonWriter json) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+
+            if (shouldGzip(json.size())) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, json.size() / 4));
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 4096)) {
+                    json.writeTo(gzip);
+                }
+                sendGzipped(statusCode, compressed.toByteArray());
+                return;
+            }
+
+            exchange.sendResponseHeaders(statusCode, json.size());
+
+            try (OutputStream os = exchange.getResponseBody()) {
+                json.writeTo(os);
+            }
+        }
+        finally {
+            json.release();
+        }
+    }
+
+    public void send(int statusCode, @NotNull String contentType, byte @NotNull [] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+
+        if (shouldGzip(body.length)) {
+            sendGzipped(statusCode, ResponseBody.gzip(body));
+            return;
+        }
+
+        sendRaw(statusCode, body);
+    }
+
+    // Uses the body's cached gzipped copy rather than compressing it again
+    public void send(int statusCode, @NotNull String contentType, @NotNull ResponseBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+
+        if (shouldGzip(body.bytes().length)) {
+            sendGzipped(statusCode, body.gzipped());
+            return;
+        }
+
+        sendRaw(statusCode, body.bytes());
+    }
+
+    public void sendJson(int statusCode, byte @NotNull [] body) throws IOException {
+        send(statusCode, "application/json", body);
+    }
+
+    // Headers only, such as 304 Not Modified
+    public void sendEmpty(int statusCode) throws IOException {
+        exchange.sendResponseHeaders(statusCode, -1);
+        exchange.close();
+    }
+
+    public void sendSuccess() throws IOException {
+        sendJson(200, SUCCESS);
+    }
+
+    public void sendError(int statusCode, @NotNull String message) throws IOException {
+        error = message;
+        send(statusCode, JsonWriter.acquire().beginObject().field("error", message).endObject());
+    }
+
+    // Starts a response whose length isn't known up front, gzipped if the client
+    // accepts it. Everything written must be followed by closing the stream;
+    // flushing sends what has been written so far.
+    public @NotNull OutputStream openStream(int statusCode, @NotNull String contentType) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+
+        boolean gzip = gzipMinBytes != Integer.MAX_VALUE && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (gzipMinBytes != Integer.MAX_VALUE) exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+
+        exchange.sendResponseHeaders(statusCode, 0);
+
+        OutputStream out = exchange.getResponseBody();
+        return gzip ? new GZIPOutputStream(out, 8192, true) : new BufferedOutputStream(out, 8192);
+    }
+
+    private void sendRaw(int statusCode, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(statusCode, body.length);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void sendGzipped(int statusCode, byte[] compressed) throws IOException {
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        sendRaw(statusCode, compressed);
+    }
+
+    // Small bodies aren't worth compressing. Anything big enough varies by
+    // Accept-Encoding, whether or not this client gets it gzipped.
+    private boolean shouldGzip(int length) {
+        if (length < gzipMinBytes) return false;
+
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+
+        for (String part : acceptEncoding.split(",")) {
+            int semicolon = part.indexOf(';');
+            String coding = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) continue;
+
+            // "gzip;q=0" means the client refuses it
+            if (semicolon >= 0) {
+                String parameter = part.substring(semicolon + 1).trim().toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q=")) {
+                    try {
+                        if (Double.parseDouble(parameter.substring(2).trim()) <= 0) continue;
+                    }
+                    catch (NumberFormatException e) {
+                        continue;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+}
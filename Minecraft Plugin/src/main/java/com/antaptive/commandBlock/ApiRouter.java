@@ -0,0 +1,252 @@
+package com.antaptive.commandBlock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+// The single HttpHandler behind every API endpoint. Routes are matched by exact
+// path, then every request goes through the same steps in the same order:
+// address rate limit, method check, authentication, token rate limit,
+// per-route method check, admission, endpoint.
+public final class ApiRouter implements HttpHandler {
+
+    private static final byte[] RATE_LIMITED = "{\"error\": \"Too many requests\"}".getBytes();
+
+    @FunctionalInterface
+    public interface Endpoint {
+        void handle(@NotNull ApiRequest request) throws IOException;
+    }
+
+    private record Route(String method, Endpoint endpoint, boolean authenticated, boolean admitted, Metrics.Recorder recorder) {}
+
+    private final Plugin plugin;
+    private final String apiToken;
+    private final Metrics metrics;
+    private final RequestExecutor requestExecutor;
+    private final RateLimiter rateLimiter;
+    private final AuditLog auditLog;
+    private final int gzipMinBytes;
+    private final Metrics.Recorder unmatched;
+    private final Map<String, Route> routes = new HashMap<>();
+
+    // One auth failure log line per address per interval; the rest are only counted
+    private final RateLimiter.Buckets authFailureLog;
+    private final AtomicLong unloggedAuthFailures = new AtomicLong();
+
+    public ApiRouter(@NotNull Plugin plugin, @NotNull String apiToken, @NotNull Metrics metrics, @NotNull RequestExecutor requestExecutor,
+                     @NotNull RateLimiter rateLimiter, @NotNull AuditLog auditLog) {
+        this.plugin = plugin;
+        this.apiToken = apiToken;
+        this.metrics = metrics;
+        this.requestExecutor = requestExecutor;
+        this.rateLimiter = rateLimiter;
+        this.auditLog = auditLog;
+        this.gzipMinBytes = plugin.getConfig().getInt("http-gzip-min-bytes", 1024);
+        this.unmatched = metrics.recorder("unmatched");
+
+        long authFailureLogInterval = Math.max(1, plugin.getConfig().getLong("auth-failure-log-interval-seconds", 60));
+        this.authFailureLog = RateLimiter.Buckets.of(1024, 1.0 / authFailureLogInterval, 1);
+    }
+
+    // Routes must all be added before the router is handed to the HTTP server
+
+    public ApiRouter get(@NotNull String path, @NotNull Endpoint endpoint) {
+        return add(path, "GET", endpoint, true, true);
+    }
+
+    public ApiRouter post(@NotNull String path, @NotNull Endpoint endpoint) {
+        return add(path, "POST", endpoint, true, true);
+    }
+
+    // Long-lived responses that shouldn't hold a request executor slot
+    public ApiRouter stream(@NotNull String path, @NotNull Endpoint endpoint) {
+        return add(path, "GET", endpoint, true, false);
+    }
+
+    public ApiRouter add(@NotNull String path, @NotNull String method, @NotNull Endpoint endpoint, boolean authenticated, boolean admitted) {
+        routes.put(path, new Route(method, endpoint, authenticated, admitted, metrics.recorder(path)));
+        return this;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Turn away clients over their limit before anything is parsed or logged
+        boolean mutation = RateLimiter.isMutation(exchange.getRequestMethod());
+        InetSocketAddress remote = exchange.getRemoteAddress();
+        long wait = rateLimiter.acquireForAddress(remote == null ? null : remote.getAddress(), mutation);
+        if (wait > 0) {
+            rejectRateLimited(exchange, wait, mutation);
+            return;
+        }
+
+        long start = System.nanoTime();
+        String path = normalize(exchange.getRequestURI().getPath());
+        Route route = routes.get(path);
+        ApiRequest request = new ApiRequest(exchange, path, gzipMinBytes);
+
+        try {
+            if (route == null) {
+                request.sendError(404, "Not found");
+                return;
+            }
+
+            dispatch(route, request);
+        }
+        catch (NioHttpServer.RequestBodyException e) {
+            // The body was too large or malformed part way through an endpoint reading it
+            if (!request.isResponseSent()) request.sendError(e.getStatus(), e.getMessage());
+        }
+        catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Unhandled error in " + path, e);
+            if (!request.isResponseSent()) request.sendError(500, "Internal server error");
+        }
+        finally {
+            (route != null ? route.recorder : unmatched).record(exchange.getResponseCode(), System.nanoTime() - start);
+            if (route == null || route.admitted) exchange.close();
+        }
+    }
+
+    private void dispatch(Route route, ApiRequest request) throws IOException {
+        // Check HTTP method
+        String method = request.method();
+        if (!method.equalsIgnoreCase("POST") && !method.equalsIgnoreCase("GET")) {
+            request.sendError(405, "Method not allowed");
+            metrics.recordAuthFailure(true);
+            logAuthFailure(request, "Attempted a " + method + " request.");
+            return;
+        }
+
+        // Check authorization
+        if (route.authenticated) {
+            if (!CommandBlock.isAuthorized(request.exchange(), apiToken)) {
+                request.sendError(401, "Unauthorized");
+                metrics.recordAuthFailure(false);
+                logAuthFailure(request, "Incorrect API token.");
+                return;
+            }
+
+            // Only the real token gets here, so a wrong one can't use up its bucket
+            long wait = rateLimiter.acquireForToken(apiToken, RateLimiter.isMutation(method));
+            if (wait > 0) {
+                metrics.recordRateLimited(RateLimiter.isMutation(method));
+                request.setHeader("Retry-After", retryAfter(wait));
+                request.sendJson(429, RATE_LIMITED);
+                return;
+            }
+        }
+
+        if (!method.equalsIgnoreCase(route.method)) {
+            request.sendError(405, "Method not allowed. Use " + route.method);
+            return;
+        }
+
+        if (!route.admitted) {
+            run(route, request);
+            return;
+        }
+
+        boolean admitted;
+        try {
+            admitted = requestExecutor.tryAdmit();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+
+        if (!admitted) {
+            request.setHeader("Retry-After", "1");
+            request.sendError(503, "Server is busy. Try again later.");
+            return;
+        }
+
+        try {
+            run(route, request);
+        }
+        finally {
+            requestExecutor.release();
+        }
+    }
+
+    // Every action that can change something is audited with its outcome
+    private void run(Route route, ApiRequest request) throws IOException {
+        if (!RateLimiter.isMutation(route.method)) {
+            route.endpoint.handle(request);
+            return;
+        }
+
+        try {
+            route.endpoint.handle(request);
+        }
+        finally {
+            InetSocketAddress remote = request.remoteAddress();
+            QueryParams params = request.params();
+            int status = request.exchange().getResponseCode();
+
+            auditLog.record(new AuditLog.Entry(
+                    System.currentTimeMillis(),
+                    remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown",
+                    request.path(),
+                    params.get("player"),
+                    params.get("reason"),
+                    // An exception got past the endpoint, and the 500 hasn't been sent yet
+                    status != -1 ? status : 500,
+                    request.getError()
+            ));
+        }
+    }
+
+    private void rejectRateLimited(HttpExchange exchange, long waitNanos, boolean mutation) throws IOException {
+        metrics.recordRateLimited(mutation);
+
+        try {
+            exchange.getResponseHeaders().set("Retry-After", retryAfter(waitNanos));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(429, RATE_LIMITED.length);
+
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(RATE_LIMITED);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void logAuthFailure(ApiRequest request, String reason) {
+        InetSocketAddress remote = request.remoteAddress();
+        int hash = remote == null || remote.getAddress() == null ? 0 : remote.getAddress().hashCode();
+
+        if (authFailureLog.acquire(hash) > 0) {
+            unloggedAuthFailures.incrementAndGet();
+            return;
+        }
+
+        long unlogged = unloggedAuthFailures.getAndSet(0);
+        plugin.getLogger().info(remote + " failed authentication: " + reason
+                + (unlogged > 0 ? " (" + unlogged + " more failed attempts were not logged)" : ""));
+    }
+
+    // Whole seconds, rounded up, as Retry-After expects
+    private static String retryAfter(long waitNanos) {
+        return String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L)));
+    }
+
+    // "/server/stats/" and "/server/stats" are the same route
+    private static String normalize(String path) {
+        if (path == null || path.isEmpty()) return "/";
+        if (path.length() > 1 && path.charAt(path.length() - 1) == '/') return path.substring(0, path.length() - 1);
+        return path;
+    }
+}
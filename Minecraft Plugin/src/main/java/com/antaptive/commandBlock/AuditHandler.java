@@ -0,0 +1,86 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// GET /audit
+// Newest entries of the AuditLog first, a page at a time. Entries are copied
+// into the response as they were written, without being parsed.
+public final class AuditHandler implements ApiRouter.Endpoint {
+
+    private final CommandBlock plugin;
+    private final AuditLog auditLog;
+
+    public AuditHandler(@NotNull CommandBlock plugin, @NotNull AuditLog auditLog) {
+        this.plugin = plugin;
+        this.auditLog = auditLog;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        QueryParams params = request.params();
+
+        int maxLimit = Math.max(1, plugin.getConfig().getInt("audit-max-page-size", 1000));
+        long limit = params.getLong("limit", plugin.getConfig().getInt("audit-page-size", 100));
+        if (limit < 1 || limit > maxLimit) {
+            request.sendError(400, "'limit' must be between 1 and " + maxLimit + ".");
+            return;
+        }
+
+        long since = params.getLong("since", 0);
+        long until = params.getLong("until", Long.MAX_VALUE);
+        if (since >= until) {
+            request.sendError(400, "'since' must be before 'until'.");
+            return;
+        }
+
+        AuditLog.Cursor after = null;
+        String cursor = params.get("cursor");
+        if (cursor != null && !cursor.isEmpty()) {
+            after = decodeCursor(cursor);
+            if (after == null) {
+                request.sendError(400, "Invalid cursor.");
+                return;
+            }
+        }
+
+        AuditLog.Page page = auditLog.query(since, until, params.get("player"), after, (int) limit);
+
+        JsonWriter json = JsonWriter.acquire().beginObject().name("entries").beginArray();
+        for (byte[] entry : page.entries()) {
+            json.rawValue(entry);
+        }
+        json.endArray();
+
+        if (page.next() != null) json.field("nextCursor", encodeCursor(page.next()));
+        else json.name("nextCursor").nullValue();
+
+        request.send(200, json.endObject());
+    }
+
+    // "<segment>:<offset>", base64url-encoded so clients treat it as opaque
+    private static String encodeCursor(AuditLog.Cursor cursor) {
+        String value = cursor.segment() + ":" + cursor.offset();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static @Nullable AuditLog.Cursor decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            int split = decoded.indexOf(':');
+            if (split < 0) return null;
+
+            AuditLog.Cursor result = new AuditLog.Cursor(Long.parseLong(decoded.substring(0, split)), Integer.parseInt(decoded.substring(split + 1)));
+            return result.segment() < 0 || result.offset() < 0 ? null : result;
+        }
+        catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            return null;
+        }
+    }
+}
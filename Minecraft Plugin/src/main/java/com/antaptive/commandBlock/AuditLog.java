@@ -0,0 +1,441 @@
+package com.antaptive.commandBlock;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+// Append-only record of every API action, kept in plugins/CommandBlock/audit.
+// Request threads only put entries on a queue. One writer thread takes whatever
+// has queued up, appends it to the current segment as NDJSON lines and syncs once
+// for the whole group. Segments are fixed-size memory-mapped files named
+// <sequence>-<first entry time>.log; when one is full the next is started and the
+// oldest beyond audit-max-segments are deleted.
+//
+// Unused space in a segment is zero bytes, which never appear in UTF-8 JSON, so
+// the end of the data is the first zero byte.
+public final class AuditLog {
+
+    private static final int MAX_GROUP = 512;
+    private static final int MAX_TEXT_LENGTH = 1024;
+    private static final byte[] TIME_PREFIX = "{\"time\":".getBytes(StandardCharsets.US_ASCII);
+
+    public record Entry(long time, String address, String endpoint, @Nullable String player, @Nullable String reason, int status, @Nullable String error) {}
+
+    public record Settings(int segmentBytes, int maxSegments, int queueSize, boolean sync, boolean console) {}
+
+    // Position of the newest entry on the previous page
+    public record Cursor(long segment, int offset) {}
+
+    public record Page(List<byte[]> entries, @Nullable Cursor next) {}
+
+    private record Segment(long sequence, long startTime, Path path) {
+        static @Nullable Segment parse(Path path) {
+            String name = path.getFileName().toString();
+            int dash = name.indexOf('-');
+            if (dash < 0 || !name.endsWith(".log")) return null;
+
+            try {
+                return new Segment(Long.parseLong(name.substring(0, dash)), Long.parseLong(name.substring(dash + 1, name.length() - 4)), path);
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    // The segment being written and how much of it has been committed, replaced
+    // together so readers never pair one segment with another's length
+    private record Active(long sequence, int end) {}
+
+    private final Plugin plugin;
+    private final Path directory;
+    private final Settings settings;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Active active = new Active(-1, 0);
+    private Thread writer;
+
+    // Only touched by the writer thread
+    private Segment segment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    // Time of the newest line written. Entries are stamped on request threads and
+    // can reach the queue slightly out of order, so each is written with at least
+    // this time, which keeps every segment in time order for query().
+    private long lastTime;
+
+    public AuditLog(@NotNull Plugin plugin, @NotNull Path directory, @NotNull Settings settings) {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.settings = new Settings(Math.max(1 << 20, settings.segmentBytes()), Math.max(1, settings.maxSegments()),
+                Math.max(16, settings.queueSize()), settings.sync(), settings.console());
+        this.queue = new ArrayBlockingQueue<>(this.settings.queueSize());
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        reopenLatest();
+
+        running = true;
+        writer = Thread.ofPlatform().name("CommandBlock-Audit").daemon(true).start(this::writeLoop);
+    }
+
+    // Writes out whatever is still queued, then closes the segment
+    public void stop() {
+        running = false;
+        if (writer == null) return;
+
+        try {
+            writer.join(5000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    // Never blocks. If the writer has fallen this far behind, the entry is counted and dropped.
+    public void record(@NotNull Entry entry) {
+        if (!queue.offer(entry)) dropped.incrementAndGet();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    private void writeLoop() {
+        List<Entry> group = new ArrayList<>(MAX_GROUP);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(250, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                group.add(first);
+                queue.drainTo(group, MAX_GROUP - 1);
+                commit(group);
+            }
+            catch (InterruptedException e) {
+                running = false;
+            }
+            catch (IOException | RuntimeException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to write " + group.size() + " audit entries", e);
+            }
+            finally {
+                group.clear();
+            }
+        }
+
+        closeSegment();
+    }
+
+    private void commit(List<Entry> group) throws IOException {
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            for (Entry entry : group) {
+                long time = Math.max(entry.time(), lastTime);
+                lastTime = time;
+
+                json.reset();
+                write(json, entry, time);
+                byte[] line = json.toByteArray();
+
+                if (buffer == null || buffer.remaining() < line.length + 1) startSegment(time);
+                buffer.put(line).put((byte) '\n');
+            }
+        }
+        finally {
+            json.release();
+        }
+
+        // One sync for the whole group
+        if (settings.sync()) buffer.force();
+        active = new Active(segment.sequence(), buffer.position());
+
+        if (settings.console()) {
+            for (Entry entry : group) plugin.getLogger().info(describe(entry));
+        }
+    }
+
+    private static void write(JsonWriter json, Entry entry, long time) {
+        // time must stay the first field; queries read it without parsing the line
+        json.beginObject()
+                .field("time", time)
+                .field("address", entry.address())
+                .field("endpoint", entry.endpoint())
+                .field("player", clamp(entry.player()))
+                .field("reason", clamp(entry.reason()))
+                .field("status", entry.status())
+                .field("error", clamp(entry.error()))
+                .endObject();
+    }
+
+    private static @Nullable String clamp(@Nullable String text) {
+        return text == null || text.length() <= MAX_TEXT_LENGTH ? text : text.substring(0, MAX_TEXT_LENGTH);
+    }
+
+    private static String describe(Entry entry) {
+        StringBuilder line = new StringBuilder(96).append(entry.address()).append(' ').append(entry.endpoint());
+        if (entry.player() != null) line.append(" player=").append(entry.player());
+        line.append(": ").append(entry.status());
+        if (entry.error() != null) line.append(" (").append(entry.error()).append(')');
+        return line.toString();
+    }
+
+    // Carries on from the end of the newest segment, dropping a half-written last line
+    private void reopenLatest() throws IOException {
+        List<Segment> segments = listSegments();
+        if (segments.isEmpty()) return;
+
+        Segment latest = segments.getLast();
+        channel = FileChannel.open(latest.path(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), settings.segmentBytes()));
+        segment = latest;
+
+        int end = dataEnd(buffer, buffer.capacity());
+        int lineEnd = end;
+        while (lineEnd > 0 && buffer.get(lineEnd - 1) != '\n') lineEnd--;
+        for (int i = lineEnd; i < end; i++) buffer.put(i, (byte) 0);
+
+        buffer.position(lineEnd);
+        active = new Active(latest.sequence(), lineEnd);
+
+        // Carry on in time order from the last line kept
+        if (lineEnd > 0) {
+            int lastStart = lineEnd - 1;
+            while (lastStart > 0 && buffer.get(lastStart - 1) != '\n') lastStart--;
+            lastTime = readTime(buffer, lastStart);
+        }
+    }
+
+    private void startSegment(long time) throws IOException {
+        long sequence = segment != null ? segment.sequence() + 1 : 1;
+        closeSegment();
+
+        Path path = directory.resolve(String.format("%010d-%d.log", sequence, time));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Sparse on most filesystems, so the unused part takes no disk space
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, settings.segmentBytes());
+        segment = new Segment(sequence, time, path);
+        active = new Active(sequence, 0);
+
+        deleteOldSegments();
+    }
+
+    // The oldest segments beyond audit-max-segments. One that can't be deleted yet (on
+    // Windows, a file that is still mapped) is left for the next rotation, rather than
+    // failing the group being written.
+    private void deleteOldSegments() {
+        List<Segment> segments;
+        try {
+            segments = listSegments();
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to list audit segments for deletion", e);
+            return;
+        }
+
+        for (int i = 0; i < segments.size() - settings.maxSegments(); i++) {
+            try {
+                Files.deleteIfExists(segments.get(i).path());
+            }
+            catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to delete old audit segment " + segments.get(i).path().getFileName()
+                        + ". It will be tried again at the next rotation.", e);
+            }
+        }
+    }
+
+    // The mapping itself is only released once nothing refers to the buffer,
+    // so the reference is dropped even if the final sync fails
+    private void closeSegment() {
+        MappedByteBuffer closing = buffer;
+        FileChannel closingChannel = channel;
+        buffer = null;
+        channel = null;
+
+        try {
+            if (closing != null) closing.force();
+        }
+        catch (UncheckedIOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to sync audit segment", e);
+        }
+
+        try {
+            if (closingChannel != null) closingChannel.close();
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close audit segment", e);
+        }
+    }
+
+    // Oldest first
+    private List<Segment> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(Segment::parse)
+                    .filter(s -> s != null)
+                    .sorted(Comparator.comparingLong(Segment::sequence))
+                    .toList();
+        }
+    }
+
+    // Newest first. Entries are in [since, until) and, if player is given, for that player.
+    public @NotNull Page query(long since, long until, @Nullable String player, @Nullable Cursor after, int limit) throws IOException {
+        List<byte[]> entries = new ArrayList<>(Math.min(limit, 256));
+        PlayerFilter filter = player != null ? new PlayerFilter(player) : null;
+        List<Segment> segments = listSegments();
+        // Read after listing, so every listed segment before it is complete
+        Active current = active;
+
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment candidate = segments.get(s);
+            // Just created and nothing committed to it yet
+            if (candidate.sequence() > current.sequence()) continue;
+            if (after != null && candidate.sequence() > after.segment()) continue;
+            // Everything in it is too new
+            if (candidate.startTime() >= until) continue;
+
+            MappedByteBuffer data;
+            try (FileChannel file = FileChannel.open(candidate.path(), StandardOpenOption.READ)) {
+                data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            }
+            catch (NoSuchFileException e) {
+                // Deleted by rotation since it was listed
+                continue;
+            }
+
+            int end = candidate.sequence() == current.sequence() ? current.end() : dataEnd(data, data.capacity());
+            if (after != null && candidate.sequence() == after.segment()) end = Math.min(end, after.offset());
+
+            while (end > 0) {
+                int start = end - 1;
+                while (start > 0 && data.get(start - 1) != '\n') start--;
+
+                long time = readTime(data, start);
+                // Entries are written in time order (see lastTime), so nothing older can match
+                if (time < since) return new Page(entries, null);
+
+                if (time < until && (filter == null || filter.matches(data, start, end - 1))) {
+                    if (entries.size() == limit) {
+                        return new Page(entries, new Cursor(candidate.sequence(), end));
+                    }
+
+                    byte[] line = new byte[end - 1 - start];
+                    data.get(start, line);
+                    entries.add(line);
+                }
+
+                end = start;
+            }
+        }
+
+        return new Page(entries, null);
+    }
+
+    // The first zero byte, found by binary search since data is never zero
+    private static int dataEnd(MappedByteBuffer data, int capacity) {
+        int low = 0, high = capacity;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (data.get(mid) != 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static long readTime(MappedByteBuffer data, int start) {
+        int position = start + TIME_PREFIX.length;
+        long time = 0;
+        for (byte b; position < data.limit() && (b = data.get(position)) >= '0' && b <= '9'; position++) {
+            time = time * 10 + (b - '0');
+        }
+        return time;
+    }
+
+    // Matches lines by their raw bytes, so a query for one player doesn't parse every
+    // line it passes. Names are compared ignoring case; only ASCII letters are folded
+    // here, so a name with anything else in it is confirmed by parsing the lines that
+    // have a player at all.
+    private static final class PlayerFilter {
+        private static final byte[] PLAYER_FIELD = "\"player\":\"".getBytes(StandardCharsets.US_ASCII);
+
+        private final String player;
+        // "player":"<name>" as write() encodes it, lower case
+        private final byte[] field;
+        private final boolean ascii;
+
+        PlayerFilter(String player) {
+            this.player = player;
+            this.ascii = player.chars().allMatch(c -> c < 0x80);
+
+            JsonWriter json = JsonWriter.acquire();
+            try {
+                byte[] object = json.beginObject().field("player", player).endObject().toByteArray();
+                this.field = Arrays.copyOfRange(object, 1, object.length - 1);
+            }
+            finally {
+                json.release();
+            }
+            for (int i = 0; i < field.length; i++) field[i] = lower(field[i]);
+        }
+
+        boolean matches(MappedByteBuffer data, int start, int end) {
+            if (ascii) return contains(data, start, end, field);
+            if (!contains(data, start, end, PLAYER_FIELD)) return false;
+
+            byte[] line = new byte[end - start];
+            data.get(start, line);
+
+            try {
+                JsonElement value = JsonParser.parseString(new String(line, StandardCharsets.UTF_8)).getAsJsonObject().get("player");
+                return value != null && value.isJsonPrimitive() && value.getAsString().equalsIgnoreCase(player);
+            }
+            catch (JsonParseException | IllegalStateException e) {
+                return false;
+            }
+        }
+
+        // needle must already be lower case
+        private static boolean contains(MappedByteBuffer data, int start, int end, byte[] needle) {
+            for (int i = start; i <= end - needle.length; i++) {
+                int j = 0;
+                while (j < needle.length && lower(data.get(i + j)) == needle[j]) j++;
+                if (j == needle.length) return true;
+            }
+            return false;
+        }
+
+        private static byte lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.antaptive.commandBlock;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+
+import io.papermc.paper.ban.BanListType;
+
+import org.bukkit.BanEntry;
+import org.bukkit.BanList;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// Searchable copy of the profile ban list for /server/bans.
+// Bukkit has no ban events, so bans made through the API update the index
+// straight away, ban commands trigger a reconcile on the next tick, and a full
+// reconcile every bans-reconcile-interval-seconds catches anything else (other
+// plugins, expired bans). A reconcile only touches the entries that changed.
+//
+// Names are kept in a prefix trie and every ban in an array sorted by date, so
+// a page of results is found without copying or sorting the whole list.
+public final class BanIndex implements Runnable, Listener {
+
+    private static final Set<String> BAN_COMMANDS = Set.of("ban", "tempban", "pardon", "unban", "eban", "etempban", "epardon", "eunban");
+
+    public record BanRecord(UUID uuid, String name, String sortName, String reason, String source, long created, long expires) {
+        // Expired bans stay in Bukkit's list until it next cleans it up
+        public boolean isExpired(long now) {
+            return expires != 0 && expires <= now;
+        }
+    }
+
+    // Oldest first, UUIDs breaking ties
+    static final Comparator<BanRecord> BY_CREATED = Comparator.comparingLong(BanRecord::created).thenComparing(BanRecord::uuid);
+
+    private final CommandBlock plugin;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final Map<UUID, BanRecord> byId = new HashMap<>();
+    private final Node root = new Node();
+    private BanRecord[] byCreated = new BanRecord[16];
+    private int count;
+
+    private volatile boolean loaded;
+    private BukkitTask task;
+    private boolean reconcileScheduled;
+
+    public BanIndex(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start(long intervalTicks) {
+        stop();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 0L, Math.max(1L, intervalTicks));
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    // Whether the first reconcile has run
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The player's ban, or null if they aren't banned
+    public @Nullable BanRecord get(@NotNull UUID id) {
+        lock.readLock().lock();
+        try {
+            return byId.get(id);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        reconcile();
+    }
+
+    // Re-reads one player's ban after it was changed through the API. Main thread only.
+    public void refresh(@NotNull UUID id, @Nullable String name) {
+        BanList<PlayerProfile> banList = Bukkit.getBanList(BanListType.PROFILE);
+        BanEntry<PlayerProfile> entry = banList.getBanEntry(Bukkit.createProfile(id, name));
+        replace(id, entry != null ? toRecord(entry) : null);
+    }
+
+    // Swaps in the player's current ban, or drops it if there is none
+    void replace(@NotNull UUID id, @Nullable BanRecord record) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+            if (record != null) add(record);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Brings the index in line with Bukkit's ban list. Main thread only.
+    public void reconcile() {
+        reconcileScheduled = false;
+
+        Set<BanEntry<PlayerProfile>> entries = Bukkit.getBanList(BanListType.PROFILE).getEntries();
+        Map<UUID, BanRecord> current = new HashMap<>(entries.size() * 2);
+        for (BanEntry<PlayerProfile> entry : entries) {
+            BanRecord record = toRecord(entry);
+            if (record != null) current.put(record.uuid(), record);
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<UUID> gone = new ArrayList<>();
+            for (UUID id : byId.keySet()) {
+                if (!current.containsKey(id)) gone.add(id);
+            }
+            for (UUID id : gone) remove(id);
+
+            for (BanRecord record : current.values()) {
+                BanRecord existing = byId.get(record.uuid());
+                if (record.equals(existing)) continue;
+
+                if (existing != null) remove(existing.uuid());
+                add(record);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        loaded = true;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        checkCommand(event.getMessage());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onServerCommand(ServerCommandEvent event) {
+        checkCommand(event.getCommand());
+    }
+
+    // The command hasn't run yet when its event fires, so look at the list on the next tick
+    private void checkCommand(String command) {
+        if (reconcileScheduled || !isBanCommand(command)) return;
+
+        reconcileScheduled = true;
+        Bukkit.getScheduler().runTask(plugin, this::reconcile);
+    }
+
+    static boolean isBanCommand(String command) {
+        String label = command.startsWith("/") ? command.substring(1) : command;
+
+        int space = label.indexOf(' ');
+        if (space >= 0) label = label.substring(0, space);
+
+        // minecraft:ban, essentials:tempban and so on
+        int colon = label.indexOf(':');
+        if (colon >= 0) label = label.substring(colon + 1);
+
+        return BAN_COMMANDS.contains(label.toLowerCase(Locale.ROOT));
+    }
+
+    private static @Nullable BanRecord toRecord(BanEntry<PlayerProfile> entry) {
+        PlayerProfile profile = entry.getBanTarget();
+        if (profile == null || profile.getId() == null) return null;
+
+        String name = profile.getName() != null ? profile.getName() : "";
+        return new BanRecord(
+                profile.getId(),
+                name,
+                name.toLowerCase(Locale.ROOT),
+                entry.getReason() != null ? entry.getReason() : "",
+                entry.getSource() != null ? entry.getSource() : "",
+                entry.getCreated() != null ? entry.getCreated().getTime() : 0,
+                entry.getExpiration() != null ? entry.getExpiration().getTime() : 0
+        );
+    }
+
+    // Visits bans whose name starts with the prefix in name order, starting
+    // after the given position, until the visitor returns false
+    public void visitByName(@NotNull String prefix, @Nullable BanRecord after, boolean descending, @NotNull Predicate<BanRecord> visitor) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            if (node == null) return;
+
+            walk(node, prefix.length(), after, descending, visitor);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Visits bans created in [since, until) in date order, starting after the
+    // given position, until the visitor returns false
+    public void visitByCreated(long since, long until, @Nullable BanRecord after, boolean descending, @NotNull Predicate<BanRecord> visitor) {
+        lock.readLock().lock();
+        try {
+            if (!descending) {
+                int start = indexOf(bound(since), true);
+                if (after != null) start = Math.max(start, indexOf(after, false));
+
+                for (int i = start; i < count && byCreated[i].created() < until; i++) {
+                    if (!visitor.test(byCreated[i])) return;
+                }
+            }
+            else {
+                int end = indexOf(bound(until), true);
+                if (after != null) end = Math.min(end, indexOf(after, true));
+
+                for (int i = end - 1; i >= 0 && byCreated[i].created() >= since; i--) {
+                    if (!visitor.test(byCreated[i])) return;
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Depth-first in name order. With a cursor, the path down to this node is a
+    // prefix of the cursor's name, and only what sorts after the cursor is visited.
+    private static boolean walk(Node node, int depth, @Nullable BanRecord after, boolean descending, Predicate<BanRecord> visitor) {
+        String key = after != null ? after.sortName() : null;
+        boolean atCursor = key != null && key.length() == depth;
+        char next = key != null && !atCursor ? key.charAt(depth) : 0;
+
+        // Names ending here sort before every longer name below
+        if (!descending && !visitHere(node, atCursor ? after : null, key != null && !atCursor, false, visitor)) return false;
+
+        for (int i = 0; i < node.size; i++) {
+            int index = descending ? node.size - 1 - i : i;
+            char c = node.keys[index];
+
+            if (key == null) {
+                if (!walk(node.children[index], depth + 1, null, descending, visitor)) return false;
+            }
+            else if (atCursor) {
+                // Every child is longer than the cursor, so after it ascending and before it descending
+                if (descending) continue;
+                if (!walk(node.children[index], depth + 1, null, false, visitor)) return false;
+            }
+            else if (c == next) {
+                if (!walk(node.children[index], depth + 1, after, descending, visitor)) return false;
+            }
+            else if (descending ? c < next : c > next) {
+                if (!walk(node.children[index], depth + 1, null, descending, visitor)) return false;
+            }
+        }
+
+        return !descending || visitHere(node, atCursor ? after : null, false, true, visitor);
+    }
+
+    private static boolean visitHere(Node node, @Nullable BanRecord after, boolean skip, boolean descending, Predicate<BanRecord> visitor) {
+        if (skip) return true;
+
+        for (int i = 0; i < node.records.length; i++) {
+            BanRecord record = node.records[descending ? node.records.length - 1 - i : i];
+            if (after != null) {
+                int compare = record.uuid().compareTo(after.uuid());
+                if (descending ? compare >= 0 : compare <= 0) continue;
+            }
+            if (!visitor.test(record)) return false;
+        }
+        return true;
+    }
+
+    // Index of the first ban in the date array that sorts after the key, or at
+    // or after it if inclusive
+    private int indexOf(BanRecord key, boolean inclusive) {
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int compare = BY_CREATED.compare(byCreated[mid], key);
+            if (inclusive ? compare < 0 : compare <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // Sorts before every real ban created at that time
+    private static BanRecord bound(long created) {
+        return new BanRecord(new UUID(Long.MIN_VALUE, Long.MIN_VALUE), "", "", "", "", created, 0);
+    }
+
+    // Both of these are called with the write lock held
+
+    private void add(BanRecord record) {
+        byId.put(record.uuid(), record);
+
+        Node node = root;
+        for (int i = 0; i < record.sortName().length(); i++) {
+            node = node.childOrCreate(record.sortName().charAt(i));
+        }
+        node.addRecord(record);
+
+        if (count == byCreated.length) byCreated = Arrays.copyOf(byCreated, count * 2);
+        // New bans are almost always the newest, so this is usually an append
+        int index = indexOf(record, false);
+        System.arraycopy(byCreated, index, byCreated, index + 1, count - index);
+        byCreated[index] = record;
+        count++;
+    }
+
+    private void remove(UUID id) {
+        BanRecord record = byId.remove(id);
+        if (record == null) return;
+
+        Node[] path = new Node[record.sortName().length() + 1];
+        path[0] = root;
+        for (int i = 0; i < record.sortName().length(); i++) {
+            path[i + 1] = path[i].child(record.sortName().charAt(i));
+        }
+        path[path.length - 1].removeRecord(id);
+
+        // Drop the nodes that no longer lead anywhere
+        for (int i = path.length - 1; i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].removeChild(record.sortName().charAt(i - 1));
+        }
+
+        int index = indexOf(record, true);
+        System.arraycopy(byCreated, index + 1, byCreated, index, count - index - 1);
+        byCreated[--count] = null;
+    }
+
+    // Children are kept in parallel arrays sorted by character, which is both
+    // compact and already in the order a walk needs
+    private static final class Node {
+        private static final BanRecord[] NO_RECORDS = new BanRecord[0];
+
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int size;
+        // Bans whose name ends at this node, sorted by UUID. Almost always zero or one.
+        BanRecord[] records = NO_RECORDS;
+
+        @Nullable Node child(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            if (index >= 0) return children[index];
+
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, keys.length);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+
+            Node child = new Node();
+            keys[index] = c;
+            children[index] = child;
+            size++;
+            return child;
+        }
+
+        void removeChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            if (index < 0) return;
+
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            children[--size] = null;
+        }
+
+        void addRecord(BanRecord record) {
+            BanRecord[] updated = Arrays.copyOf(records, records.length + 1);
+            updated[records.length] = record;
+            Arrays.sort(updated, Comparator.comparing(BanRecord::uuid));
+            records = updated;
+        }
+
+        void removeRecord(UUID id) {
+            for (int i = 0; i < records.length; i++) {
+                if (!records[i].uuid().equals(id)) continue;
+
+                BanRecord[] updated = new BanRecord[records.length - 1];
+                System.arraycopy(records, 0, updated, 0, i);
+                System.arraycopy(records, i + 1, updated, i, records.length - i - 1);
+                records = updated.length == 0 ? NO_RECORDS : updated;
+                return;
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0 && records.length == 0;
+        }
+    }
+}
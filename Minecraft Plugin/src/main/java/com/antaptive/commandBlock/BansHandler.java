@@ -0,0 +1,159 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.BanIndex.BanRecord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+// GET /server/bans
+// Searches the BanIndex a page at a time. Sorting by name walks the name trie
+// from the prefix, sorting by date walks the date array from the date range;
+// the other filters are checked on the way. Cursors hold the sort key and UUID
+// of the last ban returned, like /server/players.
+public final class BansHandler implements ApiRouter.Endpoint {
+
+    private final CommandBlock plugin;
+    private final BanIndex index;
+
+    public BansHandler(@NotNull CommandBlock plugin, @NotNull BanIndex index) {
+        this.plugin = plugin;
+        this.index = index;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        if (!index.isLoaded()) {
+            request.setHeader("Retry-After", "1");
+            request.sendError(503, "The ban list is not available yet");
+            return;
+        }
+
+        QueryParams params = request.params();
+
+        int maxLimit = Math.max(1, plugin.getConfig().getInt("bans-max-page-size", 1000));
+        long limit = params.getLong("limit", plugin.getConfig().getInt("bans-page-size", 100));
+        if (limit < 1 || limit > maxLimit) {
+            request.sendError(400, "'limit' must be between 1 and " + maxLimit + ".");
+            return;
+        }
+
+        String sort = params.getOrDefault("sort", "created").toLowerCase(Locale.ROOT);
+        if (!sort.equals("created") && !sort.equals("name")) {
+            request.sendError(400, "Unknown sort. Use one of created, name.");
+            return;
+        }
+        boolean byName = sort.equals("name");
+
+        // Newest first by default, but A to Z
+        String order = params.getOrDefault("order", byName ? "asc" : "desc");
+        if (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+            request.sendError(400, "'order' must be asc or desc.");
+            return;
+        }
+        boolean descending = order.equalsIgnoreCase("desc");
+
+        // Filters
+        String prefix = params.getOrDefault("name", "").toLowerCase(Locale.ROOT);
+        String reason = params.get("reason");
+        String reasonLower = reason != null ? reason.toLowerCase(Locale.ROOT) : null;
+        String source = params.get("source");
+        long since = params.getLong("since", Long.MIN_VALUE);
+        long until = params.getLong("until", Long.MAX_VALUE);
+
+        BanRecord after = null;
+        String cursor = params.get("cursor");
+        if (cursor != null && !cursor.isEmpty()) {
+            after = decodeCursor(cursor, sort, descending);
+            if (after == null || (byName && !after.sortName().startsWith(prefix))) {
+                request.sendError(400, "Invalid cursor. Cursors only work with the same search, sort and order they were returned for.");
+                return;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        List<BanRecord> page = new ArrayList<>((int) Math.min(limit + 1, 256));
+
+        // Stops after one extra match, to know whether there's another page
+        Predicate<BanRecord> visitor = record -> {
+            if (record.isExpired(now)) return true;
+            // The index being walked already covers one of these
+            if (byName ? record.created() < since || record.created() >= until : !record.sortName().startsWith(prefix)) return true;
+            if (reasonLower != null && !record.reason().toLowerCase(Locale.ROOT).contains(reasonLower)) return true;
+            if (source != null && !record.source().equalsIgnoreCase(source)) return true;
+
+            page.add(record);
+            return page.size() <= limit;
+        };
+
+        if (byName) index.visitByName(prefix, after, descending, visitor);
+        else index.visitByCreated(since, until, after, descending, visitor);
+
+        boolean more = page.size() > limit;
+        if (more) page.removeLast();
+
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("totalBans", index.size())
+                .name("bans").beginArray();
+
+        for (BanRecord record : page) {
+            json.beginObject()
+                    .field("uuid", record.uuid().toString())
+                    .field("name", record.name())
+                    .field("reason", record.reason())
+                    .field("source", record.source())
+                    .field("created", record.created());
+
+            if (record.expires() != 0) json.field("expires", record.expires());
+            else json.name("expires").nullValue();
+
+            json.endObject();
+        }
+
+        json.endArray();
+        if (more) json.field("nextCursor", encodeCursor(page.getLast(), sort, descending));
+        else json.name("nextCursor").nullValue();
+
+        request.send(200, json.endObject());
+    }
+
+    // "<sort>.<order>:<key>:<uuid>", base64url-encoded so clients treat it as opaque
+    private static String encodeCursor(BanRecord last, String sort, boolean descending) {
+        String key = sort.equals("name") ? last.sortName() : String.valueOf(last.created());
+        String cursor = sort + (descending ? ".desc:" : ".asc:") + key + ":" + last.uuid();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A record that sorts exactly where the cursor points, or null if the
+    // cursor is malformed or was made for a different sort or order
+    private static @Nullable BanRecord decodeCursor(String cursor, String sort, boolean descending) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            String prefix = sort + (descending ? ".desc:" : ".asc:");
+            if (!decoded.startsWith(prefix)) return null;
+
+            int split = decoded.lastIndexOf(':');
+            if (split < prefix.length()) return null;
+
+            String key = decoded.substring(prefix.length(), split);
+            UUID uuid = UUID.fromString(decoded.substring(split + 1));
+
+            return sort.equals("name")
+                    ? new BanRecord(uuid, key, key, "", "", 0, 0)
+                    : new BanRecord(uuid, "", "", "", "", Long.parseLong(key), 0);
+        }
+        catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            return null;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.antaptive.commandBlock;
+
+import com.google.gson.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.antaptive.commandBlock.ProfileResolver.ResolvedProfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// POST /server/player/batch
+// Takes a JSON array of {"action", "player", "reason"} objects, validates them and
+// resolves their profiles on the HTTP thread, then applies them through the main-thread
+// queue, which spreads them over as many ticks as its time budget needs.
+// Responds with one result per operation, in request order.
+public final class BatchHandler implements ApiRouter.Endpoint {
+
+    private final CommandBlock plugin;
+
+    public BatchHandler(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        int maxOperations = plugin.getConfig().getInt("batch-max-operations", 1000);
+        long timeoutMillis = plugin.getConfig().getLong("batch-timeout-ms", 30000);
+
+        JsonArray operations;
+        try {
+            String body = readBody(request.exchange().getRequestBody(), maxOperations * 512L);
+            operations = JsonParser.parseString(body).getAsJsonArray();
+        }
+        catch (IllegalStateException | JsonParseException e) {
+            request.sendError(400, "The request body must be a JSON array of operations.");
+            return;
+        }
+        catch (BodyTooLargeException e) {
+            request.sendError(413, "The request body is too large.");
+            return;
+        }
+
+        if (operations.size() > maxOperations) {
+            request.sendError(413, "Too many operations. The limit is " + maxOperations + ".");
+            return;
+        }
+
+        // Validate everything before touching the main thread
+        Operation[] parsed = new Operation[operations.size()];
+        List<Operation> valid = new ArrayList<>(parsed.length);
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = Operation.parse(i, operations.get(i));
+            if (parsed[i].error == null) valid.add(parsed[i]);
+        }
+
+        // Resolve names up front so the main thread never waits on a profile lookup
+        ProfileResolver resolver = plugin.getProfileResolver();
+        List<CompletableFuture<ResolvedProfile>> lookups = new ArrayList<>(valid.size());
+        for (Operation operation : valid) {
+            lookups.add(operation.action.needsProfile() ? resolver.resolve(operation.player) : null);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plugin.getConfig().getLong("profile-lookup-timeout-ms", 5000));
+        List<Operation> ready = new ArrayList<>(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            Operation operation = valid.get(i);
+            CompletableFuture<ResolvedProfile> lookup = lookups.get(i);
+
+            if (lookup != null) {
+                try {
+                    operation.profile = lookup.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    request.sendError(500, "Interrupted while applying the batch.");
+                    return;
+                }
+                catch (ExecutionException | TimeoutException e) {
+                    operation.error = "Failed to look up the player's profile.";
+                    continue;
+                }
+
+                if (operation.profile == null) {
+                    operation.error = "Player not found.";
+                    continue;
+                }
+            }
+
+            ready.add(operation);
+        }
+
+        MainThreadQueue queue = plugin.getMainThreadQueue();
+        List<CompletableFuture<Void>> results = new ArrayList<>(ready.size());
+        for (Operation operation : ready) {
+            results.add(queue.execute(() -> {
+                PlayerActions.apply(operation.action, operation.player, operation.profile, operation.reason);
+                if (operation.action == PlayerActions.Action.BAN || operation.action == PlayerActions.Action.UNBAN) {
+                    plugin.getBanIndex().refresh(operation.profile.id(), operation.profile.name());
+                }
+            }));
+        }
+
+        long applyDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int timedOut = 0;
+        for (int i = 0; i < ready.size(); i++) {
+            Operation operation = ready.get(i);
+            CompletableFuture<Void> result = results.get(i);
+
+            try {
+                try {
+                    result.get(Math.max(0, applyDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                catch (TimeoutException e) {
+                    // Operations that never started are dropped; one that is running is waited for
+                    if (result.cancel(false)) {
+                        operation.error = "Timed out before it could be applied.";
+                        timedOut++;
+                        continue;
+                    }
+                    result.get();
+                }
+
+                operation.success = true;
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                operation.error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.forEach(r -> r.cancel(false));
+                request.sendError(500, "Interrupted while applying the batch.");
+                return;
+            }
+        }
+
+        if (timedOut > 0) {
+            plugin.getLogger().warning(timedOut + " of " + ready.size() + " batch operations timed out and were not applied.");
+        }
+
+        Set<UUID> whitelisted = new HashSet<>();
+        for (Operation operation : ready) {
+            if (operation.success && operation.action == PlayerActions.Action.WHITELIST_ADD) whitelisted.add(operation.profile.id());
+        }
+        ActionScheduler scheduler = plugin.getActionScheduler();
+        if (scheduler != null) scheduler.cancelWhitelistRemovals(whitelisted);
+
+        // The batch itself is audited by the router; each operation is audited as
+        // if it had been sent to its own endpoint
+        AuditLog auditLog = plugin.getAuditLog();
+        InetSocketAddress remote = request.remoteAddress();
+        String address = remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+        long now = System.currentTimeMillis();
+
+        JsonWriter json = JsonWriter.acquire().beginObject().name("results").beginArray();
+        for (Operation operation : parsed) {
+            operation.writeResult(json);
+            auditLog.record(new AuditLog.Entry(
+                    now,
+                    address,
+                    operation.action != null ? "/server/player/" + operation.action.getId() : request.path(),
+                    operation.player,
+                    operation.reason,
+                    operation.success ? 200 : 400,
+                    operation.error
+            ));
+        }
+        json.endArray().endObject();
+
+        request.send(200, json);
+    }
+
+    // The whole body as text, or BodyTooLargeException if it's longer than limit bytes
+    static String readBody(InputStream in, long limit) throws IOException {
+        byte[] body = in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, limit + 1));
+        if (body.length > limit) throw new BodyTooLargeException();
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    static final class BodyTooLargeException extends IOException {}
+
+    private static final class Operation {
+        final int index;
+        final PlayerActions.Action action;
+        final String actionId;
+        final String player;
+        final String reason;
+
+        ResolvedProfile profile;
+
+        // Only written by the HTTP thread, once the operation's future has completed
+        boolean success;
+        String error;
+
+        private Operation(int index, PlayerActions.Action action, String actionId, String player, String reason, String error) {
+            this.index = index;
+            this.action = action;
+            this.actionId = actionId;
+            this.player = player;
+            this.reason = reason;
+            this.error = error;
+        }
+
+        static Operation parse(int index, JsonElement element) {
+            if (!element.isJsonObject()) {
+                return new Operation(index, null, null, null, "", "Operation must be a JSON object.");
+            }
+
+            JsonObject object = element.getAsJsonObject();
+            String actionId = getString(object, "action");
+            String player = getString(object, "player");
+            String reason = getString(object, "reason");
+            if (reason == null) reason = "";
+
+            PlayerActions.Action action = actionId == null ? null : PlayerActions.Action.fromId(actionId);
+
+            String error = null;
+            if (action == null) {
+                error = "Unknown action. Use one of kick, ban, unban, whitelist/add, whitelist/remove.";
+            }
+            else if (player == null || player.isBlank()) {
+                error = "A user was not specified. Please specify a 'player' field.";
+            }
+
+            return new Operation(index, action, actionId, player, reason, error);
+        }
+
+        private static String getString(JsonObject object, String key) {
+            JsonElement value = object.get(key);
+            return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+        }
+
+        void writeResult(JsonWriter json) {
+            json.beginObject()
+                    .field("index", index)
+                    .field("action", actionId)
+                    .field("player", player)
+                    .field("success", success);
+            if (!success) json.field("error", error);
+            json.endObject();
+        }
+    }
+}
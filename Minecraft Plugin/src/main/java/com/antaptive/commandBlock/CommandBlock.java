@@ -1,39 +1,62 @@
 package com.antaptive.commandBlock;
 
-import com.destroystokyo.paper.profile.PlayerProfile;
-import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
-import io.papermc.paper.ban.BanListType;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
-
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.earth2me.essentials.*;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
 
 public final class CommandBlock extends JavaPlugin {
 
     private HttpServer server;
+    private RequestExecutor requestExecutor;
+    private ListenerSettings listenerSettings;
+    // Every listener's "/" context hands requests to whichever router is current
+    private volatile ApiRouter router;
+    // Replaced listeners that are still finishing their requests
+    private final Set<HttpServer> draining = ConcurrentHashMap.newKeySet();
+    // Waiting for the port to be let go of when it can't be shared, see bindWhenFree
+    private Thread rebinding;
+    private WhitelistTransfer whitelistTransfer;
+    // Only set when gateway-backends lists other servers
+    private Gateway gateway;
     private String apiToken;
 
     private Essentials essentials;
+    private PresenceTracker presenceTracker;
+    private StatsPublisher statsPublisher;
+    private PlayerIndex playerIndex;
+    private BanIndex banIndex;
+    private ActionScheduler actionScheduler;
+    private HealthHistory healthHistory;
+    private ProfileResolver profileResolver;
+    private OfflinePlayerData offlinePlayerData;
+    private EventStream eventStream;
+    private Metrics metrics;
+    private MainThreadQueue mainThreadQueue;
+    private AuditLog auditLog;
 
     private long serverStartTime;
 
@@ -76,469 +99,478 @@ public final class CommandBlock extends JavaPlugin {
 
         this.getCommand("restarthttpserver").setExecutor(new RestartHTTPServer());
 
-        StartHTTPServer();
-    }
-
-    @Override
-    public void onDisable() {
-        // Plugin shutdown logic
-        StopHTTPServer();
-    }
-
-    public String getFormattedUptime() {
-        long uptimeMillis = System.currentTimeMillis() - serverStartTime;
-        long seconds = uptimeMillis / 1000;
-
-        long days = seconds / 86400;
-        long hours = (seconds % 86400) / 3600;
-        long minutes = (seconds % 3600) / 60;
-        long secs = seconds % 60;
-
-        return String.format("%dd %dh %dm %ds", days, hours, minutes, secs);
-    }
-
-    public void StartHTTPServer() {
-        if (server != null) {
-            server.stop(0);
-            getLogger().info("HTTP server has stopped and is being restarted");
-        }
-
-        int port = getConfig().getInt("port");
-        String bindAddress = getConfig().getString("bind-address", "127.0.0.1");
-
+        metrics = new Metrics();
+        // Read from the health history's latest sample, so a scrape never touches Bukkit off the main thread
+        metrics.gauge("commandblock_server_tps", "Ticks per second over the last second.", () -> sampled(HealthHistory.Latest::tps));
+        metrics.gauge("commandblock_server_mspt", "Average milliseconds per tick.", () -> sampled(HealthHistory.Latest::mspt));
+        metrics.gauge("commandblock_online_players", "Players online.", () -> sampled(HealthHistory.Latest::onlinePlayers));
+        metrics.gauge("commandblock_http_in_flight", "HTTP requests being handled.", () -> requestExecutor != null ? requestExecutor.getInFlight() : 0);
+
+        auditLog = new AuditLog(this, getDataFolder().toPath().resolve("audit"), new AuditLog.Settings(
+                getConfig().getInt("audit-segment-mb", 16) * 1024 * 1024,
+                getConfig().getInt("audit-max-segments", 32),
+                getConfig().getInt("audit-queue-size", 10000),
+                getConfig().getBoolean("audit-sync", true),
+                getConfig().getBoolean("audit-console", true)
+        ));
         try {
-            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+            auditLog.start();
+        }
+        catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Failed to open the audit log. API actions will not be audited.", e);
+        }
+        metrics.gauge("commandblock_audit_queue_depth", "Audit entries waiting to be written.", auditLog::getDepth);
+        metrics.counter("commandblock_audit_dropped_total", "Audit entries dropped because the audit queue was full.", auditLog::getDropped);
+
+        mainThreadQueue = new MainThreadQueue(this, metrics, getConfig().getDouble("main-thread-budget-ms", 2));
+        mainThreadQueue.start();
+        metrics.gauge("commandblock_main_thread_queue_depth", "API commands waiting for the main thread.", mainThreadQueue::getDepth);
+
+        profileResolver = new ProfileResolver(
+                this,
+                ProfileResolver.PAPER_LOOKUP,
+                getConfig().getInt("profile-cache-size", 10000),
+                getConfig().getLong("profile-cache-ttl-minutes", 1440) * 60_000L,
+                getConfig().getLong("profile-negative-ttl-minutes", 5) * 60_000L
+        );
+        getServer().getPluginManager().registerEvents(profileResolver, this);
+        Bukkit.getScheduler().runTaskAsynchronously(this, profileResolver::warm);
+
+        offlinePlayerData = new OfflinePlayerData(this, getConfig().getInt("player-info-cache-size", 256));
+        offlinePlayerData.start();
+        getServer().getPluginManager().registerEvents(offlinePlayerData, this);
+
+        // Before the stats and the player index, which read from it
+        presenceTracker = new PresenceTracker(this);
+        getServer().getPluginManager().registerEvents(presenceTracker, this);
+        if (essentials != null) {
+            getServer().getPluginManager().registerEvents(new PresenceTracker.EssentialsListener(presenceTracker), this);
+        }
+        presenceTracker.start(getConfig().getLong("presence-ping-interval-ticks", 100));
 
-            // Server control endpoints
-            server.createContext("/server/stop", exchange -> {
-                if (!handleAuth(exchange)) return;
+        statsPublisher = new StatsPublisher(this);
+        statsPublisher.start(getConfig().getLong("stats-interval-ticks", 20));
 
-                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use POST\"}");
-                    return;
-                }
+        // One sample per second
+        healthHistory = new HealthHistory(this, (int) Math.min(Integer.MAX_VALUE, getConfig().getLong("stats-history-hours", 24) * 3600));
+        healthHistory.start();
 
-                getLogger().info("Stop command received from " + exchange.getRemoteAddress());
+        playerIndex = new PlayerIndex(this);
+        playerIndex.start(getConfig().getLong("players-interval-ticks", 20));
 
-                Bukkit.getScheduler().runTask(this, () -> {
-                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), "stop");
-                });
+        banIndex = new BanIndex(this);
+        banIndex.start(Math.max(1, getConfig().getLong("bans-reconcile-interval-seconds", 300)) * 20);
+        getServer().getPluginManager().registerEvents(banIndex, this);
 
-                sendResponse(exchange, 200, "{\"success\": true}");
-            });
+        // After the ban index and the audit log, which it updates as it applies actions
+        ActionScheduler scheduler = new ActionScheduler(this, getDataFolder().toPath().resolve("scheduled.journal"),
+                getConfig().getInt("scheduled-batch-size", 100), getConfig().getDouble("main-thread-budget-ms", 2));
+        try {
+            scheduler.start();
+            actionScheduler = scheduler;
+            metrics.gauge("commandblock_scheduled_actions", "Scheduled player actions waiting to come due.", scheduler::size);
+        }
+        catch (IOException e) {
+            scheduler.stop();
+            getLogger().log(Level.SEVERE, "Failed to open the scheduled actions journal. Actions can't be scheduled.", e);
+        }
 
-            // Player management endpoints
-            server.createContext("/server/player/kick", exchange -> {
-                // If the request doesn't have proper authentication
-                if (!handleAuth(exchange)) return;
+        eventStream = new EventStream(this);
+        metrics.gauge("commandblock_event_subscribers", "Open /server/events streams.", eventStream::getSubscriberCount);
+        getServer().getPluginManager().registerEvents(new ServerEventListener(eventStream), this);
+        if (essentials != null) {
+            getServer().getPluginManager().registerEvents(new ServerEventListener.EssentialsListener(eventStream), this);
+        }
 
-                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use POST\"}");
-                    return;
-                }
+        long tpsInterval = Math.max(1, getConfig().getLong("events-tps-interval-ticks", 100));
+        Bukkit.getScheduler().runTaskTimer(this, () -> {
+            if (!eventStream.hasSubscribers()) return;
 
-                getLogger().info("Kick Player command received from " + exchange.getRemoteAddress());
+            eventStream.publish("tps", json -> json.beginObject()
+                    .field("tps", getServer().getTPS()[0])
+                    .field("onlinePlayers", Bukkit.getOnlinePlayers().size())
+                    .endObject());
+        }, tpsInterval, tpsInterval);
 
-                // Parse query parameters
-                String query = exchange.getRequestURI().getQuery();
-                if (query == null || query.isEmpty()) {
-                    sendResponse(exchange, 400, "{\"error\": \"Missing query parameters\"}");
-                    getLogger().warning("Request was denied for missing query parameters.");
-                    return;
-                }
+        StartHTTPServer();
+    }
 
-                Map<String, String> params = new HashMap<>();
-                for (String param : query.split("&")) {
-                    String[] pair = param.split("=", 2);
-                    if (pair.length == 2) {
-                        try {
-                            params.put(pair[0], java.net.URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-                        } catch (Exception e) {
-                            // If decoding fails, use the raw value
-                            params.put(pair[0], pair[1]);
-                        }
-                    }
-                }
+    @Override
+    public void onDisable() {
+        // Plugin shutdown logic
+        StopHTTPServer();
 
-                String playerName = params.get("player");
-                String reason = params.getOrDefault("reason", "");
+        if (mainThreadQueue != null) {
+            mainThreadQueue.stop();
+        }
 
-                if (playerName == null || playerName.isBlank()) {
-                    sendResponse(exchange, 400, "{\"error\": \"A user was not specified. Please specify a 'player' parameter.\"}");
-                    getLogger().warning("Request was denied for missing a 'player' parameter.");
-                    return;
-                }
+        if (statsPublisher != null) {
+            statsPublisher.stop();
+        }
 
-                try {
-                    Player player = Bukkit.getPlayer(playerName);
+        if (playerIndex != null) {
+            playerIndex.stop();
+        }
 
-                    if (player != null) {
-                        Bukkit.getScheduler().runTask(this, () -> {
-                            Component message = Component.text("You have been kicked.", NamedTextColor.RED);
+        if (presenceTracker != null) {
+            presenceTracker.stop();
+        }
 
-                            if (!reason.isBlank()) {
-                                message = message.append(Component.text("\n" + reason, NamedTextColor.YELLOW));
-                            }
+        if (healthHistory != null) {
+            healthHistory.stop();
+        }
 
-                            Bukkit.getPlayer(playerName).kick(message);
-                        });
+        if (banIndex != null) {
+            banIndex.stop();
+        }
 
-                        getLogger().info(playerName + " was kicked.");
-                        sendResponse(exchange, 200, "{\"success\": true}");
-                    }
-                    else {
-                        sendResponse(exchange, 400, "{\"error\": \"The player is not online\"}");
-                        getLogger().warning("Request tried to kick " + playerName + " but the player was not online.");
-                    }
-                }
-                catch (Exception e) {
-                    sendResponse(exchange, 400, "{\"error\": \"" + e.getMessage() + "\"}");
-                    getLogger().severe("Error kicking " + playerName + ": " + e.getMessage());
-                }
+        if (actionScheduler != null) {
+            actionScheduler.stop();
+        }
 
-            });
+        if (profileResolver != null) {
+            profileResolver.shutdown();
+        }
 
-            server.createContext("/server/player/ban", exchange -> {
-                // If the request doesn't have proper authentication
-                if (!handleAuth(exchange)) return;
+        if (offlinePlayerData != null) {
+            offlinePlayerData.shutdown();
+        }
 
-                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use POST\"}");
-                    return;
-                }
+        // Last, so actions that finished during shutdown are written
+        if (auditLog != null) {
+            auditLog.stop();
+        }
+    }
 
-                getLogger().info("Ban Player command received from " + exchange.getRemoteAddress());
+    public Essentials getEssentials() {
+        return essentials;
+    }
 
-                // Parse query parameters
-                String query = exchange.getRequestURI().getQuery();
-                if (query == null || query.isEmpty()) {
-                    sendResponse(exchange, 400, "{\"error\": \"Missing query parameters\"}");
-                    getLogger().warning("Request was denied for missing query parameters.");
-                    return;
-                }
+    public PresenceTracker getPresenceTracker() {
+        return presenceTracker;
+    }
 
-                Map<String, String> params = new HashMap<>();
-                for (String param : query.split("&")) {
-                    String[] pair = param.split("=", 2);
-                    if (pair.length == 2) {
-                        try {
-                            params.put(pair[0], java.net.URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-                        } catch (Exception e) {
-                            // If decoding fails, use the raw value
-                            params.put(pair[0], pair[1]);
-                        }
-                    }
-                }
+    public StatsPublisher getStatsPublisher() {
+        return statsPublisher;
+    }
 
-                String playerName = params.getOrDefault("player", "");
-                String reason = params.getOrDefault("reason", "");
+    public Metrics getMetrics() {
+        return metrics;
+    }
 
-                if (playerName.isBlank()) {
-                    sendResponse(exchange, 400, "{\"error\": \"A user was not specified. Please specify a 'player' parameter.\"}");
-                    getLogger().warning("Request was denied for missing a 'player' parameter.");
-                    return;
-                }
+    public MainThreadQueue getMainThreadQueue() {
+        return mainThreadQueue;
+    }
 
-                try {
-                    Bukkit.getScheduler().runTask(this, () -> {
-                        Component message = Component.text("You have been banned.", NamedTextColor.RED);
-
-                        if (!reason.isBlank()) {
-                            message = message.append(Component.text("\n" + reason, NamedTextColor.YELLOW));
-                        }
-
-                        Bukkit.getBanList(BanListType.PROFILE).addBan(
-                                playerName,
-                                reason,
-                                null,
-                                null
-                        );
-
-                        // Adding to the banlist doesn't kick the player, so give them a friendly shove.
-                        Bukkit.getPlayer(playerName).kick(message);
-                    });
-
-                    sendResponse(exchange, 200, "{\"success\": true}");
-                    getLogger().info(playerName + " was banned.");
-                }
-                catch (Exception e) {
-                    sendResponse(exchange, 400, "{\"error\": \"" + e.getMessage() + "\"}");
-                    getLogger().severe("Error banning " + playerName + ": " + e.getMessage());
-                }
+    public ProfileResolver getProfileResolver() {
+        return profileResolver;
+    }
 
-            });
+    public BanIndex getBanIndex() {
+        return banIndex;
+    }
 
-            server.createContext("/server/player/unban", exchange -> {
-                // If the request doesn't have proper authentication
-                if (!handleAuth(exchange)) return;
+    // Null if its journal couldn't be opened
+    public @Nullable ActionScheduler getActionScheduler() {
+        return actionScheduler;
+    }
 
-                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use POST\"}");
-                    return;
-                }
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
 
-                getLogger().info("Unban Player command received from " + exchange.getRemoteAddress());
+    public String getFormattedUptime() {
+        long uptimeMillis = System.currentTimeMillis() - serverStartTime;
+        long seconds = uptimeMillis / 1000;
 
-                // Parse query parameters
-                String query = exchange.getRequestURI().getQuery();
-                if (query == null || query.isEmpty()) {
-                    sendResponse(exchange, 400, "{\"error\": \"Missing query parameters\"}");
-                    getLogger().warning("Request was denied for missing query parameters.");
-                    return;
-                }
+        long days = seconds / 86400;
+        long hours = (seconds % 86400) / 3600;
+        long minutes = (seconds % 3600) / 60;
+        long secs = seconds % 60;
 
-                Map<String, String> params = new HashMap<>();
-                for (String param : query.split("&")) {
-                    String[] pair = param.split("=", 2);
-                    if (pair.length == 2) {
-                        try {
-                            params.put(pair[0], java.net.URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-                        } catch (Exception e) {
-                            // If decoding fails, use the raw value
-                            params.put(pair[0], pair[1]);
-                        }
-                    }
-                }
+        return String.format("%dd %dh %dm %ds", days, hours, minutes, secs);
+    }
 
-                String playerName = params.get("player");
+    // Everything a listener is built from. A reload that changes none of these
+    // only swaps the router; otherwise a new listener is opened first.
+    private record ListenerSettings(String transport, String bindAddress, int port, int backlog, long idleTimeoutMillis, int maxConnections,
+                                    int maxRequestBytes, String executorMode, int threads, int maxInFlight, long queueTimeoutMillis) {
+        static ListenerSettings of(FileConfiguration config) {
+            return new ListenerSettings(
+                    config.getString("http-transport", "nio").toLowerCase(Locale.ROOT),
+                    config.getString("bind-address", "127.0.0.1"),
+                    config.getInt("port"),
+                    config.getInt("http-backlog", 128),
+                    config.getLong("http-idle-timeout-ms", 30000),
+                    config.getInt("http-max-connections", 1000),
+                    config.getInt("http-max-request-bytes", 8 * 1024 * 1024),
+                    config.getString("http-executor", "virtual"),
+                    config.getInt("http-threads", 8),
+                    config.getInt("http-max-in-flight", 64),
+                    config.getLong("http-queue-timeout-ms", 250)
+            );
+        }
+    }
 
-                if (playerName == null || playerName.isBlank()) {
-                    sendResponse(exchange, 400, "{\"error\": \"A user was not specified. Please specify a 'player' parameter.\"}");
-                    getLogger().warning("Request was denied for missing a 'player' parameter.");
-                    return;
-                }
+    // Starts the HTTP server, or if it's already running, reloads config.yml and
+    // applies it without dropping a request: the new listener is open before the
+    // old one stops accepting (where the port can be shared), and the old one gets
+    // http-drain-seconds to finish.
+    // If the new config can't be used, the running server is left as it was.
+    public boolean StartHTTPServer() {
+        if (rebinding != null) {
+            getLogger().warning("The HTTP server is still restarting. Try again in a few seconds.");
+            return false;
+        }
 
-                var banList = Bukkit.getBanList(BanListType.PROFILE);
+        boolean reloading = server != null;
+        if (reloading) {
+            reloadConfig();
 
-                try {
-                    OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(playerName);
-                    PlayerProfile player = Bukkit.createProfile(offlinePlayer.getUniqueId(), playerName);
+            String token = getConfig().getString("api-token");
+            if (token == null || token.isBlank() || token.equals("your-secret-token-here") || !getConfig().contains("port")) {
+                getLogger().severe("config.yml was not reloaded: api-token and port must be set. The HTTP server is unchanged.");
+                return false;
+            }
+            apiToken = token;
+        }
 
-                    if (banList.isBanned(player)) {
-                        Bukkit.getScheduler().runTask(this, () -> {
-                            Bukkit.getBanList(BanListType.PROFILE).pardon(player);
-                        });
+        ListenerSettings settings = ListenerSettings.of(getConfig());
 
-                        sendResponse(exchange, 200, "{\"success\": true}");
-                    }
-                    else {
-                        sendResponse(exchange, 400, "{\"error\": \"Player is not banned.\"}");
-                        getLogger().warning("Request was denied since the player '" + playerName + "' is not banned.");
-                    }
-                }
-                catch (Exception e) {
-                    sendResponse(exchange, 400, "{\"error\": \"" + e.getMessage() + "\"}");
-                    getLogger().severe("Error unbanning " + playerName + ": " + e.getMessage());
-                }
+        // Only the token, limits or routes changed, so the listener can stay as it is
+        if (reloading && settings.equals(listenerSettings)) {
+            installRouter(requestExecutor);
+            getLogger().info("HTTP server settings reloaded");
+            return true;
+        }
 
-            });
+        RequestExecutor executor = new RequestExecutor(
+                RequestExecutor.parseMode(settings.executorMode()),
+                settings.threads(),
+                settings.maxInFlight(),
+                settings.queueTimeoutMillis()
+        );
 
-            // TODO: Force whitelist to work only if the user exists. Also, return the
-            // ACTUAL username of who got whitelisted.
-            server.createContext("/server/player/whitelist/add", exchange -> {
-                // If the request doesn't have proper authentication
-                if (!handleAuth(exchange)) return;
+        HttpServer newServer;
+        try {
+            newServer = createTransport(settings);
+        }
+        catch (BindException e) {
+            if (!reloading || !sameAddress(settings, listenerSettings)) {
+                executor.shutdown();
+                getLogger().severe("Failed to start HTTP Server: " + e.getMessage());
+                return false;
+            }
 
-                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use POST\"}");
-                    return;
-                }
+            // Without SO_REUSEPORT (Windows, or the jdk transport) the port can't be
+            // shared, so the old listener has to close it before the new one can bind.
+            // Neither waits here: the requests it is draining may be waiting on the
+            // main thread.
+            getLogger().warning("The port can't be shared with the old HTTP server (SO_REUSEPORT isn't available), so new connections are refused until it has been handed over.");
+            eventStream.closeAll();
+            drain(server, requestExecutor);
+            server = null;
+            requestExecutor = null;
+            listenerSettings = null;
+
+            bindWhenFree(settings, executor);
+            return true;
+        }
+        catch (IOException e) {
+            executor.shutdown();
+            getLogger().severe("Failed to start HTTP Server: " + e.getMessage());
+            return false;
+        }
 
-                getLogger().info("Whitelist Add Player command received from " + exchange.getRemoteAddress());
+        startListener(newServer, settings, executor);
+        return true;
+    }
 
-                // Parse query parameters
-                String query = exchange.getRequestURI().getQuery();
-                if (query == null || query.isEmpty()) {
-                    sendResponse(exchange, 400, "{\"error\": \"Missing query parameters\"}");
-                    getLogger().warning("Request was denied for missing query parameters.");
-                    return;
-                }
+    private void startListener(HttpServer newServer, ListenerSettings settings, RequestExecutor executor) {
+        // Every listener, including one still draining, sends requests to the current router
+        installRouter(executor);
+        newServer.createContext("/", exchange -> router.handle(exchange));
+        newServer.setExecutor(executor);
+        newServer.start();
+
+        HttpServer oldServer = server;
+        RequestExecutor oldExecutor = requestExecutor;
+        server = newServer;
+        requestExecutor = executor;
+        listenerSettings = settings;
+
+        if (oldServer != null) {
+            // Event streams never finish on their own; clients reconnect to the new listener
+            eventStream.closeAll();
+            drain(oldServer, oldExecutor);
+        }
 
-                Map<String, String> params = new HashMap<>();
-                for (String param : query.split("&")) {
-                    String[] pair = param.split("=", 2);
-                    if (pair.length == 2) {
-                        try {
-                            params.put(pair[0], java.net.URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-                        } catch (Exception e) {
-                            // If decoding fails, use the raw value
-                            params.put(pair[0], pair[1]);
-                        }
-                    }
-                }
+        getLogger().info("HTTP server started on " + settings.bindAddress() + ":" + settings.port());
+    }
 
-                String playerName = params.get("player");
+    // Binds in the background as soon as the draining listener has let go of the
+    // port, then starts the new listener on the main thread
+    private void bindWhenFree(ListenerSettings settings, RequestExecutor executor) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, getConfig().getInt("http-drain-seconds", 10)) + 5L);
 
-                if (playerName == null || playerName.isBlank()) {
-                    sendResponse(exchange, 400, "{\"error\": \"A user was not specified. Please specify a 'player' parameter.\"}");
-                    getLogger().warning("Request was denied for missing a 'player' parameter.");
-                    return;
-                }
+        rebinding = Thread.ofVirtual().name("CommandBlock-HTTP-Rebind").unstarted(() -> {
+            Thread self = Thread.currentThread();
+            HttpServer newServer = null;
 
+            while (newServer == null) {
                 try {
-                    Bukkit.getScheduler().runTask(this, () -> {
-                        Bukkit.getOfflinePlayer(playerName).setWhitelisted(true);
-                    });
-
-                    getLogger().info(playerName + " was whitelisted.");
-                    sendResponse(exchange, 200, "{\"success\": true}");
-                }
-                catch (Exception e) {
-                    sendResponse(exchange, 400, "{\"error\": \"" + e.getMessage() + "\"}");
-                    getLogger().severe("Error whitelisting " + playerName + ": " + e.getMessage());
+                    newServer = createTransport(settings);
                 }
+                catch (BindException e) {
+                    if (System.nanoTime() >= deadline || self.isInterrupted()) {
+                        bindFailed(self, executor, e);
+                        return;
+                    }
 
-            });
-
-            server.createContext("/server/player/whitelist/remove", exchange -> {
-                // If the request doesn't have proper authentication
-                if (!handleAuth(exchange)) return;
-
-                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use POST\"}");
-                    return;
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
                 }
-
-                getLogger().info("Whitelist Remove Player command received from " + exchange.getRemoteAddress());
-
-                // Parse query parameters
-                String query = exchange.getRequestURI().getQuery();
-                if (query == null || query.isEmpty()) {
-                    sendResponse(exchange, 400, "{\"error\": \"Missing query parameters\"}");
-                    getLogger().warning("Request was denied for missing query parameters.");
+                catch (IOException e) {
+                    bindFailed(self, executor, e);
                     return;
                 }
+            }
 
-                Map<String, String> params = new HashMap<>();
-                for (String param : query.split("&")) {
-                    String[] pair = param.split("=", 2);
-                    if (pair.length == 2) {
-                        try {
-                            params.put(pair[0], java.net.URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-                        } catch (Exception e) {
-                            // If decoding fails, use the raw value
-                            params.put(pair[0], pair[1]);
-                        }
+            HttpServer bound = newServer;
+            try {
+                Bukkit.getScheduler().runTask(this, () -> {
+                    // Stopped while it was waiting for the port
+                    if (rebinding != self) {
+                        bound.stop(0);
+                        executor.shutdown();
+                        return;
                     }
-                }
 
-                String playerName = params.get("player");
-
-                if (playerName == null || playerName.isBlank()) {
-                    sendResponse(exchange, 400, "{\"error\": \"A user was not specified. Please specify a 'player' parameter.\"}");
-                    getLogger().warning("Request was denied for missing a 'player' parameter.");
-                    return;
-                }
+                    rebinding = null;
+                    startListener(bound, settings, executor);
+                });
+            }
+            catch (IllegalPluginAccessException e) {
+                // Disabled in the meantime
+                bound.stop(0);
+                executor.shutdown();
+            }
+        });
+        rebinding.start();
+    }
 
-                try {
-                    Bukkit.getScheduler().runTask(this, () -> {
-                        Bukkit.getOfflinePlayer(playerName).setWhitelisted(false);
-
-                        Player player = Bukkit.getPlayer(playerName);
-
-                        if (player != null) {
-                            Component message = Component.text("You have been removed from the whitelist and kicked.", NamedTextColor.RED);
-                            player.kick(message);
-                        }
-                    });
-                    getLogger().info(playerName + " was removed from the whitelist and kicked.");
-                    sendResponse(exchange, 200, "{\"success\": true}");
-                }
-                catch (Exception e) {
-                    sendResponse(exchange, 400, "{\"error\": \"" + e.getMessage() + "\"}");
-                    getLogger().severe("Error removing " + playerName + " from whitelist: " + e.getMessage());
-                }
+    private void bindFailed(Thread self, RequestExecutor executor, IOException e) {
+        executor.shutdown();
+        getLogger().severe("Failed to start HTTP Server: " + e.getMessage());
 
+        try {
+            Bukkit.getScheduler().runTask(this, () -> {
+                if (rebinding == self) rebinding = null;
             });
+        }
+        catch (IllegalPluginAccessException ignored) {
+        }
+    }
 
-            server.createContext("/server/stats", exchange -> {
-                // If the request doesn't have proper authentication
-                if (!handleAuth(exchange)) return;
-
-                if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
-                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed. Use GET\"}");
-                    return;
-                }
-
-                getLogger().info("Server stats request received from " + exchange.getRemoteAddress());
-
-                // Statistic variables
-                String gameVersion = Bukkit.getMinecraftVersion();
-                int onlinePlayerCount = Bukkit.getOnlinePlayers().size();
-                int maxPlayerCount = Bukkit.getMaxPlayers();
-                String serverUptime = getFormattedUptime();
-
-                double tps = getServer().getTPS()[0];
+    // Every listener sends new requests to this router from now on
+    private void installRouter(RequestExecutor executor) {
+        Gateway previousGateway = gateway;
+        gateway = Gateway.create(this, previousGateway);
+        router = createRouter(executor);
 
-                List<String> playerList = new ArrayList<>();
+        // Requests it has already sent to backends still finish
+        if (previousGateway != null && previousGateway != gateway) previousGateway.shutdown();
+    }
 
-                for (Player p : Bukkit.getOnlinePlayers()) {
-                    int ping = p.getPing();
-                    String name = p.getName();
+    private ApiRouter createRouter(RequestExecutor executor) {
+        RateLimiter rateLimiter = new RateLimiter(
+                getConfig().getInt("rate-limit-buckets", 4096),
+                getConfig().getDouble("rate-limit-read-per-second", 20),
+                getConfig().getInt("rate-limit-read-burst", 40),
+                getConfig().getDouble("rate-limit-mutation-per-second", 5),
+                getConfig().getInt("rate-limit-mutation-burst", 20)
+        );
+
+        // Kept across reloads, since it holds the state of running imports
+        if (whitelistTransfer == null) whitelistTransfer = new WhitelistTransfer(this);
+
+        ApiRouter router = new ApiRouter(this, apiToken, metrics, executor, rateLimiter, auditLog);
+        new ApiEndpoints(this).register(router);
+        router.get("/server/stats/history", healthHistory);
+        router.get("/server/players", new PlayersHandler(this, playerIndex));
+        router.get("/server/player/info", new PlayerInfoHandler(this, offlinePlayerData));
+        router.get("/server/bans", new BansHandler(this, banIndex));
+        router.post("/server/player/batch", new BatchHandler(this));
+        router.post("/server/command", new CommandHandler(this));
+        whitelistTransfer.register(router);
+        router.stream("/server/events", eventStream);
+        router.get("/audit", new AuditHandler(this, auditLog));
+        router.add("/metrics", "GET", this::sendMetrics, getConfig().getBoolean("metrics-require-auth", true), true);
+        if (gateway != null) gateway.register(router);
+        return router;
+    }
 
-                    boolean isAfk = false;
-                    if (essentials != null) {
-                        com.earth2me.essentials.User user = essentials.getUser(p);
-                        if (user != null) isAfk = user.isAfk();
-                    }
+    // Lets the old listener finish its requests in the background
+    private void drain(HttpServer oldServer, RequestExecutor oldExecutor) {
+        int seconds = Math.max(0, getConfig().getInt("http-drain-seconds", 10));
+        draining.add(oldServer);
 
-                    String display = name + (isAfk ? " (AFK)" : "") + " [" + ping + "ms]";
-                    playerList.add(display);
-                }
+        Thread.ofVirtual().name("CommandBlock-HTTP-Drain").start(() -> {
+            try {
+                oldServer.stop(seconds);
+            }
+            finally {
+                oldExecutor.shutdown();
+                draining.remove(oldServer);
+            }
+        });
+    }
 
-                Gson gson = new Gson();
-                Map<String, Object> stats = new HashMap<>();
-                stats.put("gameVersion", gameVersion);
-                stats.put("uptime", serverUptime);
-                stats.put("onlinePlayers", onlinePlayerCount);
-                stats.put("maxPlayers", maxPlayerCount);
-                stats.put("tps", tps);
-                stats.put("playerList", playerList);
-
-                String json = gson.toJson(stats);
-
-                exchange.getResponseHeaders().set("Content-Type", "application/json");
-                exchange.sendResponseHeaders(200, json.getBytes().length);
-                exchange.getResponseBody().write(json.getBytes());
-                exchange.close();
-            });
+    private static boolean sameAddress(ListenerSettings a, ListenerSettings b) {
+        return a.port() == b.port() && a.bindAddress().equals(b.bindAddress());
+    }
 
-            server.setExecutor(null);
-            server.start();
-            getLogger().info("HTTP server started on " + bindAddress + ":" + port);
+    // "nio" is the default; "jdk" falls back to the JDK's built-in server
+    private HttpServer createTransport(ListenerSettings settings) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(settings.bindAddress(), settings.port());
 
-        } catch (Exception e) {
-            getLogger().severe("Failed to start HTTP Server: " + e.getMessage());
+        if ("jdk".equals(settings.transport())) {
+            return HttpServer.create(address, settings.backlog());
         }
+
+        return NioHttpServer.create(address, new NioHttpServer.Settings(
+                settings.backlog(),
+                settings.idleTimeoutMillis(),
+                settings.maxConnections(),
+                settings.maxRequestBytes()
+        ), getLogger());
     }
 
     public void StopHTTPServer() {
+        if (rebinding != null) {
+            rebinding.interrupt();
+            rebinding = null;
+        }
+
         if (server != null) {
+            eventStream.closeAll();
             server.stop(0);
+            requestExecutor.shutdown();
+            server = null;
         }
-    }
 
-    private boolean handleAuth(@NotNull HttpExchange exchange) throws IOException {
-        // Check HTTP method
-        String method = exchange.getRequestMethod();
-        if (!method.equalsIgnoreCase("POST") && !method.equalsIgnoreCase("GET")) {
-            sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
-            getLogger().info(exchange.getRemoteAddress() + " failed authentication: Attempted a " + method + " request.");
-            return false;
+        // Shutting down, so don't wait for old listeners any longer
+        for (HttpServer old : draining) {
+            old.stop(0);
         }
 
-        // Check authorization
-        if (!isAuthorized(exchange)) {
-            sendResponse(exchange, 401, "{\"error\": \"Unauthorized\"}");
-            getLogger().info(exchange.getRemoteAddress() + " failed authentication: Incorrect API token.");
-            return false;
+        if (gateway != null) {
+            gateway.shutdown();
+            gateway = null;
         }
-
-        return true;
     }
 
     // Check if request has valid authorization token
-    private boolean isAuthorized(@NotNull HttpExchange exchange) {
+    static boolean isAuthorized(@NotNull HttpExchange exchange, @NotNull String apiToken) {
         String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
         if (authHeader == null) return false;
 
@@ -551,29 +583,31 @@ public final class CommandBlock extends JavaPlugin {
         return false;
     }
 
-    // Send HTTP response
-    private void sendResponse(@NotNull HttpExchange exchange, int statusCode, @NotNull String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, bytes.length);
+    // NaN until the health history has taken its first sample
+    private double sampled(ToDoubleFunction<HealthHistory.Latest> value) {
+        HealthHistory.Latest latest = healthHistory != null ? healthHistory.getLatest() : null;
+        return latest != null ? value.applyAsDouble(latest) : Double.NaN;
+    }
 
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
+    private void sendMetrics(@NotNull ApiRequest request) throws IOException {
+        request.send(200, "text/plain; version=0.0.4; charset=utf-8", metrics.render().getBytes(StandardCharsets.UTF_8));
     }
 
     class RestartHTTPServer implements CommandExecutor {
         public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String @NotNull [] args) {
-            Player plr = (Player) sender;
             // TODO: Test the permissions with LuckPerms
-            if (!plr.hasPermission("commandblock.restarthttpserver")) {
+            if (!sender.hasPermission("commandblock.restarthttpserver")) {
                 sender.sendMessage("§cYou don't have permission to use this command.");
                 return true;
             }
 
-            // This method also handles restarting if necessary
-            StartHTTPServer();
-            sender.sendMessage("§aHTTP server restarted successfully!");
+            // Reloads config.yml and restarts without dropping requests
+            if (StartHTTPServer()) {
+                sender.sendMessage("§aHTTP server reloaded successfully!");
+            }
+            else {
+                sender.sendMessage("§cThe HTTP server could not be reloaded. Check the console for details.");
+            }
 
             return true;
         }
@@ -0,0 +1,252 @@
+package com.antaptive.commandBlock;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+// POST /server/command
+// Takes a JSON array of console commands, checks every one against
+// command-allowlist before any of them runs, then runs them in order on the
+// main thread. Each main-thread task runs commands until main-thread-budget-ms
+// is used up and leaves the rest to the next one, so a long list takes a few
+// ticks rather than one long one. Each command gets its own sender that keeps
+// whatever it's told, and its result is streamed back as an NDJSON line as soon
+// as its task is done. There is always one line per command, in order.
+public final class CommandHandler implements ApiRouter.Endpoint {
+
+    // The most a command block accepts
+    private static final int MAX_COMMAND_LENGTH = 32767;
+
+    private static final class Result {
+        final int index;
+        final String command;
+        final List<String> output = new ArrayList<>();
+        boolean truncated;
+        boolean success;
+        String error;
+
+        Result(int index, String command) {
+            this.index = index;
+            this.command = command;
+        }
+    }
+
+    private final CommandBlock plugin;
+
+    public CommandHandler(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        List<String> allowlist = plugin.getConfig().getStringList("command-allowlist");
+        if (allowlist.isEmpty()) {
+            request.sendError(403, "No commands are allowed. Add them to command-allowlist in config.yml.");
+            return;
+        }
+
+        int maxCommands = plugin.getConfig().getInt("command-max-commands", 100);
+        JsonArray body;
+        try {
+            body = JsonParser.parseString(BatchHandler.readBody(request.exchange().getRequestBody(), (long) maxCommands * 1024)).getAsJsonArray();
+        }
+        catch (IllegalStateException | JsonParseException e) {
+            request.sendError(400, "The request body must be a JSON array of commands.");
+            return;
+        }
+        catch (BatchHandler.BodyTooLargeException e) {
+            request.sendError(413, "The request body is too large.");
+            return;
+        }
+
+        if (body.isEmpty()) {
+            request.sendError(400, "No commands were given.");
+            return;
+        }
+        if (body.size() > maxCommands) {
+            request.sendError(413, "Too many commands. The limit is " + maxCommands + ".");
+            return;
+        }
+
+        // Nothing runs unless everything may
+        List<String> commands = new ArrayList<>(body.size());
+        for (int i = 0; i < body.size(); i++) {
+            JsonElement element = body.get(i);
+            String command = element.isJsonPrimitive() ? normalize(element.getAsString()) : null;
+
+            if (command == null || command.isEmpty() || command.length() > MAX_COMMAND_LENGTH || command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+                request.sendError(400, "Command " + i + " must be a single line of text.");
+                return;
+            }
+            if (!isAllowed(command, allowlist)) {
+                request.sendError(403, "Command " + i + " is not in command-allowlist.");
+                return;
+            }
+            commands.add(command);
+        }
+
+        boolean stopOnError = Boolean.parseBoolean(request.params().get("stopOnError"));
+        int maxOutputLines = Math.max(0, plugin.getConfig().getInt("command-max-output-lines", 200));
+        long budgetNanos = (long) (plugin.getConfig().getDouble("main-thread-budget-ms", 2) * 1_000_000);
+        long timeoutMillis = plugin.getConfig().getLong("main-thread-timeout-ms", 5000);
+
+        InetSocketAddress remote = request.remoteAddress();
+        String address = remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+
+        JsonWriter json = JsonWriter.acquire();
+        try (OutputStream out = request.openStream(200, "application/x-ndjson")) {
+            int next = 0;
+            String skipped = null;
+
+            while (next < commands.size() && skipped == null) {
+                int from = next;
+                CompletableFuture<List<Result>> task = plugin.getMainThreadQueue().submit(() -> run(commands, from, budgetNanos, maxOutputLines, stopOnError));
+
+                List<Result> results;
+                try {
+                    try {
+                        results = task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                    }
+                    catch (TimeoutException e) {
+                        // Only stops here if the task really never started
+                        if (task.cancel(false)) {
+                            skipped = "Timed out waiting for the server. Not run.";
+                            plugin.getLogger().warning("Timed out waiting for the main thread while running commands.");
+                            break;
+                        }
+
+                        results = task.get();
+                    }
+                }
+                catch (ExecutionException e) {
+                    // Only shutting down gets here; the commands' own exceptions are in their results
+                    skipped = String.valueOf(e.getCause().getMessage());
+                    break;
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    skipped = "Interrupted while waiting for the server. Not run.";
+                    break;
+                }
+
+                for (Result result : results) {
+                    write(json, out, result);
+                    audit(address, result);
+                    if (!result.success && stopOnError) skipped = "Not run because an earlier command failed.";
+                }
+                out.flush();
+                next += results.size();
+            }
+
+            // Whatever wasn't run still gets its line
+            for (int i = next; i < commands.size(); i++) {
+                Result result = new Result(i, commands.get(i));
+                result.error = skipped;
+                write(json, out, result);
+            }
+        }
+        finally {
+            json.release();
+        }
+    }
+
+    // On the main thread. At least one command runs, however small the budget.
+    private List<Result> run(List<String> commands, int from, long budgetNanos, int maxOutputLines, boolean stopOnError) {
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+
+        for (int i = from; i < commands.size(); i++) {
+            Result result = new Result(i, commands.get(i));
+            results.add(result);
+
+            PlainTextComponentSerializer plain = PlainTextComponentSerializer.plainText();
+            CommandSender sender = Bukkit.createCommandSender(message -> {
+                if (result.output.size() < maxOutputLines) result.output.add(plain.serialize(message));
+                else result.truncated = true;
+            });
+
+            try {
+                result.success = Bukkit.dispatchCommand(sender, result.command);
+                if (!result.success) result.error = "Unknown command.";
+            }
+            catch (RuntimeException e) {
+                result.error = "The command failed with an error. Check the server log.";
+                plugin.getLogger().log(Level.WARNING, "Error running '" + result.command + "' for the API", e);
+            }
+
+            if (!result.success && stopOnError) break;
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+
+        return results;
+    }
+
+    private static void write(JsonWriter json, OutputStream out, Result result) throws IOException {
+        json.reset();
+        json.beginObject()
+                .field("index", result.index)
+                .field("command", result.command)
+                .field("success", result.success)
+                .name("output").beginArray();
+        for (String line : result.output) json.value(line);
+        json.endArray()
+                .field("truncated", result.truncated)
+                .field("error", result.error)
+                .endObject();
+        json.writeTo(out);
+        out.write('\n');
+    }
+
+    // Each command is audited as well as the request, with the command as the reason
+    private void audit(String address, Result result) {
+        plugin.getAuditLog().record(new AuditLog.Entry(
+                System.currentTimeMillis(),
+                address,
+                "/server/command",
+                null,
+                result.command,
+                result.success ? 200 : 400,
+                result.error
+        ));
+    }
+
+    // Without the leading slash a player would type
+    private static String normalize(String command) {
+        command = command.trim();
+        return command.startsWith("/") ? command.substring(1) : command;
+    }
+
+    // An entry allows the command it names and anything after it, so "whitelist"
+    // allows "whitelist add Steve" but not "whitelistall"
+    private static boolean isAllowed(String command, List<String> allowlist) {
+        String lower = command.toLowerCase(Locale.ROOT);
+
+        for (String entry : allowlist) {
+            String allowed = normalize(entry).toLowerCase(Locale.ROOT);
+            if (allowed.isEmpty()) continue;
+
+            if (lower.equals(allowed) || (lower.startsWith(allowed) && lower.charAt(allowed.length()) == ' ')) return true;
+        }
+
+        return false;
+    }
+}
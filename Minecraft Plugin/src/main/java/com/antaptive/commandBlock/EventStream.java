@@ -0,0 +1,183 @@
+package com.antaptive.commandBlock;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// GET /server/events
+// Server-Sent Events stream of what's happening on the server. Each subscriber
+// gets its own bounded buffer; a subscriber that falls behind is disconnected
+// rather than slowing down the publisher (which is usually the main thread).
+public final class EventStream implements ApiRouter.Endpoint {
+
+    private static final byte[] KEEPALIVE = ": keepalive\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final long KEEPALIVE_SECONDS = 15;
+    // "event: <name>\ndata: " for each event name, which are all constants
+    private static final Map<String, byte[]> PREFIXES = new ConcurrentHashMap<>();
+
+    private final CommandBlock plugin;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Reserved before a subscriber is added, so events-max-subscribers holds under concurrent connects
+    private final AtomicInteger slots = new AtomicInteger();
+
+    public EventStream(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    // Sends an event to every subscriber. Never blocks. data writes the event's JSON
+    // object, on the calling thread, and only when someone is subscribed.
+    public void publish(@NotNull String event, @NotNull Consumer<JsonWriter> data) {
+        if (subscribers.isEmpty()) return;
+
+        byte[] message;
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            data.accept(json);
+            message = encode(event, json.toByteArray());
+        }
+        finally {
+            json.release();
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.queue.offer(message)) {
+                plugin.getLogger().warning("Disconnecting event subscriber " + subscriber.address + " for falling behind.");
+                subscriber.close();
+            }
+        }
+    }
+
+    // Disconnects everyone, such as when the HTTP server is stopped
+    public void closeAll() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    private static byte[] encode(String event, byte[] data) {
+        byte[] prefix = PREFIXES.computeIfAbsent(event, name -> ("event: " + name + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+
+        byte[] message = Arrays.copyOf(prefix, prefix.length + data.length + 2);
+        System.arraycopy(data, 0, message, prefix.length, data.length);
+        message[message.length - 2] = '\n';
+        message[message.length - 1] = '\n';
+        return message;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        HttpExchange exchange = request.exchange();
+
+        int maxSubscribers = plugin.getConfig().getInt("events-max-subscribers", 100);
+        if (slots.incrementAndGet() > maxSubscribers) {
+            slots.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "30");
+            request.sendError(503, "Too many event subscribers.");
+            return;
+        }
+
+        plugin.getLogger().info("Event stream opened by " + exchange.getRemoteAddress());
+
+        Subscriber subscriber = new Subscriber(exchange, plugin.getConfig().getInt("events-buffer-size", 256));
+
+        // Start everyone off with the full stats, later events are deltas on top of it
+        StatsPublisher.Snapshot snapshot = plugin.getStatsPublisher().getSnapshot();
+        if (snapshot != null) {
+            subscriber.queue.offer(encode("stats", snapshot.body().bytes()));
+        }
+
+        subscribers.add(subscriber);
+
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+
+            // The stream outlives this handler, so it gets its own (virtual) thread
+            // instead of holding one of the request executor's slots
+            Thread.ofVirtual().name("CommandBlock-Events").start(() -> stream(subscriber));
+        }
+        catch (IOException | RuntimeException e) {
+            remove(subscriber);
+            throw e;
+        }
+    }
+
+    // Frees the subscriber's slot, once
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) slots.decrementAndGet();
+    }
+
+    private void stream(Subscriber subscriber) {
+        try (OutputStream out = subscriber.exchange.getResponseBody()) {
+            while (!subscriber.closed) {
+                byte[] message = subscriber.queue.poll(KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+                out.write(message != null ? message : KEEPALIVE);
+
+                // Send whatever else is already waiting in the same flush
+                while ((message = subscriber.queue.poll()) != null) {
+                    out.write(message);
+                }
+                out.flush();
+            }
+        }
+        catch (IOException | InterruptedException e) {
+            // Client went away
+        }
+        finally {
+            remove(subscriber);
+            subscriber.exchange.close();
+            plugin.getLogger().info("Event stream closed for " + subscriber.address);
+        }
+    }
+
+    private final class Subscriber {
+        final HttpExchange exchange;
+        final String address;
+        final BlockingQueue<byte[]> queue;
+        volatile boolean closed;
+
+        Subscriber(HttpExchange exchange, int bufferSize) {
+            this.exchange = exchange;
+            this.address = String.valueOf(exchange.getRemoteAddress());
+            this.queue = new ArrayBlockingQueue<>(Math.max(16, bufferSize));
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            remove(this);
+
+            // Wake the writer if it's waiting on an empty queue
+            queue.offer(KEEPALIVE);
+
+            // A writer blocked on a client that stopped reading is only woken by
+            // cutting the connection. The JDK transport has no way to do that
+            // short of closing the exchange, which can block, so that is left to
+            // its own thread.
+            if (exchange instanceof NioHttpExchange nio) nio.disconnect();
+            else Thread.ofVirtual().name("CommandBlock-Events-Close").start(exchange::close);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.antaptive.commandBlock;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Gateway mode: answers for a whole network of CommandBlock servers (the
+// "backends" in gateway-backends) under /network/...
+//
+// /network/stats asks every backend for /server/stats at the same time and
+// merges the answers. Each backend's last good answer is cached, so a backend
+// that is slow or down shows up with its last known stats instead of holding
+// up the response, and answers younger than gateway-stats-max-age-ms aren't
+// asked for again; neither is a backend that just failed to answer. A refresh
+// that outlives the request still finishes and fills the cache for the next one.
+//
+// /network/player/... sends the action to every backend, or only the ones
+// named in 'server', and reports each backend's outcome.
+//
+// A reload keeps the gateway as it is if its settings haven't changed, and
+// otherwise keeps the cached stats of every backend whose url and token are
+// the same.
+public final class Gateway {
+
+    // The actions that can be sent to backends, by their /server/player/... path
+    private static final String[] ACTIONS = {"kick", "ban", "unban", "whitelist/add", "whitelist/remove"};
+
+    // A backend's last good /server/stats answer
+    private record Sample(byte[] body, String etag, int onlinePlayers, int maxPlayers, double tps, long fetchedAt) {}
+
+    private static final class Backend {
+        final String name;
+        final URI baseUri;
+        final String authorization;
+
+        volatile Sample sample;
+        // Why the last refresh failed, or null if it didn't
+        volatile String error;
+        // When the last refresh finished, whether or not it succeeded
+        volatile long checkedAt;
+        // The refresh in progress, shared by every request that needs it
+        final AtomicReference<CompletableFuture<Void>> refreshing = new AtomicReference<>();
+
+        Backend(String name, URI baseUri, String token) {
+            this.name = name;
+            this.baseUri = baseUri;
+            this.authorization = "Bearer " + token;
+        }
+
+        // A path on the backend, under any path its url has, so a backend behind
+        // a reverse proxy at https://host/mc-1 is asked at /mc-1/server/...
+        URI uri(String path) {
+            return URI.create(baseUri + path);
+        }
+
+        boolean sameAs(Backend other) {
+            return name.equals(other.name) && baseUri.equals(other.baseUri) && authorization.equals(other.authorization);
+        }
+    }
+
+    // One backend's answer to a forwarded action. Status 0 means it never answered.
+    private record Outcome(String server, int status, String error) {
+        boolean success() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    private final List<Backend> backends;
+    private final Map<String, Backend> byName = new LinkedHashMap<>();
+    private final HttpClient client;
+    private final long timeoutMillis;
+    private final long statsMaxAgeMillis;
+    private final long actionTimeoutMillis;
+
+    private Gateway(CommandBlock plugin, List<Backend> backends) {
+        this.backends = backends;
+        for (Backend backend : backends) byName.put(backend.name.toLowerCase(Locale.ROOT), backend);
+
+        this.timeoutMillis = timeoutMillis(plugin);
+        this.statsMaxAgeMillis = statsMaxAgeMillis(plugin);
+        this.actionTimeoutMillis = actionTimeoutMillis(plugin);
+
+        // Backends speak HTTP/1.1 only, and connections are kept open between requests
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    // The gateway for the backends in config.yml, or null if none are listed.
+    // Backends with a missing or invalid url or token are logged and left out.
+    // previous is returned as it is if nothing it uses has changed.
+    public static @Nullable Gateway create(@NotNull CommandBlock plugin, @Nullable Gateway previous) {
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("gateway-backends");
+        if (section == null) return null;
+
+        List<Backend> backends = new ArrayList<>();
+        for (String name : section.getKeys(false)) {
+            String url = section.getString(name + ".url");
+            String token = section.getString(name + ".token");
+
+            if (url == null || token == null || token.isBlank()) {
+                plugin.getLogger().warning("Gateway backend '" + name + "' needs a url and a token. It has been left out.");
+                continue;
+            }
+
+            URI uri;
+            try {
+                uri = URI.create(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+            }
+            catch (IllegalArgumentException e) {
+                uri = null;
+            }
+            if (uri == null || uri.getHost() == null || !("http".equals(uri.getScheme()) || "https".equals(uri.getScheme()))) {
+                plugin.getLogger().warning("Gateway backend '" + name + "' has an invalid url: " + url + ". It has been left out.");
+                continue;
+            }
+
+            backends.add(new Backend(name, uri, token));
+        }
+
+        if (backends.isEmpty()) return null;
+
+        if (previous != null) {
+            // Backends that are still the same keep their cached stats and ETags
+            for (int i = 0; i < backends.size(); i++) {
+                Backend old = previous.byName.get(backends.get(i).name.toLowerCase(Locale.ROOT));
+                if (old != null && old.sameAs(backends.get(i))) backends.set(i, old);
+            }
+
+            if (backends.equals(previous.backends) && previous.hasSettings(plugin)) return previous;
+        }
+
+        plugin.getLogger().info("Gateway mode is on for " + backends.size() + " backend" + (backends.size() == 1 ? "" : "s"));
+        return new Gateway(plugin, List.copyOf(backends));
+    }
+
+    private boolean hasSettings(CommandBlock plugin) {
+        return timeoutMillis == timeoutMillis(plugin)
+                && statsMaxAgeMillis == statsMaxAgeMillis(plugin)
+                && actionTimeoutMillis == actionTimeoutMillis(plugin);
+    }
+
+    private static long timeoutMillis(CommandBlock plugin) {
+        return Math.max(1, plugin.getConfig().getLong("gateway-timeout-ms", 1000));
+    }
+
+    private static long statsMaxAgeMillis(CommandBlock plugin) {
+        return Math.max(0, plugin.getConfig().getLong("gateway-stats-max-age-ms", 1000));
+    }
+
+    private static long actionTimeoutMillis(CommandBlock plugin) {
+        return Math.max(1, plugin.getConfig().getLong("gateway-action-timeout-ms", 15000));
+    }
+
+    public void register(@NotNull ApiRouter router) {
+        router.get("/network/stats", this::stats);
+        for (String action : ACTIONS) {
+            router.post("/network/player/" + action, request -> forward(request, action));
+        }
+    }
+
+    // Lets requests already sent to backends finish, then closes their connections
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    private void stats(ApiRequest request) throws IOException {
+        long now = System.currentTimeMillis();
+
+        List<CompletableFuture<?>> refreshes = new ArrayList<>(backends.size());
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[backends.size()];
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get(i);
+
+            // Recently asked, whatever the answer was, so a backend that is down
+            // isn't waited for again by every request
+            if (backend.refreshing.get() == null && now - backend.checkedAt < statsMaxAgeMillis) continue;
+
+            pending[i] = refresh(backend);
+            refreshes.add(pending[i]);
+        }
+
+        if (!refreshes.isEmpty()) {
+            try {
+                CompletableFuture.allOf(refreshes.toArray(new CompletableFuture<?>[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e) {
+                // Backends that haven't answered yet are reported with their last known stats
+            }
+            catch (ExecutionException e) {
+                // Refreshes record their own failures and never complete exceptionally
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                request.sendError(500, "Interrupted while waiting for the backends.");
+                return;
+            }
+        }
+
+        int onlinePlayers = 0;
+        int maxPlayers = 0;
+        int reachable = 0;
+        double minTps = Double.NaN;
+        now = System.currentTimeMillis();
+
+        JsonWriter json = JsonWriter.acquire().beginObject().name("servers").beginArray();
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get(i);
+            Sample sample = backend.sample;
+            boolean timedOut = pending[i] != null && !pending[i].isDone();
+            String error = timedOut ? "Timed out" : backend.error;
+
+            String status;
+            if (sample == null) status = "down";
+            else if (error != null) status = "stale";
+            else status = "ok";
+
+            if (error == null) reachable++;
+            if (sample != null) {
+                onlinePlayers += sample.onlinePlayers();
+                maxPlayers += sample.maxPlayers();
+                minTps = Double.isNaN(minTps) ? sample.tps() : Math.min(minTps, sample.tps());
+            }
+
+            json.beginObject()
+                    .field("name", backend.name)
+                    .field("status", status)
+                    .field("error", error);
+            if (sample != null) {
+                json.field("ageMillis", Math.max(0, now - sample.fetchedAt()))
+                        .name("stats").rawValue(sample.body());
+            }
+            else {
+                json.name("ageMillis").nullValue()
+                        .name("stats").nullValue();
+            }
+            json.endObject();
+        }
+        json.endArray()
+                .field("onlinePlayers", onlinePlayers)
+                .field("maxPlayers", maxPlayers);
+        if (Double.isNaN(minTps)) json.name("minTps").nullValue();
+        else json.field("minTps", minTps);
+        json.field("reachableServers", reachable)
+                .field("totalServers", backends.size())
+                .endObject();
+
+        request.setHeader("Cache-Control", "no-cache");
+        request.send(200, json);
+    }
+
+    // Starts a refresh of the backend's stats, or joins the one in progress.
+    // The future always completes normally; the outcome is left on the backend.
+    private CompletableFuture<Void> refresh(Backend backend) {
+        while (true) {
+            CompletableFuture<Void> current = backend.refreshing.get();
+            if (current != null) return current;
+
+            CompletableFuture<Void> started = new CompletableFuture<>();
+            if (backend.refreshing.compareAndSet(null, started)) {
+                fetchStats(backend, started);
+                return started;
+            }
+        }
+    }
+
+    private void fetchStats(Backend backend, CompletableFuture<Void> done) {
+        Sample previous = backend.sample;
+
+        // Requests only wait timeoutMillis for it, but a slow backend's answer is still worth caching
+        HttpRequest.Builder builder = HttpRequest.newBuilder(backend.uri("/server/stats"))
+                .timeout(Duration.ofMillis(Math.max(timeoutMillis, actionTimeoutMillis)))
+                .header("Authorization", backend.authorization)
+                .GET();
+        // The backend answers 304 with no body if its stats haven't changed
+        if (previous != null) builder.header("If-None-Match", previous.etag());
+
+        client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, failure) -> {
+            try {
+                if (failure != null) {
+                    backend.error = describe(failure);
+                }
+                else if (response.statusCode() == 304 && previous != null) {
+                    backend.sample = new Sample(previous.body(), previous.etag(), previous.onlinePlayers(), previous.maxPlayers(), previous.tps(), System.currentTimeMillis());
+                    backend.error = null;
+                }
+                else if (response.statusCode() == 200) {
+                    backend.sample = parseStats(response);
+                    backend.error = null;
+                }
+                else {
+                    String message = errorOf(response.body());
+                    backend.error = "HTTP " + response.statusCode() + (message != null ? ": " + message : "");
+                }
+            }
+            catch (RuntimeException e) {
+                backend.error = "Invalid response: " + e.getMessage();
+            }
+            finally {
+                backend.checkedAt = System.currentTimeMillis();
+                backend.refreshing.set(null);
+                done.complete(null);
+            }
+        });
+    }
+
+    private static Sample parseStats(HttpResponse<byte[]> response) {
+        JsonObject stats = JsonParser.parseString(new String(response.body(), StandardCharsets.UTF_8)).getAsJsonObject();
+
+        return new Sample(
+                response.body(),
+                response.headers().firstValue("ETag").orElse(""),
+                stats.get("onlinePlayers").getAsInt(),
+                stats.get("maxPlayers").getAsInt(),
+                stats.get("tps").getAsDouble(),
+                System.currentTimeMillis()
+        );
+    }
+
+    private void forward(ApiRequest request, String action) throws IOException {
+        QueryParams params = request.params();
+        String player = params.get("player");
+        if (player == null || player.isBlank()) {
+            request.sendError(400, "A user was not specified. Please specify a 'player' parameter.");
+            return;
+        }
+
+        List<Backend> targets = targets(params.get("server"));
+        if (targets == null) {
+            request.sendError(400, "Unknown server in 'server'. Use any of " + byName.keySet() + ".");
+            return;
+        }
+
+        // Only what the backend endpoints read is passed on
+        String query = "player=" + encode(player);
+        for (String name : new String[] {"reason", "duration", "at"}) {
+            String value = params.get(name);
+            if (value != null) query += "&" + name + "=" + encode(value);
+        }
+
+        List<CompletableFuture<Outcome>> sent = new ArrayList<>(targets.size());
+        for (Backend backend : targets) {
+            HttpRequest forwarded = HttpRequest.newBuilder(backend.uri("/server/player/" + action + "?" + query))
+                    .timeout(Duration.ofMillis(actionTimeoutMillis))
+                    .header("Authorization", backend.authorization)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+
+            sent.add(client.sendAsync(forwarded, HttpResponse.BodyHandlers.ofByteArray()).handle((response, failure) -> {
+                if (failure != null) return new Outcome(backend.name, 0, describe(failure));
+
+                int status = response.statusCode();
+                if (status >= 200 && status < 300) return new Outcome(backend.name, status, null);
+
+                String message = errorOf(response.body());
+                return new Outcome(backend.name, status, message != null ? message : "HTTP " + status);
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(actionTimeoutMillis);
+        List<Outcome> outcomes = new ArrayList<>(sent.size());
+        for (int i = 0; i < sent.size(); i++) {
+            try {
+                outcomes.add(sent.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            catch (TimeoutException e) {
+                // The backend may still apply it
+                outcomes.add(new Outcome(targets.get(i).name, 0, "Timed out waiting for the server."));
+            }
+            catch (ExecutionException e) {
+                outcomes.add(new Outcome(targets.get(i).name, 0, describe(e.getCause())));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                request.sendError(500, "Interrupted while waiting for the backends.");
+                return;
+            }
+        }
+
+        // A player is only online on one server, so a kick sent everywhere
+        // succeeds if any of them kicked the player
+        boolean anyNeeded = action.equals("kick") && targets.size() > 1;
+        boolean success = anyNeeded ? outcomes.stream().anyMatch(Outcome::success) : outcomes.stream().allMatch(Outcome::success);
+
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("success", success)
+                .name("results").beginArray();
+        for (Outcome outcome : outcomes) {
+            json.beginObject()
+                    .field("server", outcome.server())
+                    .field("status", outcome.status())
+                    .field("success", outcome.success())
+                    .field("error", outcome.error())
+                    .endObject();
+        }
+        json.endArray().endObject();
+
+        if (!success) request.setError("Failed on " + outcomes.stream().filter(o -> !o.success()).map(Outcome::server).toList());
+        request.send(200, json);
+    }
+
+    // Every backend if 'server' is missing, the named ones otherwise, or null if a name is unknown
+    private @Nullable List<Backend> targets(@Nullable String servers) {
+        if (servers == null || servers.isBlank()) return backends;
+
+        List<Backend> targets = new ArrayList<>();
+        for (String name : servers.split(",")) {
+            Backend backend = byName.get(name.trim().toLowerCase(Locale.ROOT));
+            if (backend == null) return null;
+            if (!targets.contains(backend)) targets.add(backend);
+        }
+        return targets;
+    }
+
+    // The backend's error message, or null if the body doesn't have one
+    private static @Nullable String errorOf(byte[] body) {
+        try {
+            JsonElement error = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject().get("error");
+            if (error != null && error.isJsonPrimitive()) return error.getAsString();
+        }
+        catch (JsonParseException | IllegalStateException ignored) {
+        }
+        return null;
+    }
+
+    private static String describe(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        if (failure instanceof HttpTimeoutException) return "Timed out";
+        if (failure instanceof ConnectException) return "Connection refused";
+        return failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
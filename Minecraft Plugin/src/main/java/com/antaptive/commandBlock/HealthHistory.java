@@ -0,0 +1,203 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+// GET /server/stats/history
+// Samples server health once a second on the main thread into fixed-size
+// primitive ring buffers, so a day of history takes the same few megabytes from
+// startup onwards. Requests downsample a window of it into min/max/avg buckets.
+public final class HealthHistory implements Runnable, ApiRouter.Endpoint {
+
+    private static final String[] SERIES = {"tps", "mspt", "onlinePlayers", "loadedChunks", "entities", "heapUsedMiB"};
+    private static final int MAX_POINTS = 2000;
+    // Oldest slots left unread, since the main thread writes one new sample a
+    // second and could overwrite them while a request is reading
+    private static final int LAP_MARGIN = 5;
+
+    // The newest sample's main-thread values, so /metrics can read them without touching Bukkit
+    public record Latest(double tps, double mspt, int onlinePlayers) {}
+
+    private final CommandBlock plugin;
+    private final int capacity;
+
+    // One slot per sample, indexed by sample number % capacity
+    private final long[] time;
+    private final float[] tps;
+    private final float[] mspt;
+    private final int[] onlinePlayers;
+    private final int[] loadedChunks;
+    private final int[] entities;
+    private final int[] heapUsedMiB;
+
+    // Number of samples ever written. Slots are filled before this is bumped,
+    // so readers only look at samples below it.
+    private volatile long written;
+    private volatile Latest latest;
+
+    private BukkitTask task;
+    private long lastSampleNanos;
+    private int lastSampleTick;
+
+    public HealthHistory(@NotNull CommandBlock plugin, int capacity) {
+        this.plugin = plugin;
+        this.capacity = Math.max(60, capacity);
+
+        this.time = new long[this.capacity];
+        this.tps = new float[this.capacity];
+        this.mspt = new float[this.capacity];
+        this.onlinePlayers = new int[this.capacity];
+        this.loadedChunks = new int[this.capacity];
+        this.entities = new int[this.capacity];
+        this.heapUsedMiB = new int[this.capacity];
+    }
+
+    public void start() {
+        stop();
+        lastSampleNanos = System.nanoTime();
+        lastSampleTick = Bukkit.getCurrentTick();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 20L, 20L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        int tick = Bukkit.getCurrentTick();
+
+        // Ticks that actually ran since the last sample, rather than Paper's one minute average
+        double seconds = (now - lastSampleNanos) / 1e9;
+        double measuredTps = seconds > 0 ? Math.min(20.0, (tick - lastSampleTick) / seconds) : 20.0;
+        lastSampleNanos = now;
+        lastSampleTick = tick;
+
+        int chunks = 0, entityCount = 0;
+        for (World world : Bukkit.getWorlds()) {
+            chunks += world.getChunkCount();
+            entityCount += world.getEntityCount();
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+
+        long sample = written;
+        int slot = (int) (sample % capacity);
+        time[slot] = System.currentTimeMillis() / 1000;
+        tps[slot] = (float) measuredTps;
+        mspt[slot] = (float) plugin.getServer().getAverageTickTime();
+        onlinePlayers[slot] = Bukkit.getOnlinePlayers().size();
+        loadedChunks[slot] = chunks;
+        entities[slot] = entityCount;
+        heapUsedMiB[slot] = (int) ((runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        written = sample + 1;
+
+        latest = new Latest(tps[slot], mspt[slot], onlinePlayers[slot]);
+    }
+
+    // Null until the first sample, a second after start
+    public @Nullable Latest getLatest() {
+        return latest;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        QueryParams params = request.params();
+
+        long window = params.getLong("window", 3600);
+        if (window < 1 || window > capacity) {
+            request.sendError(400, "'window' must be between 1 and " + capacity + " seconds.");
+            return;
+        }
+
+        // Default to about 300 points; never more than MAX_POINTS
+        long minStep = (window + MAX_POINTS - 1) / MAX_POINTS;
+        long step = params.getLong("step", Math.max(1, (window + 299) / 300));
+        if (step < minStep || step > window) {
+            request.sendError(400, "'step' must be between " + minStep + " and " + window + " seconds for this window.");
+            return;
+        }
+
+        long to = System.currentTimeMillis() / 1000 + 1;
+        long from = to - window;
+        int buckets = (int) ((window + step - 1) / step);
+
+        // Per bucket: sample count, then min/max/sum for each series
+        int[] counts = new int[buckets];
+        double[][] min = new double[SERIES.length][buckets];
+        double[][] max = new double[SERIES.length][buckets];
+        double[][] sum = new double[SERIES.length][buckets];
+
+        long end = written;
+        long start = Math.max(0, end - capacity + LAP_MARGIN);
+        for (long sample = start; sample < end; sample++) {
+            int slot = (int) (sample % capacity);
+            long t = time[slot];
+            if (t < from || t >= to) continue;
+
+            int bucket = (int) ((t - from) / step);
+            boolean first = counts[bucket]++ == 0;
+            add(min, max, sum, 0, bucket, tps[slot], first);
+            add(min, max, sum, 1, bucket, mspt[slot], first);
+            add(min, max, sum, 2, bucket, onlinePlayers[slot], first);
+            add(min, max, sum, 3, bucket, loadedChunks[slot], first);
+            add(min, max, sum, 4, bucket, entities[slot], first);
+            add(min, max, sum, 5, bucket, heapUsedMiB[slot], first);
+        }
+
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("interval", 1)
+                .field("from", from)
+                .field("step", step)
+                .field("heapMaxMiB", Runtime.getRuntime().maxMemory() >> 20);
+
+        // Buckets without samples (server stopped or not yet started) are left out
+        json.name("time").beginArray();
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (counts[bucket] > 0) json.value(from + bucket * step);
+        }
+        json.endArray();
+
+        json.name("samples").beginArray();
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (counts[bucket] > 0) json.value(counts[bucket]);
+        }
+        json.endArray();
+
+        for (int series = 0; series < SERIES.length; series++) {
+            json.name(SERIES[series]).beginObject();
+            writeColumn(json, "min", min[series], counts, false);
+            writeColumn(json, "max", max[series], counts, false);
+            writeColumn(json, "avg", sum[series], counts, true);
+            json.endObject();
+        }
+
+        request.send(200, json.endObject());
+    }
+
+    private static void add(double[][] min, double[][] max, double[][] sum, int series, int bucket, double value, boolean first) {
+        if (first || value < min[series][bucket]) min[series][bucket] = value;
+        if (first || value > max[series][bucket]) max[series][bucket] = value;
+        sum[series][bucket] += value;
+    }
+
+    private static void writeColumn(JsonWriter json, String name, double[] values, int[] counts, boolean average) {
+        json.name(name).beginArray();
+        for (int bucket = 0; bucket < values.length; bucket++) {
+            if (counts[bucket] == 0) continue;
+
+            double value = average ? values[bucket] / counts[bucket] : values[bucket];
+            json.value(Math.round(value * 100) / 100.0);
+        }
+        json.endArray();
+    }
+}
@@ -0,0 +1,245 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Writes JSON straight into a UTF-8 byte buffer, with no intermediate maps or
+// strings. Writers are pooled: acquire() one per response and release() it once
+// the bytes have been sent.
+public final class JsonWriter {
+
+    private static final int INITIAL_CAPACITY = 512;
+    // Buffers that grew past this are shrunk back before being pooled
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final int MAX_DEPTH = 64;
+
+    private static final ArrayBlockingQueue<JsonWriter> POOL = new ArrayBlockingQueue<>(64);
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    // hasValue[depth] is true once the current object/array has its first entry
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public static @NotNull JsonWriter acquire() {
+        JsonWriter writer = POOL.poll();
+        return writer != null ? writer : new JsonWriter();
+    }
+
+    public void release() {
+        reset();
+        if (buffer.length > MAX_POOLED_CAPACITY) buffer = new byte[INITIAL_CAPACITY];
+        POOL.offer(this);
+    }
+
+    public void reset() {
+        size = 0;
+        depth = 0;
+        afterName = false;
+        hasValue[0] = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(@NotNull OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    public byte @NotNull [] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        push();
+        write('{');
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        depth--;
+        write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        push();
+        write('[');
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        depth--;
+        write(']');
+        return this;
+    }
+
+    public JsonWriter name(@NotNull String name) {
+        if (hasValue[depth]) write(',');
+        hasValue[depth] = true;
+
+        writeString(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(@Nullable String value) {
+        beforeValue();
+        if (value == null) writeAscii("null");
+        else writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        beforeValue();
+        // JSON has no NaN or Infinity
+        writeAscii(Double.isFinite(value) ? Double.toString(value) : "null");
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        writeAscii("null");
+        return this;
+    }
+
+    // Inserts already-serialized JSON as the next value
+    public JsonWriter rawValue(byte @NotNull [] json) {
+        beforeValue();
+        ensureCapacity(json.length);
+        System.arraycopy(json, 0, buffer, size, json.length);
+        size += json.length;
+        return this;
+    }
+
+    public JsonWriter field(@NotNull String name, @Nullable String value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(@NotNull String name, long value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(@NotNull String name, double value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(@NotNull String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    private void push() {
+        if (depth + 1 >= MAX_DEPTH) throw new IllegalStateException("JSON nested too deeply");
+        hasValue[++depth] = false;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+
+        // Array element (or top-level value)
+        if (depth > 0) {
+            if (hasValue[depth]) write(',');
+            hasValue[depth] = true;
+        }
+    }
+
+    private void writeString(@NotNull String s) {
+        // Worst case is 6 bytes per char (\\u00XX), but most strings are plain ASCII
+        ensureCapacity(s.length() + 2);
+        write('"');
+
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                write(c);
+            }
+            else if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            }
+            else if (c < 0x20) {
+                switch (c) {
+                    case '\n' -> { write('\\'); write('n'); }
+                    case '\r' -> { write('\\'); write('r'); }
+                    case '\t' -> { write('\\'); write('t'); }
+                    case '\b' -> { write('\\'); write('b'); }
+                    case '\f' -> { write('\\'); write('f'); }
+                    default -> {
+                        writeAscii("\\u00");
+                        write(HEX[c >> 4]);
+                        write(HEX[c & 0xF]);
+                    }
+                }
+            }
+            else if (c < 0x800) {
+                write(0xC0 | (c >> 6));
+                write(0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                write(0xF0 | (codePoint >> 18));
+                write(0x80 | ((codePoint >> 12) & 0x3F));
+                write(0x80 | ((codePoint >> 6) & 0x3F));
+                write(0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, which can't be encoded as UTF-8
+                write('?');
+            }
+            else {
+                write(0xE0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+
+        write('"');
+    }
+
+    private void writeAscii(@NotNull String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer[size++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void write(int b) {
+        if (size == buffer.length) ensureCapacity(1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The one way API work gets onto the main thread. Any HTTP thread may submit a
+// command; the main thread drains the queue once per tick until the tick's time
+// budget is used up, and leaves the rest for the next tick. Each command's future
+// completes with its result or the exception it threw, so the HTTP side can
+// answer with what actually happened.
+public final class MainThreadQueue implements Runnable {
+
+    private final Plugin plugin;
+    private final Metrics metrics;
+    private final long budgetNanos;
+
+    private final ConcurrentLinkedQueue<Command<?>> commands = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() walks the whole queue, so depth is kept separately
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private BukkitTask task;
+
+    public MainThreadQueue(@NotNull Plugin plugin, @NotNull Metrics metrics, double budgetMillis) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.budgetNanos = Math.max(0, (long) (budgetMillis * 1_000_000));
+    }
+
+    public void start() {
+        stop();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    // Commands that haven't run yet fail instead of being left waiting forever
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        Command<?> command;
+        while ((command = commands.poll()) != null) {
+            depth.decrementAndGet();
+            command.fail(new IllegalStateException("The server is shutting down."));
+        }
+    }
+
+    // Runs the callable on the main thread. Cancelling the future before the
+    // command has started stops it from running at all; once it has started,
+    // cancel() returns false.
+    public <T> @NotNull CompletableFuture<T> submit(@NotNull Callable<T> callable) {
+        Command<T> command = new Command<>(callable, metrics);
+        depth.incrementAndGet();
+        commands.add(command);
+        return command;
+    }
+
+    public @NotNull CompletableFuture<Void> execute(@NotNull Runnable runnable) {
+        return submit(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        int ran = 0;
+
+        // At least one command runs every tick, however small the budget
+        Command<?> command;
+        while ((command = commands.poll()) != null) {
+            depth.decrementAndGet();
+            command.run();
+            ran++;
+
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+
+        if (ran > 0) {
+            metrics.recordMainThreadTick(System.nanoTime() - start, ran, !commands.isEmpty());
+        }
+    }
+
+    private static final class Command<T> extends CompletableFuture<T> {
+        private final Callable<T> callable;
+        private final Metrics metrics;
+        private final long submittedAt = System.nanoTime();
+        // Set by whichever comes first: the main thread starting it, or a cancel
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Command(Callable<T> callable, Metrics metrics) {
+            this.callable = callable;
+            this.metrics = metrics;
+        }
+
+        void run() {
+            if (!claimed.compareAndSet(false, true)) return;
+            metrics.recordSchedulerDelay(System.nanoTime() - submittedAt);
+
+            try {
+                complete(callable.call());
+            }
+            catch (Exception e) {
+                completeExceptionally(e);
+            }
+        }
+
+        void fail(Throwable cause) {
+            if (claimed.compareAndSet(false, true)) completeExceptionally(cause);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claimed.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+// Lock-free counters and fixed-bucket histograms for the HTTP API, rendered in
+// the Prometheus text format by /metrics. Recording never allocates once an
+// endpoint has been seen.
+public final class Metrics {
+
+    // Upper bounds in seconds, shared by every histogram
+    private static final double[] BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final Map<String, Recorder> endpoints = new ConcurrentHashMap<>();
+    private final LongAdder authFailuresMethod = new LongAdder();
+    private final LongAdder authFailuresToken = new LongAdder();
+    private final LongAdder rateLimitedReads = new LongAdder();
+    private final LongAdder rateLimitedMutations = new LongAdder();
+    private final Histogram schedulerDelay = new Histogram();
+    private final Histogram mainThreadTick = new Histogram();
+    private final LongAdder mainThreadCommands = new LongAdder();
+    private final LongAdder mainThreadBudgetExhausted = new LongAdder();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private record Gauge(String help, DoubleSupplier supplier) {}
+
+    private record Counter(String help, LongSupplier supplier) {}
+
+    // Where requests to the given path are counted and timed.
+    // Look it up once per route rather than once per request.
+    public @NotNull Recorder recorder(@NotNull String path) {
+        return endpoints.computeIfAbsent(path, p -> new Recorder());
+    }
+
+    public void recordAuthFailure(boolean badMethod) {
+        (badMethod ? authFailuresMethod : authFailuresToken).increment();
+    }
+
+    public void recordRateLimited(boolean mutation) {
+        (mutation ? rateLimitedMutations : rateLimitedReads).increment();
+    }
+
+    // Time between handing work to the scheduler and the main thread running it
+    public void recordSchedulerDelay(long nanos) {
+        schedulerDelay.record(nanos);
+    }
+
+    // Main-thread time spent on API commands in one tick, and whether some had to wait for the next tick
+    public void recordMainThreadTick(long nanos, int commands, boolean budgetExhausted) {
+        mainThreadTick.record(nanos);
+        mainThreadCommands.add(commands);
+        if (budgetExhausted) mainThreadBudgetExhausted.increment();
+    }
+
+    // Registers a value that is read each time /metrics is rendered
+    public void gauge(@NotNull String name, @NotNull String help, @NotNull DoubleSupplier supplier) {
+        gauges.put(name, new Gauge(help, supplier));
+    }
+
+    // Registers a count kept elsewhere that only ever goes up. The name should end in _total.
+    public void counter(@NotNull String name, @NotNull String help, @NotNull LongSupplier supplier) {
+        counters.put(name, new Counter(help, supplier));
+    }
+
+    public @NotNull String render() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP commandblock_http_requests_total HTTP requests handled, by endpoint and status code.\n");
+        out.append("# TYPE commandblock_http_requests_total counter\n");
+        endpoints.forEach((path, endpoint) -> {
+            for (int status = 0; status < endpoint.statuses.length(); status++) {
+                long count = endpoint.statuses.get(status);
+                if (count == 0) continue;
+
+                out.append("commandblock_http_requests_total{endpoint=\"").append(path)
+                        .append("\",status=\"").append(status == 0 ? "none" : String.valueOf(status)).append("\"} ")
+                        .append(count).append('\n');
+            }
+        });
+
+        out.append("# HELP commandblock_http_request_duration_seconds Time spent handling HTTP requests.\n");
+        out.append("# TYPE commandblock_http_request_duration_seconds histogram\n");
+        endpoints.forEach((path, endpoint) ->
+                endpoint.latency.render(out, "commandblock_http_request_duration_seconds", "endpoint=\"" + path + "\""));
+
+        out.append("# HELP commandblock_auth_failures_total Requests rejected by authentication.\n");
+        out.append("# TYPE commandblock_auth_failures_total counter\n");
+        out.append("commandblock_auth_failures_total{reason=\"method\"} ").append(authFailuresMethod.sum()).append('\n');
+        out.append("commandblock_auth_failures_total{reason=\"token\"} ").append(authFailuresToken.sum()).append('\n');
+
+        out.append("# HELP commandblock_http_rate_limited_total Requests rejected with 429 Too Many Requests.\n");
+        out.append("# TYPE commandblock_http_rate_limited_total counter\n");
+        out.append("commandblock_http_rate_limited_total{class=\"read\"} ").append(rateLimitedReads.sum()).append('\n');
+        out.append("commandblock_http_rate_limited_total{class=\"mutation\"} ").append(rateLimitedMutations.sum()).append('\n');
+
+        out.append("# HELP commandblock_scheduler_delay_seconds Time API work waited for the main thread.\n");
+        out.append("# TYPE commandblock_scheduler_delay_seconds histogram\n");
+        schedulerDelay.render(out, "commandblock_scheduler_delay_seconds", null);
+
+        out.append("# HELP commandblock_main_thread_tick_seconds Main-thread time spent running API commands, per tick that had any.\n");
+        out.append("# TYPE commandblock_main_thread_tick_seconds histogram\n");
+        mainThreadTick.render(out, "commandblock_main_thread_tick_seconds", null);
+
+        out.append("# HELP commandblock_main_thread_commands_total API commands run on the main thread.\n");
+        out.append("# TYPE commandblock_main_thread_commands_total counter\n");
+        out.append("commandblock_main_thread_commands_total ").append(mainThreadCommands.sum()).append('\n');
+
+        out.append("# HELP commandblock_main_thread_budget_exhausted_total Ticks that left API commands queued for the next tick.\n");
+        out.append("# TYPE commandblock_main_thread_budget_exhausted_total counter\n");
+        out.append("commandblock_main_thread_budget_exhausted_total ").append(mainThreadBudgetExhausted.sum()).append('\n');
+
+        counters.forEach((name, counter) -> {
+            out.append("# HELP ").append(name).append(' ').append(counter.help()).append('\n');
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(counter.supplier().getAsLong()).append('\n');
+        });
+
+        gauges.forEach((name, gauge) -> {
+            out.append("# HELP ").append(name).append(' ').append(gauge.help()).append('\n');
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(format(gauge.supplier().getAsDouble())).append('\n');
+        });
+
+        return out.toString();
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    public static final class Recorder {
+        // Indexed by status code, 0 for exchanges that never sent a response
+        private final AtomicLongArray statuses = new AtomicLongArray(600);
+        private final Histogram latency = new Histogram();
+
+        public void record(int status, long nanos) {
+            statuses.incrementAndGet(status > 0 && status < 600 ? status : 0);
+            latency.record(nanos);
+        }
+    }
+
+    private static final class Histogram {
+        // Last slot counts everything above the largest bucket
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) bucket++;
+
+            counts.incrementAndGet(bucket);
+            sumNanos.add(nanos);
+        }
+
+        void render(StringBuilder out, String name, String labels) {
+            String prefix = labels == null ? "" : labels + ",";
+            long cumulative = 0;
+
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += counts.get(i);
+                out.append(name).append("_bucket{").append(prefix).append("le=\"").append(BUCKETS[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += counts.get(BUCKETS.length);
+
+            String braces = labels == null ? "" : "{" + labels + "}";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            out.append(name).append("_sum").append(braces).append(' ').append(format(sumNanos.sum() / 1e9)).append('\n');
+            out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+        }
+    }
+}
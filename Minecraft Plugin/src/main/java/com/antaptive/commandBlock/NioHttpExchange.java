@@ -0,0 +1,356 @@
+package com.antaptive.commandBlock;
+
+import com.sun.net.httpserver.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+// One request/response on a NioHttpServer connection. The request body is read
+// straight from the connection as it arrives. The response body is
+// buffered in small pieces and handed to the connection as it fills up or is
+// flushed, so event streams go out as they are written.
+final class NioHttpExchange extends HttpExchange {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final NioHttpServer.Connection connection;
+    private final NioHttpServer.Request request;
+    private final HttpContext context;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private final ResponseStream stream = new ResponseStream();
+
+    private int responseCode = -1;
+    private boolean keepAlive;
+    private boolean done;
+
+    NioHttpExchange(NioHttpServer.Connection connection, NioHttpServer.Request request, HttpContext context, boolean keepAlive) {
+        this.connection = connection;
+        this.request = request;
+        this.context = context;
+        this.requestBody = request.body() != null ? request.body() : InputStream.nullInputStream();
+        this.responseBody = stream;
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return request.headers();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return request.uri();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return request.method();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (responseCode == -1) {
+                // Closed without a response, which leaves the client nothing to read
+                abort();
+                return;
+            }
+            responseBody.close();
+        }
+        catch (IOException e) {
+            abort();
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int code, long length) throws IOException {
+        if (responseCode != -1) throw new IOException("Response headers have already been sent");
+        responseCode = code;
+        if (request.body() != null) request.body().responseStarted();
+
+        StringBuilder head = new StringBuilder(256)
+                .append("HTTP/1.1 ").append(code).append(' ').append(reason(code)).append("\r\n")
+                .append("Date: ").append(date()).append("\r\n");
+
+        if (hasToken(responseHeaders.getFirst("Connection"), "close")) keepAlive = false;
+        responseHeaders.remove("Content-Length");
+        responseHeaders.remove("Transfer-Encoding");
+        responseHeaders.remove("Connection");
+
+        responseHeaders.forEach((name, values) -> {
+            for (String value : values) {
+                head.append(name).append(": ").append(value).append("\r\n");
+            }
+        });
+
+        boolean noBody = length == -1 || code == 304 || code == 204 || code < 200 || request.method().equalsIgnoreCase("HEAD");
+        if (noBody) {
+            if (code != 304 && code != 204 && code >= 200) head.append("Content-Length: 0\r\n");
+            stream.remaining = 0;
+        }
+        else if (length == 0) {
+            head.append("Transfer-Encoding: chunked\r\n");
+            stream.chunked = true;
+        }
+        else {
+            head.append("Content-Length: ").append(length).append("\r\n");
+            stream.remaining = length;
+        }
+
+        if (!keepAlive) head.append("Connection: close\r\n");
+        else if (request.protocol().equals("HTTP/1.0")) head.append("Connection: keep-alive\r\n");
+        head.append("\r\n");
+
+        // Goes out together with the start of the body
+        stream.writeRaw(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (noBody) stream.close();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return request.protocol();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) attributes.remove(name);
+        else attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream in, OutputStream out) {
+        if (in != null) requestBody = in;
+        if (out != null) responseBody = out;
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    // Cuts the connection straight away, from any thread. A handler blocked
+    // writing to it gets an IOException.
+    void disconnect() {
+        connection.disconnect();
+    }
+
+    // Gives up on the connection, for handlers that failed part way through a response
+    void abort() {
+        if (done) return;
+        done = true;
+        connection.exchangeDone(this, false);
+    }
+
+    private void finish(boolean reuse) {
+        if (done) return;
+        done = true;
+        // A body the handler didn't read to the end leaves the connection out of step
+        connection.exchangeDone(this, reuse && keepAlive && (request.body() == null || request.body().isComplete()));
+    }
+
+    private final class ResponseStream extends OutputStream {
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int count;
+        // Leading bytes of the buffer that are the response head, not body
+        private int headerBytes;
+        private boolean chunked;
+        // Body bytes still expected for a fixed-length response
+        private long remaining;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) throw new IOException("Response body is closed");
+            if (responseCode == -1) throw new IOException("sendResponseHeaders() must be called first");
+
+            if (!chunked) {
+                if (length > remaining) throw new IOException("Too many bytes for the declared Content-Length");
+                remaining -= length;
+            }
+
+            // Large writes skip the buffer rather than being copied through it
+            if (length > buffer.length - count) {
+                flushBuffer(false);
+                if (length >= buffer.length) {
+                    if (chunked) sendFrame(bytes, offset, length, false);
+                    else connection.send(bytes, offset, length);
+                    return;
+                }
+            }
+
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        // Status line and headers, which aren't chunk-framed
+        void writeRaw(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.length - count) flushBuffer(false);
+            if (bytes.length > buffer.length) {
+                connection.send(bytes, 0, bytes.length);
+                return;
+            }
+
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+            headerBytes = count;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) return;
+            flushBuffer(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+
+            try {
+                flushBuffer(true);
+            }
+            finally {
+                closed = true;
+            }
+
+            // A short fixed-length body leaves the connection out of step
+            finish(chunked || remaining == 0);
+        }
+
+        private void flushBuffer(boolean last) throws IOException {
+            if (chunked && (count > headerBytes || last)) {
+                sendFrame(buffer, 0, count, last);
+            }
+            else if (count > 0) {
+                connection.send(buffer, 0, count);
+            }
+
+            count = 0;
+            headerBytes = 0;
+        }
+
+        // Any buffered head, then the bytes as one chunk, and the last chunk if
+        // this is the end, all in a single write
+        private void sendFrame(byte[] bytes, int offset, int length, boolean last) throws IOException {
+            int head = bytes == buffer ? headerBytes : 0;
+            int bodyLength = length - head;
+
+            byte[] sizeLine = bodyLength > 0 ? (Integer.toHexString(bodyLength) + "\r\n").getBytes(StandardCharsets.ISO_8859_1) : new byte[0];
+            byte[] frame = new byte[head + sizeLine.length + bodyLength + (bodyLength > 0 ? 2 : 0) + (last ? LAST_CHUNK.length : 0)];
+
+            int position = 0;
+            System.arraycopy(bytes, offset, frame, position, head);
+            position += head;
+            System.arraycopy(sizeLine, 0, frame, position, sizeLine.length);
+            position += sizeLine.length;
+            System.arraycopy(bytes, offset + head, frame, position, bodyLength);
+            position += bodyLength;
+            if (bodyLength > 0) {
+                frame[position++] = '\r';
+                frame[position++] = '\n';
+            }
+            if (last) System.arraycopy(LAST_CHUNK, 0, frame, position, LAST_CHUNK.length);
+
+            connection.send(frame, 0, frame.length);
+        }
+    }
+
+    private static boolean hasToken(String value, String token) {
+        if (value == null) return false;
+        for (String part : value.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    // The Date header only changes once a second
+    private static volatile long cachedSecond;
+    private static volatile String cachedDate = "";
+
+    static String date() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != cachedSecond) {
+            cachedDate = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+            cachedSecond = second;
+        }
+        return cachedDate;
+    }
+
+    static String reason(int code) {
+        return switch (code) {
+            case 100 -> "Continue";
+            case 200 -> "OK";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 413 -> "Content Too Large";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> code < 300 ? "OK" : code < 400 ? "Redirect" : code < 500 ? "Client Error" : "Server Error";
+        };
+    }
+}
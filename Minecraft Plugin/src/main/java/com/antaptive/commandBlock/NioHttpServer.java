@@ -0,0 +1,1041 @@
+package com.antaptive.commandBlock;
+
+import com.sun.net.httpserver.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// A selector-based HTTP/1.1 server behind the com.sun.net.httpserver API, so the
+// same ApiRouter runs on either transport. One thread accepts, reads and parses
+// for every connection; handlers run on the server's executor as soon as the
+// request head is read. The body is passed on as it arrives, never more than
+// BODY_WINDOW bytes ahead of the handler, so a request that is turned away
+// before its body is read (unauthorized, rate limited) costs only its head.
+// Connections stay open between requests, and pipelined requests are answered
+// one at a time, in the order they arrived.
+public final class NioHttpServer extends HttpServer {
+
+    public record Settings(int backlog, long idleTimeoutMillis, int maxConnections, int maxRequestBytes) {}
+
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int INITIAL_BUFFER = 8 * 1024;
+    // Body bytes held for a handler that hasn't read them yet
+    private static final int BODY_WINDOW = 8 * 1024;
+    // Longest chunk size line, extensions included
+    private static final int MAX_CHUNK_LINE = 1024;
+    // Requests read ahead of the one being handled before we stop reading
+    private static final int MAX_PIPELINED = 16;
+    // A handler writing faster than the client reads blocks once this much is queued
+    static final int MAX_PENDING_WRITE_BYTES = 256 * 1024;
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    // Thrown to a handler reading a body that turned out to be too large or
+    // malformed part way through. The status is what to answer with.
+    static final class RequestBodyException extends IOException {
+        private final int status;
+
+        RequestBodyException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+
+    private final Settings settings;
+    private final Logger logger;
+    private final Selector selector;
+    private ServerSocketChannel channel;
+
+    // Work handed to the selector thread by handler threads
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Only touched by the selector thread
+    private final Set<Connection> connections = new HashSet<>();
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activeExchanges = new AtomicInteger();
+    // connections.size(), for threads other than the selector
+    private volatile int openConnections;
+    // Set by stop(): no new connections, and each connection is closed after its last request
+    private volatile boolean draining;
+
+    private volatile Executor executor = task -> Thread.ofVirtual().name("CommandBlock-HTTP").start(task);
+    private volatile boolean running;
+    private Thread thread;
+
+    private NioHttpServer(@NotNull Settings settings, @NotNull Logger logger) throws IOException {
+        this.settings = settings;
+        this.logger = logger;
+        this.selector = Selector.open();
+    }
+
+    public static @NotNull NioHttpServer create(@NotNull InetSocketAddress address, @NotNull Settings settings, @NotNull Logger logger) throws IOException {
+        NioHttpServer server = new NioHttpServer(settings, logger);
+        server.bind(address, settings.backlog());
+        return server;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (channel != null) throw new BindException("Already bound");
+
+        channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        // Lets a replacement server bind the same port before this one stops,
+        // so a restart never leaves the port closed
+        if (channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        channel.bind(address, backlog);
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void start() {
+        if (channel == null) throw new IllegalStateException("Not bound");
+        if (thread != null) throw new IllegalStateException("Already started");
+
+        running = true;
+        thread = new Thread(this::loop, "CommandBlock-HTTP-Selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (thread != null) throw new IllegalStateException("Already started");
+        if (executor != null) this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    // Stops accepting at once, then gives clients up to delay seconds to finish.
+    // Connections with a request in progress are still served, and every response
+    // says Connection: close, so keep-alive clients move to a new server on their
+    // next request instead of having the connection cut under them. Connections
+    // between requests are closed straight away, and each of the others as soon
+    // as its last exchange is done, so an idle keep-alive client never holds up
+    // the drain.
+    @Override
+    public void stop(int delay) {
+        if (!running) return;
+
+        post(() -> {
+            draining = true;
+            try {
+                // Take whatever is still in the backlog, which would otherwise be reset
+                accept();
+                channel.close();
+            }
+            catch (IOException ignored) {
+            }
+            closeIdle(System.nanoTime());
+        });
+
+        // Only exchanges are waited for; what's left of openConnections once they're
+        // done is responses still being flushed, which are closed as they finish
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, delay));
+        while (running && (!draining || activeExchanges.get() > 0 || openConnections > 0) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        running = false;
+        selector.wakeup();
+
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        HttpContext context = createContext(path);
+        context.setHandler(handler);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        if (path == null || !path.startsWith("/")) throw new IllegalArgumentException("Invalid context path: " + path);
+        for (Context context : contexts) {
+            if (context.getPath().equals(path)) throw new IllegalArgumentException("Context already exists: " + path);
+        }
+
+        Context context = new Context(path);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.getPath().equals(path))) {
+            throw new IllegalArgumentException("No context for " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        contexts.remove(context);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Longest matching context path, as the JDK server does
+    private Context findContext(String path) {
+        Context best = null;
+        for (Context context : contexts) {
+            if (path.startsWith(context.getPath()) && (best == null || context.getPath().length() > best.getPath().length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    private void post(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void loop() {
+        long nextIdleCheck = System.nanoTime();
+
+        while (running) {
+            try {
+                selector.select(1000);
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isWritable()) connection.onWritable();
+                        if (key.isValid() && key.isReadable()) connection.onReadable();
+                    }
+                    catch (IOException | CancelledKeyException e) {
+                        connection.close();
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - nextIdleCheck >= 0) {
+                    closeIdle(now);
+                    nextIdleCheck = now + TimeUnit.SECONDS.toNanos(1);
+                }
+            }
+            catch (Exception e) {
+                logger.log(Level.WARNING, "Error in the HTTP selector loop", e);
+            }
+        }
+
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+
+        try {
+            if (channel.isOpen()) channel.close();
+            selector.close();
+        }
+        catch (IOException ignored) {
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = channel.accept()) != null) {
+            if (connections.size() >= settings.maxConnections()) {
+                client.close();
+                continue;
+            }
+
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            Connection connection = new Connection(client);
+            connection.key = client.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            openConnections = connections.size();
+        }
+    }
+
+    // While draining, every connection between requests counts as idle, even one
+    // part way through sending the head of a request it will never get answered
+    private void closeIdle(long now) {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMillis());
+        if (idleNanos <= 0 && !draining) return;
+
+        for (Connection connection : new ArrayList<>(connections)) {
+            // A request that is still being handled (such as an event stream) is never idle
+            if (connection.active != null || !connection.pending.isEmpty()) continue;
+
+            if (draining) connection.closeAfterFlush();
+            else if (now - connection.lastActivity > idleNanos) connection.close();
+        }
+    }
+
+    // A request whose head has been read, or a parse error to answer in its place.
+    // body is null if the request has none.
+    record Request(String method, URI uri, String protocol, Headers headers, Connection.Body body, boolean keepAlive, int errorStatus) {
+        static Request error(int status) {
+            return new Request(null, null, "HTTP/1.1", null, null, false, status);
+        }
+    }
+
+    final class Connection {
+        private final SocketChannel channel;
+        private final InetSocketAddress remoteAddress;
+        private final InetSocketAddress localAddress;
+        private SelectionKey key;
+
+        // Selector thread only
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+        private final ArrayDeque<Request> pending = new ArrayDeque<>();
+        // The body still arriving, which is always the last pending or the active request's
+        private Body receiving;
+        // A "Connection: close" request was read, so nothing after it will be
+        private boolean closing;
+        private boolean inputDone;
+        private boolean closeWhenFlushed;
+        private volatile NioHttpExchange active;
+        private long lastActivity = System.nanoTime();
+
+        // Shared with handler threads
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Condition drained = writeLock.newCondition();
+        private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+            this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        }
+
+        InetSocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        InetSocketAddress getLocalAddress() {
+            return localAddress;
+        }
+
+        void onReadable() throws IOException {
+            if (!in.hasRemaining()) grow();
+
+            int read = channel.read(in);
+            if (read < 0) {
+                if (receiving != null) {
+                    receiving.fail(new RequestBodyException(400, "The request body ended early"));
+                    receiving = null;
+                }
+
+                // The client is done sending, but may still be waiting for responses
+                inputDone = true;
+                key.interestOpsAnd(~SelectionKey.OP_READ);
+                if (active == null && pending.isEmpty()) close();
+                return;
+            }
+
+            lastActivity = System.nanoTime();
+            parse();
+            dispatchNext();
+            updateReadInterest();
+        }
+
+        void onWritable() throws IOException {
+            writeLock.lock();
+            try {
+                flushQueued();
+            }
+            finally {
+                writeLock.unlock();
+            }
+
+            if (closeWhenFlushed && pendingBytes.get() == 0) close();
+        }
+
+        // Writes as much of the queue as the socket takes. Caller holds writeLock.
+        private void flushQueued() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = writes.peek()) != null) {
+                int written = channel.write(buffer);
+                pendingBytes.addAndGet(-written);
+                if (buffer.hasRemaining()) return;
+                writes.poll();
+            }
+
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            drained.signalAll();
+        }
+
+        // Called by handler threads. The bytes are written straight away if the
+        // socket takes them, and copied into the queue otherwise, so the caller
+        // may reuse the array as soon as this returns.
+        void send(byte[] bytes, int offset, int length) throws IOException {
+            send(bytes, offset, length, true);
+        }
+
+        // The selector thread must pass block = false, since it's the one that drains the queue
+        private void send(byte[] bytes, int offset, int length, boolean block) throws IOException {
+            if (length == 0) return;
+
+            writeLock.lock();
+            try {
+                if (closed) throw new IOException("Connection closed");
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                if (writes.isEmpty()) {
+                    channel.write(buffer);
+                    if (!buffer.hasRemaining()) return;
+                }
+
+                ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                copy.put(buffer).flip();
+                writes.add(copy);
+                pendingBytes.addAndGet(copy.remaining());
+
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+                selector.wakeup();
+
+                // Backpressure for streaming responses
+                while (block && !closed && pendingBytes.get() > MAX_PENDING_WRITE_BYTES) {
+                    drained.awaitUninterruptibly();
+                }
+                if (closed) throw new IOException("Connection closed");
+            }
+            catch (CancelledKeyException e) {
+                throw new IOException("Connection closed");
+            }
+            finally {
+                writeLock.unlock();
+            }
+        }
+
+        // Called by a handler thread once its exchange is complete
+        void exchangeDone(NioHttpExchange exchange, boolean reuse) {
+            activeExchanges.decrementAndGet();
+            post(() -> {
+                if (active != exchange) return;
+                active = null;
+                lastActivity = System.nanoTime();
+
+                if (!reuse) {
+                    // Whatever is left of an unread body is never read
+                    stopReading();
+                    closeAfterFlush();
+                    return;
+                }
+
+                dispatchNext();
+
+                // Its response said keep-alive, but the server is going away
+                if (draining && active == null) {
+                    closeAfterFlush();
+                    return;
+                }
+                updateReadInterest();
+            });
+        }
+
+        // From any thread: anything queued is dropped and a blocked send() fails
+        void disconnect() {
+            post(this::close);
+        }
+
+        void close() {
+            if (closed && !connections.contains(this)) return;
+
+            writeLock.lock();
+            try {
+                closed = true;
+                writes.clear();
+                pendingBytes.set(0);
+                drained.signalAll();
+            }
+            finally {
+                writeLock.unlock();
+            }
+
+            if (receiving != null) {
+                receiving.fail(new IOException("Connection closed"));
+                receiving = null;
+            }
+
+            connections.remove(this);
+            openConnections = connections.size();
+            if (key != null) key.cancel();
+
+            try {
+                channel.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+
+        private void stopReading() {
+            inputDone = true;
+            receiving = null;
+            in.clear();
+            if (key.isValid()) key.interestOpsAnd(~SelectionKey.OP_READ);
+        }
+
+        // A handler made room in the window of a body the selector had stopped reading
+        private void resume() {
+            if (closed) return;
+
+            parse();
+            dispatchNext();
+            updateReadInterest();
+        }
+
+        private void closeAfterFlush() {
+            if (pendingBytes.get() == 0) close();
+            else closeWhenFlushed = true;
+        }
+
+        private void dispatchNext() {
+            if (closed || active != null) return;
+
+            Request request = pending.poll();
+            if (request == null) {
+                if (inputDone) closeAfterFlush();
+                return;
+            }
+
+            if (request.errorStatus() != 0) {
+                sendSimple(request.errorStatus(), true);
+                pending.clear();
+                closeAfterFlush();
+                return;
+            }
+
+            Context context = findContext(request.uri().getPath() == null ? "/" : request.uri().getPath());
+            if (context == null || context.getHandler() == null) {
+                sendSimple(404, !request.keepAlive());
+                if (request.keepAlive()) dispatchNext();
+                else closeAfterFlush();
+                return;
+            }
+
+            // While draining, the last request already read is also the last on this connection
+            NioHttpExchange exchange = new NioHttpExchange(this, request, context, request.keepAlive() && !(draining && pending.isEmpty()));
+            active = exchange;
+            activeExchanges.incrementAndGet();
+
+            try {
+                executor.execute(() -> handle(exchange, context));
+            }
+            catch (RuntimeException e) {
+                // Executor is shut down or refused the work
+                activeExchanges.decrementAndGet();
+                active = null;
+                sendSimple(503, true);
+                closeAfterFlush();
+            }
+        }
+
+        private void handle(NioHttpExchange exchange, Context context) {
+            try {
+                new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+            }
+            catch (Throwable t) {
+                logger.log(Level.WARNING, "Unhandled error in HTTP handler", t);
+                exchange.abort();
+            }
+        }
+
+        // A bare response for requests that never reach a handler
+        private void sendSimple(int status, boolean closing) {
+            String head = "HTTP/1.1 " + status + " " + NioHttpExchange.reason(status) + "\r\n"
+                    + "Date: " + NioHttpExchange.date() + "\r\n"
+                    + "Content-Length: 0\r\n"
+                    + (closing ? "Connection: close\r\n\r\n" : "\r\n");
+            try {
+                byte[] bytes = head.getBytes(StandardCharsets.ISO_8859_1);
+                send(bytes, 0, bytes.length, false);
+            }
+            catch (IOException e) {
+                close();
+            }
+        }
+
+        private void updateReadInterest() {
+            if (closed) return;
+
+            boolean paused = inputDone || pending.size() >= MAX_PIPELINED || !pending.isEmpty() && pending.peekLast().errorStatus() != 0
+                    || receiving != null && receiving.isFull();
+            if (paused) key.interestOpsAnd(~SelectionKey.OP_READ);
+            else key.interestOpsOr(SelectionKey.OP_READ);
+        }
+
+        // Only ever needed for a large head; bodies go to their window as they arrive
+        private void grow() {
+            int limit = MAX_HEADER_BYTES + INITIAL_BUFFER;
+            if (in.capacity() >= limit) return;
+
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(limit, in.capacity() * 2));
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+
+        // Moves every complete request head out of the input buffer, and as much
+        // of the body being received as its window takes
+        private void parse() {
+            in.flip();
+            try {
+                while (true) {
+                    if (receiving != null) {
+                        receiving.feed();
+                        if (receiving.broken) {
+                            // Nothing after a broken body can be read in step
+                            receiving = null;
+                            inputDone = true;
+                            in.position(in.limit());
+                            break;
+                        }
+                        if (!receiving.received) break;
+                        receiving = null;
+                    }
+
+                    // Nothing after a "Connection: close" request or an error is read
+                    if (closing) {
+                        inputDone = true;
+                        in.position(in.limit());
+                        break;
+                    }
+                    if (pending.size() >= MAX_PIPELINED || !in.hasRemaining()) break;
+
+                    Request request = parseOne();
+                    if (request == null) break;
+
+                    pending.add(request);
+                    receiving = request.body();
+                    if (!request.keepAlive()) closing = true;
+                }
+            }
+            finally {
+                in.compact();
+            }
+
+            // Don't hang on to a large buffer once the head that needed it is gone
+            if (in.position() == 0 && in.capacity() > INITIAL_BUFFER) in = ByteBuffer.allocate(INITIAL_BUFFER);
+        }
+
+        // One request head from the start of the buffer, or null (with the buffer
+        // untouched) if it hasn't fully arrived yet. Its body is left to feed().
+        private Request parseOne() {
+            int start = in.position();
+            int headerEnd = indexOf(in, start, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            if (headerEnd < 0) {
+                return in.limit() - start > MAX_HEADER_BYTES ? Request.error(431) : null;
+            }
+            if (headerEnd - start > MAX_HEADER_BYTES) return Request.error(431);
+
+            String head = new String(in.array(), start, headerEnd - start, StandardCharsets.ISO_8859_1);
+            String[] lines = head.split("\r\n");
+
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) return Request.error(400);
+
+            String method = requestLine[0];
+            String protocol = requestLine[2];
+            URI uri;
+            try {
+                uri = new URI(requestLine[1]);
+            }
+            catch (URISyntaxException e) {
+                return Request.error(400);
+            }
+
+            Headers headers = new Headers();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) return Request.error(400);
+                headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            }
+
+            String connectionHeader = headers.getFirst("Connection");
+            boolean keepAlive = protocol.equals("HTTP/1.0")
+                    ? hasToken(connectionHeader, "keep-alive")
+                    : !hasToken(connectionHeader, "close");
+
+            int bodyStart = headerEnd + 4;
+            String transferEncoding = headers.getFirst("Transfer-Encoding");
+            String contentLength = headers.getFirst("Content-Length");
+            boolean expectContinue = "100-continue".equalsIgnoreCase(headers.getFirst("Expect"));
+            Body body = null;
+
+            if (transferEncoding != null) {
+                if (contentLength != null || !transferEncoding.equalsIgnoreCase("chunked")) return Request.error(400);
+                body = new Body(true, 0, expectContinue);
+            }
+            else {
+                long length;
+                try {
+                    length = contentLength == null ? 0 : Long.parseLong(contentLength.trim());
+                }
+                catch (NumberFormatException e) {
+                    return Request.error(400);
+                }
+                if (length < 0) return Request.error(400);
+                if (length > settings.maxRequestBytes()) return Request.error(413);
+
+                if (length > 0) body = new Body(false, length, expectContinue);
+            }
+
+            in.position(bodyStart);
+            return new Request(method, uri, protocol, headers, body, keepAlive, 0);
+        }
+
+        // A request body as it arrives. The selector thread moves it out of the
+        // input buffer, decoding chunks, into a window the handler reads from, and
+        // stops reading the socket while the window is full. The handler blocks
+        // until there is something to read.
+        final class Body extends InputStream {
+            private static final int SIZE = 0, DATA = 1, DATA_END = 2, TRAILER = 3, DONE = 4;
+
+            // Selector thread only
+            private final boolean chunked;
+            private int state;
+            // Left of the current chunk, or of the whole body if it isn't chunked
+            private long remaining;
+            private long total;
+            private boolean received;
+            private boolean broken;
+
+            // Shared with the handler thread, guarded by this
+            private final byte[] window = new byte[BODY_WINDOW];
+            private int head;
+            private int count;
+            private boolean complete;
+            private IOException failure;
+            // "Expect: 100-continue" clients wait to be told to send the body,
+            // which is only done once the handler starts reading it
+            private boolean awaitingContinue;
+
+            Body(boolean chunked, long length, boolean expectContinue) {
+                this.chunked = chunked;
+                this.state = chunked ? SIZE : DATA;
+                this.remaining = length;
+                this.awaitingContinue = expectContinue;
+            }
+
+            // Whether all of it has arrived, so the connection can carry on after it
+            synchronized boolean isComplete() {
+                return complete;
+            }
+
+            synchronized boolean isFull() {
+                return count == window.length;
+            }
+
+            // The response has started, so the client won't be told to send the body
+            synchronized void responseStarted() {
+                awaitingContinue = false;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                Objects.checkFromIndexSize(offset, length, bytes.length);
+                if (length == 0) return 0;
+
+                boolean sendContinue;
+                synchronized (this) {
+                    sendContinue = awaitingContinue && count == 0 && !complete;
+                    awaitingContinue = false;
+                }
+                if (sendContinue) send(CONTINUE, 0, CONTINUE.length);
+
+                int read;
+                boolean wasFull;
+                synchronized (this) {
+                    while (count == 0 && !complete && failure == null) {
+                        try {
+                            wait();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while reading the request body");
+                        }
+                    }
+
+                    if (count == 0) {
+                        if (failure != null) throw failure;
+                        return -1;
+                    }
+
+                    wasFull = count == window.length;
+                    read = Math.min(length, count);
+                    int first = Math.min(read, window.length - head);
+                    System.arraycopy(window, head, bytes, offset, first);
+                    System.arraycopy(window, 0, bytes, offset + first, read - first);
+                    head = (head + read) % window.length;
+                    count -= read;
+                }
+
+                // The selector stopped reading when the window filled up
+                if (wasFull) post(Connection.this::resume);
+                return read;
+            }
+
+            @Override
+            public synchronized int available() {
+                return count;
+            }
+
+            // Moves what it can out of the input buffer, which is in read mode. Selector thread only.
+            void feed() {
+                while (state != DONE && in.hasRemaining()) {
+                    switch (state) {
+                        case DATA -> {
+                            int length = (int) Math.min(Math.min(remaining, in.remaining()), BODY_WINDOW - available());
+                            if (length == 0) return;
+
+                            put(length);
+                            remaining -= length;
+                            if (remaining == 0) {
+                                if (chunked) state = DATA_END;
+                                else finish();
+                            }
+                        }
+                        case DATA_END -> {
+                            if (in.remaining() < 2) return;
+                            if (in.get() != '\r' || in.get() != '\n') {
+                                fail(new RequestBodyException(400, "Malformed chunked request body"));
+                                return;
+                            }
+                            state = SIZE;
+                        }
+                        default -> {
+                            int lineEnd = indexOf(in, in.position(), CRLF);
+                            if (lineEnd < 0) {
+                                if (in.remaining() > (state == SIZE ? MAX_CHUNK_LINE : MAX_HEADER_BYTES)) {
+                                    fail(new RequestBodyException(400, "Malformed chunked request body"));
+                                }
+                                return;
+                            }
+
+                            int lineStart = in.position();
+                            in.position(lineEnd + 2);
+
+                            // Trailers are skipped up to the empty line
+                            if (state == TRAILER) {
+                                if (lineEnd == lineStart) finish();
+                                continue;
+                            }
+
+                            long size = parseChunkSize(lineStart, lineEnd);
+                            if (size < 0) {
+                                fail(new RequestBodyException(400, "Malformed chunked request body"));
+                                return;
+                            }
+
+                            total += size;
+                            if (total > settings.maxRequestBytes()) {
+                                fail(new RequestBodyException(413, "The request body is too large."));
+                                return;
+                            }
+
+                            if (size == 0) {
+                                state = TRAILER;
+                            }
+                            else {
+                                remaining = size;
+                                state = DATA;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Anything already in the window can still be read first
+            void fail(IOException cause) {
+                state = DONE;
+                broken = true;
+
+                synchronized (this) {
+                    if (complete) return;
+                    failure = cause;
+                    notifyAll();
+                }
+            }
+
+            private void finish() {
+                state = DONE;
+                received = true;
+
+                synchronized (this) {
+                    complete = true;
+                    notifyAll();
+                }
+            }
+
+            private synchronized void put(int length) {
+                int tail = (head + count) % window.length;
+                int first = Math.min(length, window.length - tail);
+                in.get(window, tail, first);
+                in.get(window, 0, length - first);
+                count += length;
+                notifyAll();
+            }
+        }
+
+        private long parseChunkSize(int start, int end) {
+            long size = 0;
+            int digits = 0;
+
+            for (int i = start; i < end; i++) {
+                byte b = in.get(i);
+                if (b == ';' || b == ' ') break;
+
+                int digit = Character.digit(b, 16);
+                if (digit < 0 || ++digits > 8) return -1;
+                size = size * 16 + digit;
+            }
+
+            return digits == 0 ? -1 : size;
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, byte[] pattern) {
+        byte[] array = buffer.array();
+        int last = buffer.limit() - pattern.length;
+
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (array[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+
+        return -1;
+    }
+
+    // Whether a comma-separated header value contains the token
+    private static boolean hasToken(String value, String token) {
+        if (value == null) return false;
+        for (String part : value.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    private final class Context extends HttpContext {
+        private final String path;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<Filter> filters = new CopyOnWriteArrayList<>();
+        private volatile HttpHandler handler;
+        private Authenticator authenticator;
+
+        Context(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator) {
+            Authenticator previous = this.authenticator;
+            this.authenticator = authenticator;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.antaptive.commandBlock;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+// What the server has saved about players who aren't online: their player data
+// file (first and last seen, last location) and their statistics file. Bukkit
+// would read these on the calling thread, which for the API means the main
+// thread, so they are read and parsed here on a small background pool instead.
+//
+// Results go into an LRU cache, since the same few players tend to be looked up
+// again and again. A player's entry is dropped when they join, and again when
+// they quit and the server has written their files.
+public final class OfflinePlayerData implements Listener {
+
+    // Everything but the name can be missing, e.g. for a player who never joined
+    public record Data(@Nullable String name, long firstPlayed, long lastSeen, @Nullable Statistics statistics,
+                       @Nullable String world, double x, double y, double z, boolean hasLocation) {}
+
+    public record Statistics(long playTimeTicks, long deaths, long playerKills, long mobKills) {}
+
+    private static final Data NONE = new Data(null, 0, 0, null, null, 0, 0, 0, false);
+
+    private final Plugin plugin;
+    private final ExecutorService loadExecutor;
+    private final int maxEntries;
+
+    // Access-ordered, so iteration starts at the least recently used entry. Guarded by itself.
+    private final LinkedHashMap<UUID, Data> cache;
+    private final ConcurrentHashMap<UUID, CompletableFuture<Data>> inFlight = new ConcurrentHashMap<>();
+    // Bumped whenever anyone's files may have changed, so a load that started
+    // before that doesn't put what it read in the cache. Guarded by cache.
+    private long generation;
+
+    // Player data files name the world by its UUID. Replaced on the main thread when worlds load or unload.
+    private volatile Map<UUID, String> worldNames = Map.of();
+    private volatile File worldFolder;
+
+    public OfflinePlayerData(@NotNull Plugin plugin, int maxEntries) {
+        this.plugin = plugin;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.loadExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "CommandBlock-PlayerData");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Data> eldest) {
+                return size() > OfflinePlayerData.this.maxEntries;
+            }
+        };
+    }
+
+    // Main thread only
+    public void start() {
+        updateWorlds();
+    }
+
+    public void shutdown() {
+        loadExecutor.shutdownNow();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    // The player's saved data, from the cache or read in the background.
+    // Completes with data that has nothing in it if the server has no files for the player.
+    public @NotNull CompletableFuture<Data> load(@NotNull UUID id) {
+        synchronized (cache) {
+            Data cached = cache.get(id);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<Data> created = new CompletableFuture<>();
+        CompletableFuture<Data> existing = inFlight.putIfAbsent(id, created);
+        if (existing != null) return existing;
+
+        long startedAt;
+        synchronized (cache) {
+            startedAt = generation;
+        }
+
+        try {
+            loadExecutor.execute(() -> {
+                try {
+                    Data data = read(id);
+                    synchronized (cache) {
+                        if (generation == startedAt) cache.put(id, data);
+                    }
+                    inFlight.remove(id, created);
+                    created.complete(data);
+                }
+                catch (Exception e) {
+                    inFlight.remove(id, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            inFlight.remove(id, created);
+            created.completeExceptionally(e);
+        }
+
+        return created;
+    }
+
+    public void invalidate(@NotNull UUID id) {
+        synchronized (cache) {
+            generation++;
+            cache.remove(id);
+        }
+        // Later lookups shouldn't wait on a read that may have seen the old files
+        inFlight.remove(id);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        invalidate(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID id = event.getPlayer().getUniqueId();
+        invalidate(id);
+        // The player's files are written after this event, so drop anything read in between
+        Bukkit.getScheduler().runTask(plugin, () -> invalidate(id));
+    }
+
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        updateWorlds();
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        // Still in the list while the event runs
+        Bukkit.getScheduler().runTask(plugin, this::updateWorlds);
+    }
+
+    private void updateWorlds() {
+        List<World> worlds = Bukkit.getWorlds();
+        Map<UUID, String> names = new HashMap<>();
+        for (World world : worlds) names.put(world.getUID(), world.getName());
+        worldNames = Map.copyOf(names);
+
+        // Player data and statistics are kept in the main world's folder
+        if (!worlds.isEmpty()) worldFolder = worlds.getFirst().getWorldFolder();
+    }
+
+    private Data read(UUID id) throws IOException {
+        File folder = worldFolder;
+        if (folder == null) return NONE;
+
+        Map<String, Object> nbt = readPlayerData(new File(folder, "playerdata/" + id + ".dat"));
+        Statistics statistics = readStatistics(new File(folder, "stats/" + id + ".json"));
+        if (nbt == null) return statistics == null ? NONE : new Data(null, 0, 0, statistics, null, 0, 0, 0, false);
+
+        Map<String, Object> bukkit = compound(nbt.get("bukkit"));
+        Map<String, Object> paper = compound(nbt.get("Paper"));
+
+        long firstPlayed = longValue(bukkit.get("firstPlayed"));
+        // Paper's LastSeen is when they left; Bukkit's lastPlayed is when the file was last saved
+        long lastSeen = longValue(paper.get("LastSeen"));
+        if (lastSeen == 0) lastSeen = longValue(bukkit.get("lastPlayed"));
+
+        String world = null;
+        if (nbt.get("WorldUUIDMost") instanceof Long most && nbt.get("WorldUUIDLeast") instanceof Long least) {
+            world = worldNames.get(new UUID(most, least));
+        }
+
+        boolean hasLocation = false;
+        double x = 0, y = 0, z = 0;
+        if (nbt.get("Pos") instanceof List<?> pos && pos.size() == 3) {
+            x = doubleValue(pos.get(0));
+            y = doubleValue(pos.get(1));
+            z = doubleValue(pos.get(2));
+            hasLocation = true;
+        }
+
+        return new Data(bukkit.get("lastKnownName") instanceof String name ? name : null,
+                firstPlayed, lastSeen, statistics, world, x, y, z, hasLocation);
+    }
+
+    private static @Nullable Statistics readStatistics(File file) throws IOException {
+        JsonObject custom;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject stats = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonObject("stats");
+            custom = stats != null ? stats.getAsJsonObject("minecraft:custom") : null;
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        catch (JsonParseException | IllegalStateException | ClassCastException e) {
+            throw new IOException("Unreadable statistics file " + file.getName(), e);
+        }
+
+        if (custom == null) return new Statistics(0, 0, 0, 0);
+
+        // play_one_minute was renamed to play_time in 1.17, but is still in older files
+        long playTime = statistic(custom, "minecraft:play_time");
+        if (playTime == 0) playTime = statistic(custom, "minecraft:play_one_minute");
+
+        return new Statistics(playTime, statistic(custom, "minecraft:deaths"),
+                statistic(custom, "minecraft:player_kills"), statistic(custom, "minecraft:mob_kills"));
+    }
+
+    private static long statistic(JsonObject custom, String key) {
+        JsonElement value = custom.get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsLong() : 0;
+    }
+
+    // The player data file's root compound, or null if there's no file. Only
+    // what this class reads is kept: compounds, lists, strings and numbers.
+    private static @Nullable Map<String, Object> readPlayerData(File file) throws IOException {
+        InputStream raw;
+        try {
+            raw = new FileInputStream(file);
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw, 8192)))) {
+            if (in.readByte() != TAG_COMPOUND) throw new IOException("Not an NBT compound: " + file.getName());
+            in.readUTF();
+            return readCompound(in, 0);
+        }
+    }
+
+    private static final byte TAG_END = 0;
+    private static final byte TAG_COMPOUND = 10;
+    // Player files only nest a handful of levels deep (items in containers in the inventory)
+    private static final int MAX_NBT_DEPTH = 64;
+
+    private static Map<String, Object> readCompound(DataInputStream in, int depth) throws IOException {
+        Map<String, Object> compound = new HashMap<>();
+        for (byte type; (type = in.readByte()) != TAG_END; ) {
+            String name = in.readUTF();
+            Object value = readTag(in, type, depth + 1);
+            if (value != null) compound.put(name, value);
+        }
+        return compound;
+    }
+
+    // The tag's value, or null for the array types, which are skipped
+    private static @Nullable Object readTag(DataInputStream in, byte type, int depth) throws IOException {
+        if (depth > MAX_NBT_DEPTH) throw new IOException("NBT nested too deeply");
+
+        return switch (type) {
+            case 1 -> (long) in.readByte();
+            case 2 -> (long) in.readShort();
+            case 3 -> (long) in.readInt();
+            case 4 -> in.readLong();
+            case 5 -> (double) in.readFloat();
+            case 6 -> in.readDouble();
+            case 7 -> skip(in, in.readInt());
+            case 8 -> in.readUTF();
+            case 9 -> {
+                byte elementType = in.readByte();
+                int length = in.readInt();
+                List<Object> list = new ArrayList<>(Math.min(length, 1024));
+                for (int i = 0; i < length; i++) {
+                    Object element = readTag(in, elementType, depth + 1);
+                    if (element != null) list.add(element);
+                }
+                yield list;
+            }
+            case 10 -> readCompound(in, depth);
+            case 11 -> skip(in, in.readInt() * 4L);
+            case 12 -> skip(in, in.readInt() * 8L);
+            default -> throw new IOException("Unknown NBT tag type " + type);
+        };
+    }
+
+    // Always returns null, for the array tags nothing here reads
+    private static @Nullable Object skip(DataInputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> compound(@Nullable Object value) {
+        return value instanceof Map<?, ?> map ? (Map<String, Object>) map : Map.of();
+    }
+
+    private static long longValue(@Nullable Object value) {
+        return value instanceof Long l ? l : 0;
+    }
+
+    private static double doubleValue(@Nullable Object value) {
+        return value instanceof Double d ? d : 0;
+    }
+}
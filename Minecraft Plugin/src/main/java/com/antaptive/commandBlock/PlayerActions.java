@@ -0,0 +1,134 @@
+package com.antaptive.commandBlock;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+
+import io.papermc.paper.ban.BanListType;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.ProfileResolver.ResolvedProfile;
+
+import java.util.Date;
+import java.util.UUID;
+
+// Moderation actions shared by the API endpoints.
+// Names are resolved to profiles by ProfileResolver beforehand, so nothing here
+// does a blocking lookup. Every method must be called on the main thread, and throws
+// IllegalStateException with a user-facing message if the action can't be applied.
+public final class PlayerActions {
+
+    private PlayerActions() {}
+
+    public enum Action {
+        KICK("kick", false),
+        BAN("ban", true),
+        UNBAN("unban", true),
+        WHITELIST_ADD("whitelist/add", true),
+        WHITELIST_REMOVE("whitelist/remove", true);
+
+        private final String id;
+        private final boolean needsProfile;
+
+        Action(String id, boolean needsProfile) {
+            this.id = id;
+            this.needsProfile = needsProfile;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        // Whether the name must be resolved to a profile (off the main thread) first
+        public boolean needsProfile() {
+            return needsProfile;
+        }
+
+        public static Action fromId(String id) {
+            for (Action action : values()) {
+                if (action.id.equalsIgnoreCase(id)) return action;
+            }
+            return null;
+        }
+    }
+
+    public static void apply(@NotNull Action action, @NotNull String playerName, @Nullable ResolvedProfile profile, @NotNull String reason) {
+        if (action.needsProfile() && profile == null) throw new IllegalStateException("Player not found.");
+
+        switch (action) {
+            case KICK -> kick(playerName, reason);
+            case BAN -> ban(profile, reason);
+            case UNBAN -> unban(profile);
+            case WHITELIST_ADD -> setWhitelisted(profile, true);
+            case WHITELIST_REMOVE -> setWhitelisted(profile, false);
+        }
+    }
+
+    public static void kick(@NotNull String playerName, @NotNull String reason) {
+        Player player = Bukkit.getPlayer(playerName);
+        if (player == null) throw new IllegalStateException("The player is not online");
+
+        player.kick(withReason("You have been kicked.", reason));
+    }
+
+    public static void ban(@NotNull ResolvedProfile profile, @NotNull String reason) {
+        ban(profile, reason, null);
+    }
+
+    // The server lifts the ban by itself once expires has passed
+    public static void ban(@NotNull ResolvedProfile profile, @NotNull String reason, @Nullable Date expires) {
+        Bukkit.getBanList(BanListType.PROFILE).addBan(
+                Bukkit.createProfile(profile.id(), profile.name()),
+                reason,
+                expires,
+                null
+        );
+
+        // Adding to the banlist doesn't kick the player, so give them a friendly shove.
+        Player player = Bukkit.getPlayer(profile.id());
+        if (player != null) {
+            player.kick(withReason("You have been banned.", reason));
+        }
+    }
+
+    public static void unban(@NotNull ResolvedProfile profile) {
+        var banList = Bukkit.getBanList(BanListType.PROFILE);
+        PlayerProfile player = Bukkit.createProfile(profile.id(), profile.name());
+
+        if (!banList.isBanned(player)) throw new IllegalStateException("Player is not banned.");
+
+        banList.pardon(player);
+    }
+
+    public static void setWhitelisted(@NotNull ResolvedProfile profile, boolean whitelisted) {
+        setWhitelisted(profile.id(), whitelisted);
+    }
+
+    public static void setWhitelisted(@NotNull UUID id, boolean whitelisted) {
+        // Looking up by UUID never goes out to Mojang
+        Bukkit.getOfflinePlayer(id).setWhitelisted(whitelisted);
+
+        if (!whitelisted) {
+            Player player = Bukkit.getPlayer(id);
+
+            if (player != null) {
+                Component message = Component.text("You have been removed from the whitelist and kicked.", NamedTextColor.RED);
+                player.kick(message);
+            }
+        }
+    }
+
+    private static Component withReason(@NotNull String text, @NotNull String reason) {
+        Component message = Component.text(text, NamedTextColor.RED);
+
+        if (!reason.isBlank()) {
+            message = message.append(Component.text("\n" + reason, NamedTextColor.YELLOW));
+        }
+
+        return message;
+    }
+}
@@ -0,0 +1,143 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Copies every online player into plain records on the main thread once per
+// interval, so /server/players can page, filter and sort without touching the
+// Bukkit API. Sorted views are only built when first asked for, on the HTTP
+// thread, and shared by every request against the same snapshot.
+public final class PlayerIndex implements Runnable {
+
+    public enum Sort {
+        NAME("name", Comparator.comparing(PlayerRecord::sortName)),
+        PING("ping", Comparator.comparingInt(PlayerRecord::ping)),
+        JOINED_AT("joinedAt", Comparator.comparingLong(PlayerRecord::joinedAt));
+
+        private final String id;
+        private final Comparator<PlayerRecord> ascending;
+        private final Comparator<PlayerRecord> descending;
+
+        Sort(String id, Comparator<PlayerRecord> key) {
+            this.id = id;
+            // UUIDs break ties, so every record has exactly one position
+            this.ascending = key.thenComparing(PlayerRecord::uuid);
+            this.descending = ascending.reversed();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Comparator<PlayerRecord> comparator(boolean descending) {
+            return descending ? this.descending : ascending;
+        }
+
+        public static @Nullable Sort fromId(String id) {
+            for (Sort sort : values()) {
+                if (sort.id.equalsIgnoreCase(id)) return sort;
+            }
+            return null;
+        }
+    }
+
+    public record PlayerRecord(String name, String sortName, UUID uuid, int ping, boolean afk, String world, long joinedAt) {}
+
+    private final CommandBlock plugin;
+    private BukkitTask task;
+
+    // Replaced as a whole on the main thread, read by any HTTP thread
+    private volatile Snapshot snapshot;
+
+    public PlayerIndex(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start(long intervalTicks) {
+        stop();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 0L, Math.max(1L, intervalTicks));
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    // Latest snapshot, or null if the first sample hasn't run yet
+    public @Nullable Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void run() {
+        PresenceTracker presenceTracker = plugin.getPresenceTracker();
+        var online = Bukkit.getOnlinePlayers();
+        PlayerRecord[] records = new PlayerRecord[online.size()];
+        int count = 0;
+
+        for (Player p : online) {
+            if (count == records.length) break;
+
+            PresenceTracker.Presence presence = presenceTracker.get(p.getUniqueId());
+
+            String name = p.getName();
+            records[count++] = new PlayerRecord(
+                    name,
+                    name.toLowerCase(Locale.ROOT),
+                    p.getUniqueId(),
+                    presence != null ? presence.getPing() : p.getPing(),
+                    presence != null && presence.isAfk(),
+                    p.getWorld().getName(),
+                    presence != null ? presence.getJoinedAt() : p.getLastLogin()
+            );
+        }
+
+        snapshot = new Snapshot(count == records.length ? records : Arrays.copyOf(records, count), System.currentTimeMillis());
+    }
+
+    public static final class Snapshot {
+        private final PlayerRecord[] records;
+        private final long takenAt;
+        // Index is sort.ordinal() * 2, +1 for descending
+        private final AtomicReferenceArray<PlayerRecord[]> sorted = new AtomicReferenceArray<>(Sort.values().length * 2);
+
+        Snapshot(PlayerRecord[] records, long takenAt) {
+            this.records = records;
+            this.takenAt = takenAt;
+        }
+
+        public int size() {
+            return records.length;
+        }
+
+        public long getTakenAt() {
+            return takenAt;
+        }
+
+        // The records in the given order. Don't modify the returned array.
+        public PlayerRecord @NotNull [] sorted(@NotNull Sort sort, boolean descending) {
+            int slot = sort.ordinal() * 2 + (descending ? 1 : 0);
+            PlayerRecord[] view = sorted.get(slot);
+
+            if (view == null) {
+                // Two requests may both sort the same snapshot, but they get equal arrays
+                view = records.clone();
+                Arrays.sort(view, sort.comparator(descending));
+                sorted.compareAndSet(slot, null, view);
+            }
+
+            return view;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Statistic;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.OfflinePlayerData.Data;
+import com.antaptive.commandBlock.OfflinePlayerData.Statistics;
+import com.antaptive.commandBlock.ProfileResolver.ResolvedProfile;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+// GET /server/player/info?player=<name or UUID>
+// One player's details, online or not. A short main-thread task checks whether
+// they're online and whitelisted, and for an online player reads everything
+// else live. For an offline player the rest comes from OfflinePlayerData,
+// which reads their saved files in the background and caches them.
+public final class PlayerInfoHandler implements ApiRouter.Endpoint {
+
+    // What only the main thread can tell us. online is null if they aren't.
+    private record Live(boolean whitelisted, @Nullable Data online) {}
+
+    private final CommandBlock plugin;
+    private final OfflinePlayerData offlineData;
+
+    public PlayerInfoHandler(@NotNull CommandBlock plugin, @NotNull OfflinePlayerData offlineData) {
+        this.plugin = plugin;
+        this.offlineData = offlineData;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        String player = request.params().get("player");
+        if (player == null || player.isBlank()) {
+            request.sendError(400, "A user was not specified. Please specify a 'player' parameter.");
+            return;
+        }
+
+        UUID id = parseUUID(player);
+        String name = null;
+        if (id == null) {
+            ResolvedProfile profile = resolveProfile(request, player);
+            if (profile == null) return;
+
+            id = profile.id();
+            name = profile.name();
+        }
+
+        UUID playerId = id;
+        CompletableFuture<Live> live = plugin.getMainThreadQueue().submit(() -> {
+            Player online = Bukkit.getPlayer(playerId);
+            if (online == null) return new Live(Bukkit.getOfflinePlayer(playerId).isWhitelisted(), null);
+
+            Location location = online.getLocation();
+            return new Live(online.isWhitelisted(), new Data(
+                    online.getName(),
+                    online.getFirstPlayed(),
+                    0,
+                    new Statistics(
+                            online.getStatistic(Statistic.PLAY_ONE_MINUTE),
+                            online.getStatistic(Statistic.DEATHS),
+                            online.getStatistic(Statistic.PLAYER_KILLS),
+                            online.getStatistic(Statistic.MOB_KILLS)
+                    ),
+                    location.getWorld() != null ? location.getWorld().getName() : null,
+                    location.getX(),
+                    location.getY(),
+                    location.getZ(),
+                    true
+            ));
+        });
+
+        Live state = await(request, live, plugin.getConfig().getLong("main-thread-timeout-ms", 5000), "reading the player's state");
+        if (state == null) return;
+
+        Data data = state.online();
+        if (data == null) {
+            // A copy, so giving up on it doesn't cancel the load for anyone else waiting on it
+            data = await(request, offlineData.load(playerId).copy(), plugin.getConfig().getLong("player-info-timeout-ms", 5000), "reading the player's saved data");
+            if (data == null) return;
+        }
+
+        if (data.name() != null) name = data.name();
+        BanIndex.BanRecord ban = plugin.getBanIndex().get(playerId);
+        if (ban != null && ban.isExpired(System.currentTimeMillis())) ban = null;
+
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("uuid", playerId.toString())
+                .field("name", name)
+                .field("online", state.online() != null)
+                .field("hasPlayedBefore", data.firstPlayed() != 0 || data.statistics() != null);
+        optionalTime(json, "firstPlayed", data.firstPlayed());
+        optionalTime(json, "lastSeen", data.lastSeen());
+
+        Statistics statistics = data.statistics();
+        if (statistics != null) {
+            json.name("statistics").beginObject()
+                    // Counted in ticks, of which there are 20 a second
+                    .field("playTimeSeconds", statistics.playTimeTicks() / 20)
+                    .field("deaths", statistics.deaths())
+                    .field("playerKills", statistics.playerKills())
+                    .field("mobKills", statistics.mobKills())
+                    .endObject();
+        }
+        else {
+            json.name("statistics").nullValue();
+        }
+
+        json.field("whitelisted", state.whitelisted())
+                .field("banned", ban != null);
+        if (ban != null) {
+            json.name("ban").beginObject()
+                    .field("reason", ban.reason())
+                    .field("source", ban.source())
+                    .field("created", ban.created());
+            optionalTime(json, "expires", ban.expires());
+            json.endObject();
+        }
+        else {
+            json.name("ban").nullValue();
+        }
+
+        if (data.hasLocation()) {
+            json.name("location").beginObject()
+                    .field("world", data.world())
+                    .field("x", data.x())
+                    .field("y", data.y())
+                    .field("z", data.z())
+                    .endObject();
+        }
+        else {
+            json.name("location").nullValue();
+        }
+
+        request.send(200, json.endObject());
+    }
+
+    // Epoch milliseconds, or null where 0 means unknown or never
+    private static void optionalTime(JsonWriter json, String name, long time) {
+        if (time > 0) json.field(name, time);
+        else json.name(name).nullValue();
+    }
+
+    private static @Nullable UUID parseUUID(String value) {
+        if (value.length() != 36) return null;
+        try {
+            return UUID.fromString(value);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Null once an error response has been sent
+    private @Nullable ResolvedProfile resolveProfile(ApiRequest request, String playerName) throws IOException {
+        ResolvedProfile profile;
+        try {
+            profile = plugin.getProfileResolver().resolveNow(playerName, plugin.getConfig().getLong("profile-lookup-timeout-ms", 5000));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.sendError(500, "Interrupted while looking up the player.");
+            return null;
+        }
+        catch (ProfileResolver.LookupFailedException e) {
+            request.setHeader("Retry-After", "5");
+            request.sendError(e.getStatus(), e.getMessage());
+            return null;
+        }
+
+        if (profile == null) {
+            request.sendError(404, "Player not found.");
+        }
+
+        return profile;
+    }
+
+    // The result, or null once an error response has been sent
+    private <T> @Nullable T await(ApiRequest request, CompletableFuture<T> result, long timeoutMillis, String action) throws IOException {
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            result.cancel(false);
+            request.setHeader("Retry-After", "1");
+            request.sendError(504, "Timed out " + action + ".");
+            return null;
+        }
+        catch (ExecutionException e) {
+            plugin.getLogger().log(Level.WARNING, "Error " + action, e.getCause());
+            request.sendError(500, "Internal server error");
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.sendError(500, "Interrupted while " + action + ".");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.PlayerIndex.PlayerRecord;
+import com.antaptive.commandBlock.PlayerIndex.Sort;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.UUID;
+
+// GET /server/players
+// Pages through the online players from the latest PlayerIndex snapshot.
+// Cursors hold the sort key and UUID of the last player returned, so paging
+// carries on from the right place even if players join or leave in between.
+public final class PlayersHandler implements ApiRouter.Endpoint {
+
+    private static final String[] FIELDS = {"name", "uuid", "ping", "afk", "world", "joinedAt"};
+    private static final int ALL_FIELDS = (1 << FIELDS.length) - 1;
+
+    private final CommandBlock plugin;
+    private final PlayerIndex index;
+
+    public PlayersHandler(@NotNull CommandBlock plugin, @NotNull PlayerIndex index) {
+        this.plugin = plugin;
+        this.index = index;
+    }
+
+    @Override
+    public void handle(@NotNull ApiRequest request) throws IOException {
+        PlayerIndex.Snapshot snapshot = index.getSnapshot();
+        if (snapshot == null) {
+            request.setHeader("Retry-After", "1");
+            request.sendError(503, "The player list is not available yet");
+            return;
+        }
+
+        QueryParams params = request.params();
+
+        int maxLimit = Math.max(1, plugin.getConfig().getInt("players-max-page-size", 1000));
+        long limit = params.getLong("limit", plugin.getConfig().getInt("players-page-size", 100));
+        if (limit < 1 || limit > maxLimit) {
+            request.sendError(400, "'limit' must be between 1 and " + maxLimit + ".");
+            return;
+        }
+
+        Sort sort = Sort.fromId(params.getOrDefault("sort", "name"));
+        if (sort == null) {
+            request.sendError(400, "Unknown sort. Use one of name, ping, joinedAt.");
+            return;
+        }
+
+        String order = params.getOrDefault("order", "asc");
+        if (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+            request.sendError(400, "'order' must be asc or desc.");
+            return;
+        }
+        boolean descending = order.equalsIgnoreCase("desc");
+
+        int fields = parseFields(params.get("fields"));
+        if (fields < 0) {
+            request.sendError(400, "Unknown field. Use any of " + String.join(", ", FIELDS) + ".");
+            return;
+        }
+
+        // Filters
+        String afkParam = params.get("afk");
+        Boolean afk = null;
+        if (afkParam != null) {
+            if (!afkParam.equalsIgnoreCase("true") && !afkParam.equalsIgnoreCase("false")) {
+                request.sendError(400, "'afk' must be true or false.");
+                return;
+            }
+            afk = afkParam.equalsIgnoreCase("true");
+        }
+        long minPing = params.getLong("minPing", Long.MIN_VALUE);
+        String world = params.get("world");
+
+        PlayerRecord[] sorted = snapshot.sorted(sort, descending);
+        Comparator<PlayerRecord> comparator = sort.comparator(descending);
+
+        int start = 0;
+        String cursor = params.get("cursor");
+        if (cursor != null && !cursor.isEmpty()) {
+            PlayerRecord after = decodeCursor(cursor, sort, descending);
+            if (after == null) {
+                request.sendError(400, "Invalid cursor. Cursors only work with the same sort and order they were returned for.");
+                return;
+            }
+            start = firstAfter(sorted, after, comparator);
+        }
+
+        JsonWriter json = JsonWriter.acquire().beginObject()
+                .field("onlinePlayers", snapshot.size())
+                .field("snapshotTime", snapshot.getTakenAt())
+                .name("players").beginArray();
+
+        int count = 0;
+        PlayerRecord last = null;
+        boolean more = false;
+
+        for (int i = start; i < sorted.length; i++) {
+            PlayerRecord player = sorted[i];
+            if (afk != null && player.afk() != afk) continue;
+            if (player.ping() < minPing) continue;
+            if (world != null && !player.world().equalsIgnoreCase(world)) continue;
+
+            if (count == limit) {
+                more = true;
+                break;
+            }
+
+            writePlayer(json, player, fields);
+            last = player;
+            count++;
+        }
+
+        json.endArray();
+        if (more) json.field("nextCursor", encodeCursor(last, sort, descending));
+        else json.name("nextCursor").nullValue();
+
+        request.send(200, json.endObject());
+    }
+
+    private static void writePlayer(JsonWriter json, PlayerRecord player, int fields) {
+        json.beginObject();
+        if ((fields & 1) != 0) json.field("name", player.name());
+        if ((fields & 1 << 1) != 0) json.field("uuid", player.uuid().toString());
+        if ((fields & 1 << 2) != 0) json.field("ping", player.ping());
+        if ((fields & 1 << 3) != 0) json.field("afk", player.afk());
+        if ((fields & 1 << 4) != 0) json.field("world", player.world());
+        if ((fields & 1 << 5) != 0) json.field("joinedAt", player.joinedAt());
+        json.endObject();
+    }
+
+    // Bit mask of the comma-separated field names, every field if none were
+    // given, or -1 if one of them is unknown
+    private static int parseFields(@Nullable String value) {
+        if (value == null || value.isBlank()) return ALL_FIELDS;
+
+        int mask = 0;
+        for (String field : value.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) continue;
+
+            int bit = -1;
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (FIELDS[i].equalsIgnoreCase(name)) bit = i;
+            }
+            if (bit < 0) return -1;
+
+            mask |= 1 << bit;
+        }
+
+        return mask == 0 ? ALL_FIELDS : mask;
+    }
+
+    // Index of the first record that sorts after the cursor's position
+    private static int firstAfter(PlayerRecord[] sorted, PlayerRecord after, Comparator<PlayerRecord> comparator) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(sorted[mid], after) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // "<sort>.<order>:<key>:<uuid>", base64url-encoded so clients treat it as opaque
+    private static String encodeCursor(PlayerRecord last, Sort sort, boolean descending) {
+        String key = switch (sort) {
+            case NAME -> last.sortName();
+            case PING -> String.valueOf(last.ping());
+            case JOINED_AT -> String.valueOf(last.joinedAt());
+        };
+
+        String cursor = sort.getId() + (descending ? ".desc:" : ".asc:") + key + ":" + last.uuid();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A record that sorts exactly where the cursor points, or null if the
+    // cursor is malformed or was made for a different sort or order
+    private static @Nullable PlayerRecord decodeCursor(String cursor, Sort sort, boolean descending) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            String prefix = sort.getId() + (descending ? ".desc:" : ".asc:");
+            if (!decoded.startsWith(prefix)) return null;
+
+            int split = decoded.lastIndexOf(':');
+            if (split < prefix.length()) return null;
+
+            String key = decoded.substring(prefix.length(), split);
+            UUID uuid = UUID.fromString(decoded.substring(split + 1));
+
+            return switch (sort) {
+                case NAME -> new PlayerRecord(key, key.toLowerCase(Locale.ROOT), uuid, 0, false, "", 0);
+                case PING -> new PlayerRecord("", "", uuid, Integer.parseInt(key), false, "", 0);
+                case JOINED_AT -> new PlayerRecord("", "", uuid, 0, false, "", Long.parseLong(key));
+            };
+        }
+        catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            return null;
+        }
+    }
+}
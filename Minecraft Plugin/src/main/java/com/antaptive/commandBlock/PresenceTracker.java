@@ -0,0 +1,143 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.earth2me.essentials.Essentials;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// AFK status, join time and ping of every online player, kept up to date by
+// events instead of being looked up each time they're needed. Join and quit add
+// and remove players, Essentials' AFK event flips the flag, and one main-thread
+// sweep per interval samples everyone's ping. Readers on any thread get a
+// player's Presence with a single map lookup and no locking.
+//
+// Without a supported EssentialsX, the AFK listener is never registered and
+// nobody is ever AFK.
+public final class PresenceTracker implements Runnable, Listener {
+
+    // One online player. joinedAt never changes; afk and ping are written on
+    // the main thread and read from anywhere.
+    public static final class Presence {
+        private final long joinedAt;
+        private volatile boolean afk;
+        private volatile int ping;
+
+        private Presence(long joinedAt, boolean afk, int ping) {
+            this.joinedAt = joinedAt;
+            this.afk = afk;
+            this.ping = ping;
+        }
+
+        public long getJoinedAt() {
+            return joinedAt;
+        }
+
+        public boolean isAfk() {
+            return afk;
+        }
+
+        // As of the last sweep, in milliseconds
+        public int getPing() {
+            return ping;
+        }
+    }
+
+    private final CommandBlock plugin;
+    private final ConcurrentHashMap<UUID, Presence> players = new ConcurrentHashMap<>();
+    private BukkitTask task;
+
+    public PresenceTracker(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    // Main thread only. Picks up players who were already online, e.g. after a reload.
+    public void start(long pingIntervalTicks) {
+        stop();
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            track(player, player.getLastLogin());
+        }
+
+        long interval = Math.max(1L, pingIntervalTicks);
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, interval, interval);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        players.clear();
+    }
+
+    // Null if the player isn't online
+    public @Nullable Presence get(@NotNull UUID id) {
+        return players.get(id);
+    }
+
+    private void track(Player player, long joinedAt) {
+        // Asked once per join; after that the AFK event keeps it current
+        boolean afk = false;
+        Essentials essentials = plugin.getEssentials();
+        if (essentials != null) {
+            com.earth2me.essentials.User user = essentials.getUser(player);
+            if (user != null) afk = user.isAfk();
+        }
+
+        players.put(player.getUniqueId(), new Presence(joinedAt, afk, player.getPing()));
+    }
+
+    // The ping sweep. Also adds or drops anyone a missed join or quit left out of step.
+    @Override
+    public void run() {
+        Collection<? extends Player> online = Bukkit.getOnlinePlayers();
+
+        for (Player player : online) {
+            Presence presence = players.get(player.getUniqueId());
+            if (presence == null) track(player, player.getLastLogin());
+            else presence.ping = player.getPing();
+        }
+
+        if (players.size() != online.size()) {
+            players.keySet().removeIf(id -> Bukkit.getPlayer(id) == null);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        track(event.getPlayer(), System.currentTimeMillis());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        players.remove(event.getPlayer().getUniqueId());
+    }
+
+    // Only registered when a supported EssentialsX is installed, so its classes
+    // are never loaded otherwise
+    public static final class EssentialsListener implements Listener {
+        private final PresenceTracker tracker;
+
+        public EssentialsListener(@NotNull PresenceTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onAfkStatusChange(net.ess3.api.events.AfkStatusChangeEvent event) {
+            Presence presence = tracker.players.get(event.getAffected().getBase().getUniqueId());
+            if (presence != null) presence.afk = event.getValue();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.antaptive.commandBlock;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+import com.google.gson.*;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+// Resolves player names to profiles without ever blocking the main thread.
+// Names are looked up in an LRU cache first, then through a RemoteLookup on a
+// background pool. Concurrent lookups of the same name share one resolution.
+public final class ProfileResolver implements Listener {
+
+    public record ResolvedProfile(@NotNull UUID id, @NotNull String name) {}
+
+    // A lookup that timed out or couldn't reach the profile service, as opposed
+    // to a player that doesn't exist. Worth retrying, so it's answered with 503
+    // or 504 rather than 400.
+    public static final class LookupFailedException extends RuntimeException {
+        private final boolean timedOut;
+
+        public LookupFailedException(@NotNull String message, boolean timedOut) {
+            super(message);
+            this.timedOut = timedOut;
+        }
+
+        public int getStatus() {
+            return timedOut ? 504 : 503;
+        }
+    }
+
+    // Resolves a name that isn't cached yet. Returns null if no such player exists.
+    public interface RemoteLookup {
+        @Nullable ResolvedProfile lookup(@NotNull String name) throws Exception;
+    }
+
+    // Asks the server for the profile, which goes to Mojang if it has to
+    public static final RemoteLookup PAPER_LOOKUP = name -> {
+        PlayerProfile profile = Bukkit.createProfile(name);
+        if (!profile.complete(false) || profile.getId() == null || profile.getName() == null) return null;
+        return new ResolvedProfile(profile.getId(), profile.getName());
+    };
+
+    private static final Gson GSON = new Gson();
+    private static final String CACHE_FILE = "profiles.json";
+
+    private final Plugin plugin;
+    private final RemoteLookup remoteLookup;
+    private final ExecutorService lookupExecutor;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, CacheEntry> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<ResolvedProfile>> inFlight = new ConcurrentHashMap<>();
+
+    public ProfileResolver(@NotNull Plugin plugin, @NotNull RemoteLookup remoteLookup, int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.plugin = plugin;
+        this.remoteLookup = remoteLookup;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.lookupExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "CommandBlock-Profiles");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > ProfileResolver.this.maxEntries;
+            }
+        };
+    }
+
+    private static String key(@NotNull String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Resolves a name to a profile. Completes with null if the player doesn't exist.
+    public @NotNull CompletableFuture<ResolvedProfile> resolve(@NotNull String name) {
+        String key = key(name);
+
+        CacheEntry cached = getCached(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached.profile);
+
+        CompletableFuture<ResolvedProfile> created = new CompletableFuture<>();
+        CompletableFuture<ResolvedProfile> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) return existing;
+
+        try {
+            lookupExecutor.execute(() -> {
+                try {
+                    ResolvedProfile profile = remoteLookup.lookup(name);
+                    put(key, profile);
+                    inFlight.remove(key, created);
+                    created.complete(profile);
+                }
+                catch (Exception e) {
+                    inFlight.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+
+        return created;
+    }
+
+    // resolve() for many names at once. Cached names are all answered under a
+    // single lock; the rest are queued for lookup. Keys are the names as given.
+    public @NotNull Map<String, CompletableFuture<ResolvedProfile>> resolveAll(@NotNull Collection<String> names) {
+        Map<String, CompletableFuture<ResolvedProfile>> results = new HashMap<>(names.size() * 2);
+        List<String> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            for (String name : names) {
+                if (results.containsKey(name)) continue;
+
+                CacheEntry entry = cache.get(key(name));
+                if (entry != null && entry.expiresAt >= now) {
+                    results.put(name, CompletableFuture.completedFuture(entry.profile));
+                }
+                else {
+                    results.put(name, null);
+                    misses.add(name);
+                }
+            }
+        }
+
+        for (String name : misses) {
+            results.put(name, resolve(name));
+        }
+
+        return results;
+    }
+
+    // Blocking form of resolve() for HTTP threads.
+    // Throws LookupFailedException with a user-facing message if the lookup fails or times out.
+    public @Nullable ResolvedProfile resolveNow(@NotNull String name, long timeoutMillis) throws InterruptedException {
+        try {
+            return resolve(name).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            throw new LookupFailedException("Timed out looking up the player's profile.", true);
+        }
+        catch (ExecutionException e) {
+            throw new LookupFailedException("Failed to look up the player's profile.", false);
+        }
+    }
+
+    // Records a name we know to be correct, such as one that just joined
+    public void remember(@NotNull UUID id, @NotNull String name) {
+        put(key(name), new ResolvedProfile(id, name));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        remember(player.getUniqueId(), player.getName());
+    }
+
+    private @Nullable CacheEntry getCached(String key) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry == null) return null;
+
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+
+            return entry;
+        }
+    }
+
+    private void put(String key, @Nullable ResolvedProfile profile) {
+        long ttl = profile != null ? ttlMillis : negativeTtlMillis;
+        if (ttl <= 0) return;
+
+        synchronized (cache) {
+            cache.put(key, new CacheEntry(profile, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    // Loads our own saved cache, then the server's usercache.json on top of it.
+    // Reads files, so call it off the main thread.
+    public void warm() {
+        int loaded = 0;
+        loaded += loadEntries(new File(plugin.getDataFolder(), CACHE_FILE), "expiresAt");
+        loaded += loadEntries(new File(Bukkit.getWorldContainer(), "usercache.json"), null);
+
+        plugin.getLogger().info("Loaded " + loaded + " cached player profiles.");
+    }
+
+    private int loadEntries(@NotNull File file, @Nullable String expiryField) {
+        if (!file.isFile()) return 0;
+
+        int loaded = 0;
+        long now = System.currentTimeMillis();
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject object = element.getAsJsonObject();
+                if (!object.has("name") || !object.has("uuid")) continue;
+
+                long expiresAt = now + ttlMillis;
+                if (expiryField != null && object.has(expiryField)) {
+                    expiresAt = object.get(expiryField).getAsLong();
+                    if (expiresAt < now) continue;
+                }
+
+                String name = object.get("name").getAsString();
+                UUID id = UUID.fromString(object.get("uuid").getAsString());
+
+                synchronized (cache) {
+                    cache.put(key(name), new CacheEntry(new ResolvedProfile(id, name), expiresAt));
+                }
+                loaded++;
+            }
+        }
+        catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to read player profiles from " + file.getName(), e);
+        }
+
+        return loaded;
+    }
+
+    // Writes every unexpired, known profile to disk
+    public void save() {
+        JsonArray entries = new JsonArray();
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            for (CacheEntry entry : cache.values()) {
+                if (entry.profile == null || entry.expiresAt < now) continue;
+
+                JsonObject object = new JsonObject();
+                object.addProperty("name", entry.profile.name());
+                object.addProperty("uuid", entry.profile.id().toString());
+                object.addProperty("expiresAt", entry.expiresAt);
+                entries.add(object);
+            }
+        }
+
+        File file = new File(plugin.getDataFolder(), CACHE_FILE);
+        File temp = new File(plugin.getDataFolder(), CACHE_FILE + ".tmp");
+
+        try {
+            Files.createDirectories(plugin.getDataFolder().toPath());
+            Files.writeString(temp.toPath(), GSON.toJson(entries), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to save player profiles", e);
+        }
+    }
+
+    public void shutdown() {
+        // Queued lookups are dropped without running, so whoever waits on them is told now
+        lookupExecutor.shutdownNow();
+        for (CompletableFuture<ResolvedProfile> pending : inFlight.values()) {
+            pending.completeExceptionally(new LookupFailedException("The server is shutting down.", false));
+        }
+        inFlight.clear();
+
+        save();
+    }
+
+    // A null profile means the name is known not to exist
+    private record CacheEntry(@Nullable ResolvedProfile profile, long expiresAt) {}
+}
@@ -0,0 +1,112 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+
+// Lazily parsed query string. Nothing is split or copied up front; get() scans
+// the raw query for the key and decodes only the value that was asked for.
+public final class QueryParams {
+
+    private static final QueryParams EMPTY = new QueryParams("");
+
+    private final String raw;
+
+    private QueryParams(@NotNull String raw) {
+        this.raw = raw;
+    }
+
+    // Takes the still-encoded query (URI.getRawQuery()), so an encoded '&' or '='
+    // inside a value can't be mistaken for a separator
+    public static @NotNull QueryParams of(@Nullable String rawQuery) {
+        return rawQuery == null || rawQuery.isEmpty() ? EMPTY : new QueryParams(rawQuery);
+    }
+
+    public boolean isEmpty() {
+        return raw.isEmpty();
+    }
+
+    // First value for the key, or null. Keys are matched exactly, without decoding.
+    public @Nullable String get(@NotNull String key) {
+        int length = raw.length();
+        int start = 0;
+
+        while (start < length) {
+            int end = raw.indexOf('&', start);
+            if (end < 0) end = length;
+
+            int equals = raw.indexOf('=', start);
+            if (equals > start && equals < end
+                    && equals - start == key.length()
+                    && raw.regionMatches(start, key, 0, key.length())) {
+                return decode(raw, equals + 1, end);
+            }
+
+            start = end + 1;
+        }
+
+        return null;
+    }
+
+    public @NotNull String getOrDefault(@NotNull String key, @NotNull String defaultValue) {
+        String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public long getLong(@NotNull String key, long defaultValue) {
+        String value = get(key);
+        if (value == null) return defaultValue;
+
+        try {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // application/x-www-form-urlencoded decoding of raw[start, end).
+    // If the value is malformed, the raw value is used instead.
+    static @NotNull String decode(@NotNull String raw, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = raw.charAt(i);
+            if (c == '%' || c == '+') break;
+            i++;
+        }
+
+        // Nothing to decode, which is the common case
+        if (i == end) return raw.substring(start, end);
+
+        byte[] bytes = new byte[end - start];
+        int count = 0;
+
+        for (i = start; i < end; i++) {
+            char c = raw.charAt(i);
+
+            if (c == '+') {
+                bytes[count++] = ' ';
+            }
+            else if (c == '%') {
+                if (i + 2 >= end) return raw.substring(start, end);
+
+                int high = Character.digit(raw.charAt(i + 1), 16);
+                int low = Character.digit(raw.charAt(i + 2), 16);
+                if (high < 0 || low < 0) return raw.substring(start, end);
+
+                bytes[count++] = (byte) ((high << 4) | low);
+                i += 2;
+            }
+            else if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            }
+            else {
+                // Unencoded non-ASCII, which browsers sometimes send anyway
+                return raw.substring(start, end);
+            }
+        }
+
+        return new String(bytes, 0, count, StandardCharsets.UTF_8);
+    }
+}
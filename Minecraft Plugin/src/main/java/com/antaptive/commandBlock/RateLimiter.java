@@ -0,0 +1,87 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Per-client token buckets for the HTTP API. Clients are counted by remote
+// address before anything else is looked at, and again by API token once the
+// token has been checked. Reads (GET) and mutations (everything else) have
+// separate limits.
+//
+// Each table is a fixed number of buckets that clients are hashed into, so a
+// flood of new addresses can't grow memory, and taking a token is one CAS.
+public final class RateLimiter {
+
+    private final Buckets addressReads;
+    private final Buckets addressMutations;
+    private final Buckets tokenReads;
+    private final Buckets tokenMutations;
+
+    public RateLimiter(int buckets, double readsPerSecond, int readBurst, double mutationsPerSecond, int mutationBurst) {
+        this.addressReads = Buckets.of(buckets, readsPerSecond, readBurst);
+        this.addressMutations = Buckets.of(buckets, mutationsPerSecond, mutationBurst);
+        this.tokenReads = Buckets.of(buckets, readsPerSecond, readBurst);
+        this.tokenMutations = Buckets.of(buckets, mutationsPerSecond, mutationBurst);
+    }
+
+    public static boolean isMutation(@NotNull String method) {
+        return !method.equalsIgnoreCase("GET");
+    }
+
+    // 0 if the request may go ahead, otherwise how long (in nanoseconds) the
+    // client should wait before trying again
+    public long acquireForAddress(@Nullable InetAddress address, boolean mutation) {
+        Buckets buckets = mutation ? addressMutations : addressReads;
+        return buckets == null ? 0 : buckets.acquire(address == null ? 0 : address.hashCode());
+    }
+
+    public long acquireForToken(@NotNull String token, boolean mutation) {
+        Buckets buckets = mutation ? tokenMutations : tokenReads;
+        return buckets == null ? 0 : buckets.acquire(token.hashCode());
+    }
+
+    // A table of token buckets, each stored as a single long: the time at which
+    // the bucket will be full again (the "theoretical arrival time" of GCRA).
+    // Taking a token pushes that time forward by one refill interval, and is
+    // refused if it would land more than a burst's worth in the future.
+    static final class Buckets {
+        private final AtomicLongArray fullAt;
+        private final int shift;
+        private final long interval;
+        private final long tolerance;
+        // Times are relative to this, so they start at 0 and only grow
+        private final long origin = System.nanoTime();
+
+        private Buckets(int size, double perSecond, int burst) {
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+            this.fullAt = new AtomicLongArray(1 << bits);
+            this.shift = 32 - bits;
+            this.interval = Math.max(1, (long) (1_000_000_000L / perSecond));
+            this.tolerance = interval * (Math.max(1, burst) - 1);
+        }
+
+        // Null (no limit) when perSecond isn't positive
+        static @Nullable Buckets of(int size, double perSecond, int burst) {
+            return perSecond > 0 ? new Buckets(size, perSecond, burst) : null;
+        }
+
+        long acquire(int hash) {
+            // Fibonacci hashing, so neighbouring addresses land in different buckets
+            int slot = shift == 32 ? 0 : (hash * 0x9E3779B9) >>> shift;
+            long now = System.nanoTime() - origin;
+
+            while (true) {
+                long current = fullAt.get(slot);
+                long base = Math.max(current, now);
+
+                long wait = base - now - tolerance;
+                if (wait > 0) return wait;
+
+                if (fullAt.compareAndSet(slot, current, base + interval)) return 0;
+            }
+        }
+    }
+}
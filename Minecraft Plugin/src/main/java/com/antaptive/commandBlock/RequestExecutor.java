@@ -0,0 +1,90 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs HTTP handlers off the HttpServer dispatcher thread and limits how many
+// may run at once. Requests that can't get a slot within the queue timeout are
+// turned away instead of piling up behind slow handlers.
+public final class RequestExecutor implements Executor {
+
+    public enum Mode { VIRTUAL, PLATFORM }
+
+    // When the current task was handed to the executor, so handlers can tell
+    // how long it already sat in the pool's queue
+    private static final ThreadLocal<Long> SUBMITTED_AT = new ThreadLocal<>();
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final int maxInFlight;
+    private final long queueTimeoutNanos;
+
+    public RequestExecutor(@NotNull Mode mode, int threads, int maxInFlight, long queueTimeoutMillis) {
+        this.executor = switch (mode) {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("CommandBlock-HTTP-", 0).factory());
+            case PLATFORM -> Executors.newFixedThreadPool(Math.max(1, threads), new NamedThreadFactory("CommandBlock-HTTP-"));
+        };
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.slots = new Semaphore(this.maxInFlight);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueTimeoutMillis));
+    }
+
+    public static @NotNull Mode parseMode(String value) {
+        return "platform".equalsIgnoreCase(value) ? Mode.PLATFORM : Mode.VIRTUAL;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command) {
+        long submittedAt = System.nanoTime();
+        executor.execute(() -> {
+            SUBMITTED_AT.set(submittedAt);
+            try {
+                command.run();
+            }
+            finally {
+                SUBMITTED_AT.remove();
+            }
+        });
+    }
+
+    // Waits for a free slot for whatever is left of the queue timeout.
+    // Every successful call must be paired with release().
+    public boolean tryAdmit() throws InterruptedException {
+        Long submittedAt = SUBMITTED_AT.get();
+        long waited = submittedAt == null ? 0 : System.nanoTime() - submittedAt;
+        long remaining = queueTimeoutNanos - waited;
+
+        if (remaining <= 0) return slots.tryAcquire();
+        return slots.tryAcquire(remaining, TimeUnit.NANOSECONDS);
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - slots.availablePermits();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread thread = new Thread(r, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
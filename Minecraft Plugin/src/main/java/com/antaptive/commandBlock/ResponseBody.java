@@ -0,0 +1,50 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+// A body that is sent over and over, such as the stats snapshot. The gzipped
+// copy is made the first time a client asks for it and reused after that.
+public final class ResponseBody {
+
+    private final byte[] bytes;
+    private volatile byte[] gzipped;
+
+    private ResponseBody(byte @NotNull [] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static @NotNull ResponseBody of(byte @NotNull [] bytes) {
+        return new ResponseBody(bytes);
+    }
+
+    public byte @NotNull [] bytes() {
+        return bytes;
+    }
+
+    public byte @NotNull [] gzipped() {
+        byte[] result = gzipped;
+        if (result == null) {
+            // Two threads may both compress it, but they get the same bytes
+            result = gzip(bytes);
+            gzipped = result;
+        }
+        return result;
+    }
+
+    static byte @NotNull [] gzip(byte @NotNull [] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 4096)) {
+            gzip.write(bytes);
+        }
+        catch (IOException e) {
+            // Can't happen writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,66 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerKickEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+
+// Turns player events into /server/events deltas
+public final class ServerEventListener implements Listener {
+
+    private final EventStream eventStream;
+
+    public ServerEventListener(@NotNull EventStream eventStream) {
+        this.eventStream = eventStream;
+    }
+
+    // The fields every player event starts with
+    static @NotNull JsonWriter playerFields(@NotNull JsonWriter json, @NotNull Player player) {
+        return json.field("name", player.getName()).field("uuid", player.getUniqueId().toString());
+    }
+
+    private void publish(String event, Player player) {
+        eventStream.publish(event, json -> playerFields(json.beginObject(), player).endObject());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (!eventStream.hasSubscribers()) return;
+        publish("join", event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        if (!eventStream.hasSubscribers()) return;
+        publish("quit", event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerKick(PlayerKickEvent event) {
+        if (!eventStream.hasSubscribers()) return;
+        publish("kick", event.getPlayer());
+    }
+
+    // Only registered when a supported EssentialsX is installed, so its classes
+    // are never loaded otherwise
+    public static final class EssentialsListener implements Listener {
+        private final EventStream eventStream;
+
+        public EssentialsListener(@NotNull EventStream eventStream) {
+            this.eventStream = eventStream;
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onAfkStatusChange(net.ess3.api.events.AfkStatusChangeEvent event) {
+            if (!eventStream.hasSubscribers()) return;
+
+            Player player = event.getAffected().getBase();
+            boolean afk = event.getValue();
+            eventStream.publish("afk", json -> playerFields(json.beginObject(), player).field("afk", afk).endObject());
+        }
+    }
+}
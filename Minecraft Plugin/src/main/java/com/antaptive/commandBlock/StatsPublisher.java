@@ -0,0 +1,116 @@
+package com.antaptive.commandBlock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Samples the server's stats on the main thread every few ticks and keeps the
+// serialized JSON ready to send, so /server/stats never touches the Bukkit API
+// from the HTTP thread and never serializes per request.
+public final class StatsPublisher implements Runnable {
+
+    private final CommandBlock plugin;
+    private BukkitTask task;
+
+    // Replaced as a whole on the main thread, read by any HTTP thread
+    private volatile Snapshot snapshot;
+
+    public StatsPublisher(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start(long intervalTicks) {
+        stop();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 0L, Math.max(1L, intervalTicks));
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    // Latest published snapshot, or null if the first sample hasn't run yet
+    public @Nullable Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void run() {
+        PresenceTracker presenceTracker = plugin.getPresenceTracker();
+        List<String> playerList = new ArrayList<>();
+
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            PresenceTracker.Presence presence = presenceTracker.get(p.getUniqueId());
+            boolean isAfk = presence != null && presence.isAfk();
+            int ping = presence != null ? presence.getPing() : p.getPing();
+
+            playerList.add(p.getName() + (isAfk ? " (AFK)" : "") + " [" + ping + "ms]");
+        }
+
+        ServerStats stats = new ServerStats(
+                Bukkit.getMaxPlayers(),
+                playerList.size(),
+                plugin.getServer().getTPS()[0],
+                List.copyOf(playerList),
+                Bukkit.getMinecraftVersion(),
+                plugin.getFormattedUptime()
+        );
+
+        snapshot = new Snapshot(stats, ResponseBody.of(encode(stats)), computeETag(stats));
+    }
+
+    static byte[] encode(@NotNull ServerStats stats) {
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            json.beginObject()
+                    .field("maxPlayers", stats.maxPlayers())
+                    .field("onlinePlayers", stats.onlinePlayers())
+                    .field("tps", stats.tps())
+                    .name("playerList").beginArray();
+            for (String player : stats.playerList()) {
+                json.value(player);
+            }
+            json.endArray()
+                    .field("gameVersion", stats.gameVersion())
+                    .field("uptime", stats.uptime())
+                    .endObject();
+
+            return json.toByteArray();
+        }
+        finally {
+            json.release();
+        }
+    }
+
+    // Weak, since the same snapshot is also sent gzipped, and since it leaves out
+    // what changes on nearly every sample: uptime, and tps past two decimal
+    // places. A 304 means nothing else has changed.
+    static String computeETag(@NotNull ServerStats stats) {
+        byte[] body = encode(new ServerStats(
+                stats.maxPlayers(),
+                stats.onlinePlayers(),
+                Math.round(stats.tps() * 100) / 100.0,
+                stats.playerList(),
+                stats.gameVersion(),
+                null
+        ));
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return "W/\"" + Integer.toHexString(body.length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    // Field names are the /server/stats schema
+    public record ServerStats(int maxPlayers, int onlinePlayers, double tps, List<String> playerList,
+                              String gameVersion, String uptime) {}
+
+    public record Snapshot(ServerStats stats, ResponseBody body, String etag) {}
+}
@@ -0,0 +1,169 @@
+package com.antaptive.commandBlock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+// A hierarchical timing wheel: four levels of 256 slots, where each slot of a
+// level spans a whole turn of the level below. Adding and cancelling a timer
+// is O(1), and so is advancing by one tick apart from the timers that expire,
+// or move down a level once every 256 ticks. Nothing is ever scanned or sorted.
+//
+// With one-second ticks the wheel reaches about 136 years ahead; timers due
+// even later wait in the top level and are put back until they are in range.
+//
+// Not thread-safe; the caller locks around it.
+public final class TimingWheel<T> {
+
+    private static final int LEVELS = 4;
+    private static final int BITS = 8;
+
+    // A timer in the wheel. Keep it to cancel the timer.
+    public static final class Timer<T> {
+        private final long due;
+        private final T value;
+        private Timer<T> prev;
+        private Timer<T> next;
+        private Timer<T>[] list;
+        private int slot;
+
+        private Timer(long due, T value) {
+            this.due = due;
+            this.value = value;
+        }
+
+        public long getDue() {
+            return due;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    // Bits of the tick per level, so each level has 1 << bits slots
+    private final int bits;
+    private final int mask;
+    // wheels[level][slot] is the head of that slot's list
+    private final Timer<T>[][] wheels;
+    private long current;
+    private int size;
+
+    public TimingWheel(long startTick) {
+        this(startTick, BITS);
+    }
+
+    // A smaller wheel, so tests can get past every level's range in a few ticks
+    @SuppressWarnings("unchecked")
+    TimingWheel(long startTick, int bits) {
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.wheels = new Timer[LEVELS][1 << bits];
+        this.current = startTick;
+    }
+
+    // The last tick that was advanced to
+    public long getCurrentTick() {
+        return current;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // A timer due at or before the current tick expires on the next advance
+    public @NotNull Timer<T> add(long dueTick, @NotNull T value) {
+        Timer<T> timer = new Timer<>(dueTick, value);
+        place(timer, current + 1);
+        size++;
+        return timer;
+    }
+
+    // False if the timer already expired or was cancelled
+    public boolean cancel(@NotNull Timer<T> timer) {
+        if (timer.list == null) return false;
+
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    // Moves the wheel forward one tick at a time up to the given tick, passing
+    // each timer that expires to the consumer in due order, tick by tick
+    public void advance(long toTick, @NotNull Consumer<T> expired) {
+        while (current < toTick) {
+            current++;
+
+            // Each time a level completes a turn, the next slot of the level above
+            // is moved down into it, the highest level first
+            int top = 0;
+            while (top < LEVELS - 1 && (current & ((1L << (bits * (top + 1))) - 1)) == 0) top++;
+
+            for (int level = top; level >= 1; level--) {
+                int slot = (int) ((current >>> (bits * level)) & mask);
+                Timer<T> timer = wheels[level][slot];
+                wheels[level][slot] = null;
+
+                while (timer != null) {
+                    Timer<T> next = timer.next;
+                    timer.list = null;
+                    // The current tick's slot is still to come, so a timer due now goes in it
+                    place(timer, current);
+                    timer = next;
+                }
+            }
+
+            int slot = (int) (current & mask);
+            Timer<T> timer = wheels[0][slot];
+            wheels[0][slot] = null;
+
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                timer.list = null;
+                timer.prev = null;
+                timer.next = null;
+
+                if (timer.due > current) {
+                    // Too far ahead for the top level when it was placed, so it went round
+                    place(timer, current + 1);
+                }
+                else {
+                    size--;
+                    expired.accept(timer.value);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    // A timer due before the earliest tick is put in that tick's slot
+    private void place(Timer<T> timer, long earliest) {
+        long due = Math.max(timer.due, earliest);
+        long delta = due - current;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (bits * (level + 1))) level++;
+        // Past the top level's reach, it waits in the farthest slot and is placed again from there
+        long index = delta >= 1L << (bits * LEVELS) ? current + (1L << (bits * LEVELS)) - (1L << (bits * (LEVELS - 1))) : due;
+        index >>>= bits * level;
+
+        Timer<T>[] list = wheels[level];
+        int slot = (int) (index & mask);
+        timer.list = list;
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = list[slot];
+        if (timer.next != null) timer.next.prev = timer;
+        list[slot] = timer;
+    }
+
+    private void unlink(Timer<T> timer) {
+        if (timer.prev != null) timer.prev.next = timer.next;
+        else timer.list[timer.slot] = timer.next;
+        if (timer.next != null) timer.next.prev = timer.prev;
+
+        timer.list = null;
+        timer.prev = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,427 @@
+package com.antaptive.commandBlock;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.antaptive.commandBlock.ProfileResolver.ResolvedProfile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+// GET  /server/whitelist/export         NDJSON, one {"uuid", "name"} per line
+// POST /server/whitelist/import         NDJSON (or one name per line), starts a job
+// GET  /server/whitelist/import/status  progress of an import job
+//
+// Imports read the body a line at a time as it arrives (both transports stream
+// it, within http-max-request-bytes), resolve every name in one pass through
+// ProfileResolver, then apply the entries on the main thread. Each task applies
+// entries until main-thread-budget-ms is used up, and at most
+// whitelist-import-chunk-size of them, then waits for its result before queueing
+// the next so API requests still get a turn.
+public final class WhitelistTransfer {
+
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int MAX_KEPT_JOBS = 16;
+
+    private final CommandBlock plugin;
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+    // Most recent last; guarded by itself
+    private final LinkedHashMap<String, Job> jobs = new LinkedHashMap<>();
+
+    public WhitelistTransfer(@NotNull CommandBlock plugin) {
+        this.plugin = plugin;
+    }
+
+    public void register(@NotNull ApiRouter router) {
+        router.get("/server/whitelist/export", this::export);
+        router.post("/server/whitelist/import", this::startImport);
+        router.get("/server/whitelist/import/status", this::status);
+    }
+
+    private record Entry(int line, String name, UUID id) {}
+
+    private void export(ApiRequest request) throws IOException {
+        // Copy the whitelist on the main thread, then write it out from here
+        CompletableFuture<List<Entry>> copy = plugin.getMainThreadQueue().submit(() -> {
+            Set<OfflinePlayer> whitelisted = Bukkit.getWhitelistedPlayers();
+            List<Entry> entries = new ArrayList<>(whitelisted.size());
+            for (OfflinePlayer player : whitelisted) {
+                entries.add(new Entry(0, player.getName(), player.getUniqueId()));
+            }
+            return entries;
+        });
+
+        List<Entry> entries;
+        try {
+            entries = copy.get(plugin.getConfig().getLong("main-thread-timeout-ms", 5000), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            copy.cancel(false);
+            request.sendError(504, "Timed out waiting for the server.");
+            return;
+        }
+        catch (ExecutionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error reading the whitelist", e.getCause());
+            request.sendError(500, "Internal server error");
+            return;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.sendError(500, "Interrupted while reading the whitelist.");
+            return;
+        }
+
+        JsonWriter json = JsonWriter.acquire();
+        try (OutputStream out = request.openStream(200, "application/x-ndjson")) {
+            for (Entry entry : entries) {
+                json.reset();
+                json.beginObject()
+                        .field("uuid", entry.id().toString())
+                        .field("name", entry.name())
+                        .endObject();
+                json.writeTo(out);
+                out.write('\n');
+            }
+        }
+        finally {
+            json.release();
+        }
+    }
+
+    private void startImport(ApiRequest request) throws IOException {
+        String mode = request.params().getOrDefault("mode", "add");
+        if (!mode.equalsIgnoreCase("add") && !mode.equalsIgnoreCase("remove")) {
+            request.sendError(400, "'mode' must be add or remove.");
+            return;
+        }
+        boolean whitelisted = mode.equalsIgnoreCase("add");
+
+        Job running = runningJob();
+        if (running != null) {
+            request.sendError(409, "Import job " + running.id + " is still running.");
+            return;
+        }
+
+        int maxEntries = plugin.getConfig().getInt("whitelist-import-max-entries", 50000);
+        Job job = new Job(String.valueOf(nextJobId.getAndIncrement()), whitelisted);
+        List<Entry> entries = new ArrayList<>();
+
+        // One line at a time, so the body never has to be held as a single string
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(request.exchange().getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                if (entries.size() >= maxEntries) {
+                    request.sendError(413, "Too many entries. The limit is " + maxEntries + ".");
+                    return;
+                }
+
+                Entry entry = parseLine(number, line);
+                if (entry == null) job.fail(number, line, "Expected a player name or a JSON object with 'name' or 'uuid'.");
+                else entries.add(entry);
+            }
+        }
+
+        job.total = entries.size();
+        synchronized (jobs) {
+            // Checked again in case another import started while this body was being read
+            running = runningJob();
+            if (running != null) {
+                request.sendError(409, "Import job " + running.id + " is still running.");
+                return;
+            }
+
+            jobs.put(job.id, job);
+            if (jobs.size() > MAX_KEPT_JOBS) jobs.remove(jobs.keySet().iterator().next());
+        }
+
+        Thread.ofVirtual().name("CommandBlock-WhitelistImport-" + job.id).start(() -> run(job, entries));
+
+        request.setHeader("Location", "/server/whitelist/import/status?job=" + job.id);
+        request.send(202, JsonWriter.acquire().beginObject()
+                .field("job", job.id)
+                .field("entries", entries.size())
+                .endObject());
+    }
+
+    private Job runningJob() {
+        synchronized (jobs) {
+            for (Job job : jobs.values()) {
+                if (!job.isFinished()) return job;
+            }
+        }
+        return null;
+    }
+
+    private void status(ApiRequest request) throws IOException {
+        String id = request.params().get("job");
+        Job job;
+        synchronized (jobs) {
+            job = id != null ? jobs.get(id) : null;
+        }
+
+        if (job == null) {
+            request.sendError(404, "No such import job.");
+            return;
+        }
+
+        JsonWriter json = JsonWriter.acquire();
+        job.write(json);
+        request.send(200, json);
+    }
+
+    private static Entry parseLine(int number, String line) {
+        if (line.charAt(0) != '{') {
+            return line.length() <= 64 && line.indexOf(' ') < 0 ? new Entry(number, line, null) : null;
+        }
+
+        try {
+            JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+            String name = getString(object, "name");
+            String uuid = getString(object, "uuid");
+            if (name == null && uuid == null) return null;
+
+            return new Entry(number, name, uuid != null ? UUID.fromString(uuid) : null);
+        }
+        catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String getString(JsonObject object, String key) {
+        JsonElement value = object.get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    private void run(Job job, List<Entry> entries) {
+        try {
+            List<Entry> ready = resolve(job, entries);
+
+            job.state = "applying";
+            apply(job, ready);
+
+            job.state = "done";
+        }
+        catch (InterruptedException e) {
+            job.state = "failed";
+        }
+        catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Whitelist import " + job.id + " failed", e);
+            job.state = "failed";
+        }
+        finally {
+            job.finishedAt = System.currentTimeMillis();
+            plugin.getLogger().info("Whitelist import " + job.id + " finished: " + job.applied + " changed, "
+                    + job.unchanged + " unchanged, " + job.failed.get() + " failed.");
+        }
+    }
+
+    // Entries that came with a UUID are used as they are; the rest are resolved by name
+    private List<Entry> resolve(Job job, List<Entry> entries) throws InterruptedException {
+        List<String> names = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.id() == null) names.add(entry.name());
+        }
+
+        Map<String, CompletableFuture<ResolvedProfile>> lookups = plugin.getProfileResolver().resolveAll(names);
+        long timeoutMillis = plugin.getConfig().getLong("profile-lookup-timeout-ms", 5000);
+        List<Entry> ready = new ArrayList<>(entries.size());
+
+        for (Entry entry : entries) {
+            if (entry.id() != null) {
+                ready.add(entry);
+                job.resolved++;
+                continue;
+            }
+
+            try {
+                ResolvedProfile profile = lookups.get(entry.name()).get(timeoutMillis, TimeUnit.MILLISECONDS);
+                if (profile == null) {
+                    job.fail(entry.line(), entry.name(), "Player not found.");
+                }
+                else {
+                    ready.add(new Entry(entry.line(), profile.name(), profile.id()));
+                    job.resolved++;
+                }
+            }
+            catch (ExecutionException | TimeoutException e) {
+                job.fail(entry.line(), entry.name(), "Failed to look up the player's profile.");
+            }
+        }
+
+        return ready;
+    }
+
+    // What one main thread task got through. It stops at the first entry that throws,
+    // and the job carries on after it with the next task.
+    private record Progress(int done, int changed, int unchanged, @Nullable RuntimeException error) {}
+
+    private void apply(Job job, List<Entry> entries) throws InterruptedException {
+        int chunkSize = Math.max(1, plugin.getConfig().getInt("whitelist-import-chunk-size", 200));
+        long budgetNanos = (long) (plugin.getConfig().getDouble("main-thread-budget-ms", 2) * 1_000_000);
+        long timeoutMillis = plugin.getConfig().getLong("batch-timeout-ms", 30000);
+        MainThreadQueue queue = plugin.getMainThreadQueue();
+        ActionScheduler scheduler = plugin.getActionScheduler();
+
+        int next = 0;
+        while (next < entries.size()) {
+            int from = next;
+            CompletableFuture<Progress> task = queue.submit(() -> applyChunk(job, entries, from, Math.min(from + chunkSize, entries.size()), budgetNanos));
+
+            Progress progress;
+            try {
+                try {
+                    progress = task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException e) {
+                    // Only gives up if the task really never started
+                    if (task.cancel(false)) {
+                        failRemaining(job, entries, from, "Timed out before it could be applied.");
+                        return;
+                    }
+
+                    progress = task.get();
+                }
+            }
+            catch (ExecutionException e) {
+                // Only shutting down gets here; the entries' own exceptions are in the progress
+                failRemaining(job, entries, from, "Failed to apply this entry.");
+                return;
+            }
+
+            job.applied += progress.changed();
+            job.unchanged += progress.unchanged();
+            next = from + progress.done();
+
+            // Players who were already on the whitelist too, so a timed whitelisting becomes permanent
+            if (job.whitelisted && scheduler != null) {
+                Set<UUID> ids = new HashSet<>(progress.done());
+                for (Entry entry : entries.subList(from, next)) ids.add(entry.id());
+                scheduler.cancelWhitelistRemovals(ids);
+            }
+
+            if (progress.error() != null) {
+                Entry failed = entries.get(next);
+                plugin.getLogger().log(Level.WARNING, "Whitelist import " + job.id + " failed to apply " + failed.name(), progress.error());
+                job.fail(failed.line(), failed.name(), "Failed to apply this entry.");
+                next++;
+            }
+        }
+    }
+
+    // On the main thread. Each whitelist change saves whitelist.json, so this stops once
+    // main-thread-budget-ms is used up and leaves the rest to the next task. At least one
+    // entry is applied, however small the budget.
+    private static Progress applyChunk(Job job, List<Entry> entries, int from, int to, long budgetNanos) {
+        long start = System.nanoTime();
+        int changed = 0, unchanged = 0;
+
+        for (int i = from; i < to; i++) {
+            Entry entry = entries.get(i);
+            try {
+                // Skipping entries that are already right also skips a whitelist.json save each
+                if (Bukkit.getOfflinePlayer(entry.id()).isWhitelisted() == job.whitelisted) {
+                    unchanged++;
+                }
+                else {
+                    PlayerActions.setWhitelisted(entry.id(), job.whitelisted);
+                    changed++;
+                }
+            }
+            catch (RuntimeException e) {
+                return new Progress(i - from, changed, unchanged, e);
+            }
+
+            if (System.nanoTime() - start >= budgetNanos) return new Progress(i + 1 - from, changed, unchanged, null);
+        }
+
+        return new Progress(to - from, changed, unchanged, null);
+    }
+
+    private static void failRemaining(Job job, List<Entry> entries, int from, String error) {
+        for (Entry entry : entries.subList(from, entries.size())) job.fail(entry.line(), entry.name(), error);
+    }
+
+    private static final class Job {
+        final String id;
+        final boolean whitelisted;
+        final long startedAt = System.currentTimeMillis();
+
+        // Written by the job's thread, read by status requests
+        volatile String state = "resolving";
+        volatile int total;
+        volatile int resolved;
+        volatile int applied;
+        volatile int unchanged;
+        volatile long finishedAt;
+
+        final AtomicInteger failed = new AtomicInteger();
+        // Guarded by itself
+        final List<String[]> errors = new ArrayList<>();
+
+        Job(String id, boolean whitelisted) {
+            this.id = id;
+            this.whitelisted = whitelisted;
+        }
+
+        boolean isFinished() {
+            return finishedAt != 0;
+        }
+
+        void fail(int line, String name, String error) {
+            failed.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new String[]{String.valueOf(line), name, error});
+            }
+        }
+
+        void write(JsonWriter json) {
+            json.beginObject()
+                    .field("job", id)
+                    .field("mode", whitelisted ? "add" : "remove")
+                    .field("state", state)
+                    .field("total", total)
+                    .field("resolved", resolved)
+                    .field("applied", applied)
+                    .field("unchanged", unchanged)
+                    .field("failed", failed.get())
+                    .field("startedAt", startedAt);
+
+            if (finishedAt != 0) json.field("finishedAt", finishedAt);
+            else json.name("finishedAt").nullValue();
+
+            json.name("errors").beginArray();
+            synchronized (errors) {
+                for (String[] error : errors) {
+                    json.beginObject()
+                            .field("line", Long.parseLong(error[0]))
+                            .field("player", error[1])
+                            .field("error", error[2])
+                            .endObject();
+                }
+            }
+            json.endArray().endObject();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.antaptive.commandBlock;
+
+import com.antaptive.commandBlock.BanIndex.BanRecord;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class BanIndexTest {
+
+    private static final Comparator<BanRecord> BY_NAME = Comparator.comparing(BanRecord::sortName).thenComparing(BanRecord::uuid);
+
+    // Duplicate names, names that are prefixes of each other, and shared creation times
+    private static final List<BanRecord> BANS = List.of(
+            ban("Steve", 3, 1000),
+            ban("steve", 1, 1000),
+            ban("STEVE", 2, 2000),
+            ban("stev", 4, 1000),
+            ban("Steven", 5, 3000),
+            ban("stevenson", 6, 500),
+            ban("st", 7, 2000),
+            ban("s", 8, 2000),
+            ban("alex", 9, 0),
+            ban("sam", 10, 3000),
+            ban("stevf", 11, 1000),
+            ban("zed", 12, 4000)
+    );
+
+    private static BanRecord ban(String name, long id, long created) {
+        return new BanRecord(new UUID(0, id), name, name.toLowerCase(Locale.ROOT), "", "", created, 0);
+    }
+
+    private static BanIndex index() {
+        BanIndex index = new BanIndex(null);
+        for (BanRecord ban : BANS) index.replace(ban.uuid(), ban);
+        return index;
+    }
+
+    private static List<BanRecord> expected(Comparator<BanRecord> order, boolean descending, Predicate<BanRecord> filter) {
+        List<BanRecord> expected = new ArrayList<>(BANS.stream().filter(filter).toList());
+        expected.sort(descending ? order.reversed() : order);
+        return expected;
+    }
+
+    private static List<BanRecord> byName(BanIndex index, String prefix, BanRecord after, boolean descending, int limit) {
+        List<BanRecord> visited = new ArrayList<>();
+        index.visitByName(prefix, after, descending, record -> {
+            visited.add(record);
+            return visited.size() < limit;
+        });
+        return visited;
+    }
+
+    private static List<BanRecord> byCreated(BanIndex index, long since, long until, BanRecord after, boolean descending, int limit) {
+        List<BanRecord> visited = new ArrayList<>();
+        index.visitByCreated(since, until, after, descending, record -> {
+            visited.add(record);
+            return visited.size() < limit;
+        });
+        return visited;
+    }
+
+    @Test
+    void walksNamesInOrder() {
+        BanIndex index = index();
+
+        for (String prefix : new String[] {"", "s", "st", "stev", "steve", "steven", "x"}) {
+            for (boolean descending : new boolean[] {false, true}) {
+                assertEquals(expected(BY_NAME, descending, ban -> ban.sortName().startsWith(prefix)),
+                        byName(index, prefix, null, descending, Integer.MAX_VALUE),
+                        "prefix '" + prefix + "', descending " + descending);
+            }
+        }
+    }
+
+    @Test
+    void resumesAfterEveryNameCursor() {
+        BanIndex index = index();
+
+        for (String prefix : new String[] {"", "stev"}) {
+            for (boolean descending : new boolean[] {false, true}) {
+                List<BanRecord> expected = expected(BY_NAME, descending, ban -> ban.sortName().startsWith(prefix));
+
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.subList(i + 1, expected.size()),
+                            byName(index, prefix, expected.get(i), descending, Integer.MAX_VALUE),
+                            "after " + expected.get(i).name() + " (" + expected.get(i).uuid() + "), prefix '" + prefix + "', descending " + descending);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pagesThroughNamesWithoutGapsOrRepeats() {
+        BanIndex index = index();
+
+        for (boolean descending : new boolean[] {false, true}) {
+            List<BanRecord> all = new ArrayList<>();
+            BanRecord after = null;
+            List<BanRecord> page;
+            while (!(page = byName(index, "", after, descending, 2)).isEmpty()) {
+                all.addAll(page);
+                after = page.getLast();
+            }
+
+            assertEquals(expected(BY_NAME, descending, ban -> true), all, "descending " + descending);
+        }
+    }
+
+    @Test
+    void resumesAfterEveryDateCursor() {
+        BanIndex index = index();
+
+        for (long[] range : new long[][] {{Long.MIN_VALUE, Long.MAX_VALUE}, {1000, 3000}, {1000, 1001}}) {
+            long since = range[0], until = range[1];
+
+            for (boolean descending : new boolean[] {false, true}) {
+                List<BanRecord> expected = expected(BanIndex.BY_CREATED, descending, ban -> ban.created() >= since && ban.created() < until);
+                assertEquals(expected, byCreated(index, since, until, null, descending, Integer.MAX_VALUE));
+
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.subList(i + 1, expected.size()),
+                            byCreated(index, since, until, expected.get(i), descending, Integer.MAX_VALUE),
+                            "after " + expected.get(i).uuid() + " in [" + since + ", " + until + "), descending " + descending);
+                }
+            }
+        }
+    }
+
+    @Test
+    void replacingABanMovesIt() {
+        BanIndex index = index();
+        BanRecord renamed = ban("Alexa", 3, 5000);
+        index.replace(renamed.uuid(), renamed);
+        index.replace(new UUID(0, 6), null);
+
+        assertEquals(BANS.size() - 1, index.size());
+        assertEquals(List.of(BANS.get(8), renamed), byName(index, "alex", null, false, Integer.MAX_VALUE));
+        assertTrue(byName(index, "stevens", null, false, Integer.MAX_VALUE).isEmpty());
+        assertEquals(List.of(renamed), byCreated(index, 4500, Long.MAX_VALUE, null, false, Integer.MAX_VALUE));
+    }
+}
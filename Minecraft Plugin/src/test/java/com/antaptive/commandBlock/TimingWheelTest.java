@@ -0,0 +1,127 @@
+package com.antaptive.commandBlock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class TimingWheelTest {
+
+    // Advances one tick at a time and records the tick each value expired on
+    private static Map<String, Long> advance(TimingWheel<String> wheel, long toTick) {
+        Map<String, Long> fired = new HashMap<>();
+        while (wheel.getCurrentTick() < toTick) {
+            long tick = wheel.getCurrentTick() + 1;
+            wheel.advance(tick, value -> assertNull(fired.put(value, tick), value + " expired twice"));
+        }
+        return fired;
+    }
+
+    private static void assertFiredOnTime(Map<String, Long> fired, long... dues) {
+        for (long due : dues) {
+            assertEquals(due, fired.get("t" + due), "timer due at " + due);
+        }
+    }
+
+    @Test
+    void firesOnTimeAcrossCascadeBoundaries() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        long[] dues = {1, 255, 256, 257, 511, 512, 513, 65535, 65536, 65537, 65536 + 256};
+        for (long due : dues) wheel.add(due, "t" + due);
+
+        Map<String, Long> fired = advance(wheel, 70000);
+
+        assertEquals(dues.length, fired.size());
+        assertFiredOnTime(fired, dues);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void firesOnTimeWhenAddedJustBeforeABoundary() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        advance(wheel, 15000);
+
+        // 15104 is a multiple of 256, so it is due on the tick its slot is cascaded
+        long[] dues = {15103, 15104, 15105, 15360};
+        for (long due : dues) wheel.add(due, "t" + due);
+
+        assertFiredOnTime(advance(wheel, 16000), dues);
+    }
+
+    @Test
+    void firesOnTimeFromAnUnalignedStart() {
+        TimingWheel<String> wheel = new TimingWheel<>(250);
+        long[] dues = {251, 255, 256, 300, 506, 511, 512, 65536, 65786};
+        for (long due : dues) wheel.add(due, "t" + due);
+
+        assertFiredOnTime(advance(wheel, 70000), dues);
+    }
+
+    @Test
+    void overdueTimerFiresOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000);
+        wheel.add(10, "late");
+
+        Map<String, Long> fired = advance(wheel, 1001);
+        assertEquals(Long.valueOf(1001), fired.get("late"));
+    }
+
+    @Test
+    void timerPastTheTopLevelWaitsAndFiresOnTime() {
+        // Two bits a level, so the whole wheel only reaches 256 ticks ahead
+        TimingWheel<String> wheel = new TimingWheel<>(0, 2);
+        long[] dues = {63, 64, 255, 256, 257, 1000, 5000};
+        for (long due : dues) wheel.add(due, "t" + due);
+
+        Map<String, Long> early = advance(wheel, 999);
+        assertFalse(early.containsKey("t1000"));
+        assertFalse(early.containsKey("t5000"));
+        assertEquals(2, wheel.size());
+
+        Map<String, Long> fired = new HashMap<>(early);
+        fired.putAll(advance(wheel, 6000));
+        assertFiredOnTime(fired, dues);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelAfterCascade() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        TimingWheel.Timer<String> timer = wheel.add(300, "cancelled");
+        wheel.add(301, "kept");
+
+        // Tick 256 moves both down from level 1
+        advance(wheel, 256);
+        assertTrue(wheel.cancel(timer));
+        assertEquals(1, wheel.size());
+        assertFalse(wheel.cancel(timer));
+
+        Map<String, Long> fired = advance(wheel, 400);
+        assertFalse(fired.containsKey("cancelled"));
+        assertEquals(Long.valueOf(301), fired.get("kept"));
+    }
+
+    @Test
+    void cancelAfterGoingRoundTheTopLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(0, 2);
+        TimingWheel.Timer<String> timer = wheel.add(1000, "cancelled");
+
+        advance(wheel, 500);
+        assertTrue(wheel.cancel(timer));
+        assertEquals(0, wheel.size());
+
+        assertTrue(advance(wheel, 1100).isEmpty());
+    }
+
+    @Test
+    void cancelAfterExpiryReturnsFalse() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        TimingWheel.Timer<String> timer = wheel.add(5, "done");
+
+        advance(wheel, 5);
+        assertFalse(wheel.cancel(timer));
+        assertEquals(0, wheel.size());
+    }
+}